@@ -541,6 +541,16 @@ public interface CommandInterface extends AutoCloseable {
      */
     int ALTER_DOMAIN_RENAME_CONSTRAINT = 101;
 
+    /**
+     * The type of an ALTER TABLE ADD PARTITION statement.
+     */
+    int ALTER_TABLE_ADD_PARTITION = 102;
+
+    /**
+     * The type of an ALTER TABLE DROP PARTITION statement.
+     */
+    int ALTER_TABLE_DROP_PARTITION = 103;
+
     /**
      * Get command type.
      *
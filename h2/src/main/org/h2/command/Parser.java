@@ -159,6 +159,7 @@
 import org.h2.command.ddl.AlterTableAddConstraint;
 import org.h2.command.ddl.AlterTableAlterColumn;
 import org.h2.command.ddl.AlterTableDropConstraint;
+import org.h2.command.ddl.AlterTablePartition;
 import org.h2.command.ddl.AlterTableRename;
 import org.h2.command.ddl.AlterTableRenameColumn;
 import org.h2.command.ddl.AlterTableRenameConstraint;
@@ -353,6 +354,8 @@
 import org.h2.mode.ModeFunction;
 import org.h2.mode.OnDuplicateKeyValues;
 import org.h2.mode.Regclass;
+import org.h2.mvstore.db.MVTable;
+import org.h2.mvstore.db.MVTableVersion;
 import org.h2.result.SortOrder;
 import org.h2.schema.Domain;
 import org.h2.schema.FunctionAlias;
@@ -367,6 +370,7 @@
 import org.h2.table.FunctionTable;
 import org.h2.table.IndexColumn;
 import org.h2.table.IndexHints;
+import org.h2.table.Partitioning;
 import org.h2.table.QueryExpressionTable;
 import org.h2.table.RangeTable;
 import org.h2.table.Table;
@@ -1861,6 +1865,11 @@ private TableFilter readTablePrimary() {
                 }
             } else {
                 table = readTableOrView(tableName);
+                if (readIf(AS, "OF", "VERSION")) {
+                    table = readTableAsOf(table, false);
+                } else if (readIf(AS, "OF", "TIMESTAMP")) {
+                    table = readTableAsOf(table, true);
+                }
             }
         }
         ArrayList<String> derivedColumnNames = null;
@@ -1879,6 +1888,16 @@ private TableFilter readTablePrimary() {
         return buildTableFilter(table, alias, derivedColumnNames, indexHints);
     }
 
+    private Table readTableAsOf(Table table, boolean timestamp) {
+        if (!(table instanceof MVTable)) {
+            throw DbException.getUnsupportedException("AS OF " + table.getTraceSQL());
+        }
+        if (!rightsChecked) {
+            session.getUser().checkTableRight(table, Right.SELECT);
+        }
+        return new MVTableVersion((MVTable) table, readExpression(), timestamp);
+    }
+
     private TableFilter readCorrelation(TableFilter tableFilter) {
         String alias = readFromAlias(null);
         if (alias != null) {
@@ -8476,6 +8495,17 @@ private Prepared parseAlterTable() {
         String tableName = readIdentifierWithSchema();
         Schema schema = getSchema();
         if (readIf("ADD")) {
+            if (readIf("PARTITION")) {
+                AlterTablePartition command = new AlterTablePartition(session, schema,
+                        CommandInterface.ALTER_TABLE_ADD_PARTITION);
+                command.setTableName(tableName);
+                command.setIfTableExists(ifTableExists);
+                String name = readIdentifier();
+                read(VALUES);
+                Partitioning.Type type = isToken("LESS") ? Partitioning.Type.RANGE : Partitioning.Type.LIST;
+                command.setPartition(type, parsePartitionValues(name, type));
+                return command;
+            }
             Prepared command = parseTableConstraintIf(tableName, schema, ifTableExists);
             if (command != null) {
                 return command;
@@ -8671,7 +8701,14 @@ private Prepared parseAlterTableAlterColumnSet(Schema schema, String tableName,
     }
 
     private Prepared parseAlterTableDrop(Schema schema, String tableName, boolean ifTableExists) {
-        if (readIf(CONSTRAINT)) {
+        if (readIf("PARTITION")) {
+            AlterTablePartition command = new AlterTablePartition(session, schema,
+                    CommandInterface.ALTER_TABLE_DROP_PARTITION);
+            command.setTableName(tableName);
+            command.setIfTableExists(ifTableExists);
+            command.setPartitionName(readIdentifier());
+            return command;
+        } else if (readIf(CONSTRAINT)) {
             boolean ifExists = readIfExists(false);
             String constraintName = readIdentifierWithSchema(schema.getName());
             ifExists = readIfExists(ifExists);
@@ -9305,6 +9342,9 @@ private CreateTable parseCreateTable(boolean temp, boolean globalTemp,
         if (readIf("HIDDEN")) {
             command.setHidden(true);
         }
+        if (readIf("PARTITION", "BY")) {
+            command.setPartitioning(parsePartitioning());
+        }
         if (readIf(AS)) {
             readIf("SORTED");
             command.setQuery(parseQuery());
@@ -9316,6 +9356,70 @@ private CreateTable parseCreateTable(boolean temp, boolean globalTemp,
         return command;
     }
 
+    private Partitioning parsePartitioning() {
+        Partitioning.Type type;
+        if (readIf("RANGE")) {
+            type = Partitioning.Type.RANGE;
+        } else if (readIf("LIST")) {
+            type = Partitioning.Type.LIST;
+        } else {
+            read("HASH");
+            type = Partitioning.Type.HASH;
+        }
+        read(OPEN_PAREN);
+        String columnName = readIdentifier();
+        read(CLOSE_PAREN);
+        ArrayList<Partitioning.Partition> partitions = Utils.newSmallArrayList();
+        if (type == Partitioning.Type.HASH) {
+            read("PARTITIONS");
+            int count = readNonNegativeInt();
+            for (int i = 0; i < count; i++) {
+                partitions.add(new Partitioning.Partition("P" + i, null));
+            }
+        } else {
+            read(OPEN_PAREN);
+            do {
+                read("PARTITION");
+                String name = readIdentifier();
+                read(VALUES);
+                partitions.add(parsePartitionValues(name, type));
+            } while (readIfMore());
+        }
+        return new Partitioning(type, columnName, partitions);
+    }
+
+    private Partitioning.Partition parsePartitionValues(String name, Partitioning.Type type) {
+        Value[] values;
+        if (type == Partitioning.Type.RANGE) {
+            read("LESS");
+            read("THAN");
+            if (readIf("MAXVALUE")) {
+                values = new Value[1];
+            } else {
+                read(OPEN_PAREN);
+                values = new Value[] { readPartitionValue() };
+                read(CLOSE_PAREN);
+            }
+        } else {
+            read(IN);
+            read(OPEN_PAREN);
+            ArrayList<Value> list = Utils.newSmallArrayList();
+            do {
+                list.add(readPartitionValue());
+            } while (readIfMore());
+            values = list.toArray(new Value[0]);
+        }
+        return new Partitioning.Partition(name, values);
+    }
+
+    private Value readPartitionValue() {
+        Expression expr = readExpression().optimize(session);
+        if (!expr.isConstant()) {
+            throw DbException.getInvalidValueException("partition value", expr.getTraceSQL());
+        }
+        return expr.getValue(session);
+    }
+
     private void parseTableColumnDefinition(CommandWithColumns command, Schema schema, String tableName,
             boolean forCreateTable) {
         DefineCommand c = parseTableConstraintIf(tableName, schema, false);
@@ -450,6 +450,7 @@ private Table cloneTableStructure(Table table, Column[] columns, Database db,
         data.persistData = table.isPersistData();
         data.persistIndexes = table.isPersistIndexes();
         data.isHidden = table.isHidden();
+        data.partitioning = table.getPartitioning();
         data.session = session;
         Table newTable = getSchema().createTable(data);
         newTable.setComment(table.getComment());
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command.ddl;
+
+import org.h2.command.CommandInterface;
+import org.h2.engine.SessionLocal;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVTable;
+import org.h2.schema.Schema;
+import org.h2.table.Partitioning;
+import org.h2.table.Table;
+
+/**
+ * This class represents the statements
+ * ALTER TABLE ADD PARTITION,
+ * ALTER TABLE DROP PARTITION
+ */
+public class AlterTablePartition extends AlterTable {
+
+    private final int type;
+
+    private Partitioning.Type partitionType;
+
+    private Partitioning.Partition partition;
+
+    private String partitionName;
+
+    public AlterTablePartition(SessionLocal session, Schema schema, int type) {
+        super(session, schema);
+        this.type = type;
+    }
+
+    /**
+     * Set the partition to add.
+     *
+     * @param partitionType the partitioning method the partition was
+     *            specified for
+     * @param partition the partition
+     */
+    public void setPartition(Partitioning.Type partitionType, Partitioning.Partition partition) {
+        this.partitionType = partitionType;
+        this.partition = partition;
+    }
+
+    /**
+     * Set the name of the partition to drop.
+     *
+     * @param partitionName the name of the partition
+     */
+    public void setPartitionName(String partitionName) {
+        this.partitionName = partitionName;
+    }
+
+    @Override
+    public long update(Table table) {
+        if (table.getPartitioning() == null) {
+            throw DbException.getUnsupportedException("PARTITION of a table without partitions");
+        }
+        MVTable mvTable = (MVTable) table;
+        table.lock(session, Table.EXCLUSIVE_LOCK);
+        if (type == CommandInterface.ALTER_TABLE_ADD_PARTITION) {
+            Partitioning.Type tableType = table.getPartitioning().getType();
+            if (partitionType != tableType) {
+                throw DbException.getUnsupportedException(partitionType + " partition of a " + tableType
+                        + " partitioning");
+            }
+            mvTable.addPartition(partition);
+        } else {
+            mvTable.dropPartition(session, partitionName);
+        }
+        session.getDatabase().updateMeta(session, table);
+        return 0;
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+}
@@ -19,6 +19,7 @@
 import org.h2.schema.Schema;
 import org.h2.schema.Sequence;
 import org.h2.table.Column;
+import org.h2.table.Partitioning;
 import org.h2.table.Table;
 import org.h2.value.Value;
 
@@ -260,6 +261,10 @@ public void setHidden(boolean isHidden) {
         data.isHidden = isHidden;
     }
 
+    public void setPartitioning(Partitioning partitioning) {
+        data.partitioning = partitioning;
+    }
+
     @Override
     public int getType() {
         return CommandInterface.CREATE_TABLE;
@@ -10,6 +10,7 @@
 import org.h2.engine.SessionLocal;
 import org.h2.schema.Schema;
 import org.h2.table.Column;
+import org.h2.table.Partitioning;
 
 /**
  * The data required to create a table.
@@ -75,4 +76,9 @@ public class CreateTableData {
      * The table is hidden.
      */
     public boolean isHidden;
+
+    /**
+     * The partitioning of the table, or null.
+     */
+    public Partitioning partitioning;
 }
@@ -12,10 +12,17 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.h2.api.ErrorCode;
 import org.h2.api.Trigger;
 import org.h2.engine.Constants;
@@ -23,23 +30,32 @@
 import org.h2.engine.Mode.ExpressionNames;
 import org.h2.engine.SessionLocal;
 import org.h2.expression.Alias;
+import org.h2.expression.BinaryOperation;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
 import org.h2.expression.ExpressionList;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
+import org.h2.expression.UnaryOperation;
+import org.h2.expression.ValueExpression;
 import org.h2.expression.Wildcard;
+import org.h2.expression.aggregate.Aggregate;
 import org.h2.expression.analysis.DataAnalysisOperation;
 import org.h2.expression.analysis.Window;
 import org.h2.expression.condition.Comparison;
 import org.h2.expression.condition.ConditionAndOr;
+import org.h2.expression.condition.ConditionAndOrN;
 import org.h2.expression.condition.ConditionLocalAndGlobal;
+import org.h2.expression.condition.ConditionNot;
+import org.h2.expression.condition.NullPredicate;
 import org.h2.expression.function.CoalesceFunction;
+import org.h2.expression.function.MathFunction;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.QueryExpressionIndex;
 import org.h2.message.DbException;
 import org.h2.mode.DefaultNullOrdering;
+import org.h2.mvstore.db.MVTempPartitions;
 import org.h2.result.LazyResult;
 import org.h2.result.LocalResult;
 import org.h2.result.ResultInterface;
@@ -57,8 +73,11 @@
 import org.h2.util.ParserUtil;
 import org.h2.util.StringUtils;
 import org.h2.util.Utils;
+import org.h2.value.CompareMode;
 import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueNull;
 import org.h2.value.ValueRow;
 
 /**
@@ -76,6 +95,11 @@
  */
 public class Select extends Query {
 
+    /**
+     * The minimum number of rows per thread of a parallel scan.
+     */
+    private static final int PARALLEL_SCAN_MIN_ROWS = 10_000;
+
     /**
      * The main (top) table filter.
      */
@@ -485,8 +509,11 @@ private void queryGroupWindow(int columnCount, LocalResult result, long offset,
     private void queryGroup(int columnCount, LocalResult result, long offset, boolean quickOffset) {
         initGroupData(columnCount);
         try {
-            gatherGroup(columnCount, DataAnalysisOperation.STAGE_GROUP);
-            processGroupResult(columnCount, result, offset, quickOffset, true);
+            if (gatherGroupParallel(columnCount)) {
+                processGroupResult(columnCount, result, offset, quickOffset, true);
+            } else {
+                gatherGroupPartitioned(columnCount, result, offset, quickOffset, null, 0);
+            }
         } finally {
             groupData.reset();
         }
@@ -525,6 +552,402 @@ private void gatherGroup(int columnCount, int stage) {
         groupData.done();
     }
 
+    /**
+     * Gather and process the groups. If the groups don't fit into memory, the
+     * source rows of the groups that weren't seen before the memory limit was
+     * reached are written into partitions of a temporary file, and the groups
+     * of each partition are gathered and processed separately.
+     *
+     * @param columnCount the number of columns
+     * @param result the result
+     * @param offset the number of rows to skip
+     * @param quickOffset whether the offset can be applied here
+     * @param rows the source rows of a partition, or null to read the rows
+     *            from the table filters
+     * @param level how many times the rows were partitioned before
+     * @return the remaining number of rows to skip
+     */
+    private long gatherGroupPartitioned(int columnCount, LocalResult result, long offset, boolean quickOffset,
+            Iterator<ValueRow> rows, int level) {
+        Database db = session.getDatabase();
+        int maxGroups = db.isPersistent() && !db.isReadOnly() ? db.getMaxMemoryRows() : Integer.MAX_VALUE;
+        ArrayList<TableFilter> sources = null;
+        MVTempPartitions partitions = null;
+        try {
+            long rowNumber = 0;
+            setCurrentRowNumber(0);
+            for (;;) {
+                if (rows == null) {
+                    if (!topTableFilter.next()) {
+                        break;
+                    }
+                    setCurrentRowNumber(rowNumber + 1);
+                    if (!(isForUpdate ? isConditionMetForUpdate() : isConditionMet())) {
+                        continue;
+                    }
+                    rowNumber++;
+                } else {
+                    if (!rows.hasNext()) {
+                        break;
+                    }
+                    if (sources == null) {
+                        sources = getSourceFilters();
+                    }
+                    setSourceRows(sources, rows.next());
+                }
+                int partition = groupData.nextSource(maxGroups, level);
+                if (partition < 0) {
+                    updateAgg(columnCount, DataAnalysisOperation.STAGE_GROUP);
+                } else {
+                    if (partitions == null) {
+                        partitions = new MVTempPartitions(db, SelectGroups.SPILL_PARTITIONS);
+                        if (sources == null) {
+                            sources = getSourceFilters();
+                        }
+                    }
+                    partitions.add(partition, getSourceRows(sources));
+                }
+            }
+            groupData.done();
+            offset = processGroupResult(columnCount, result, offset, quickOffset, true);
+            if (partitions != null) {
+                for (int i = 0; i < SelectGroups.SPILL_PARTITIONS; i++) {
+                    initGroupData(columnCount);
+                    offset = gatherGroupPartitioned(columnCount, result, offset, quickOffset,
+                            partitions.iterator(i), level + 1);
+                }
+            }
+        } finally {
+            if (partitions != null) {
+                partitions.close();
+            }
+        }
+        return offset;
+    }
+
+    private ArrayList<TableFilter> getSourceFilters() {
+        ArrayList<TableFilter> list = new ArrayList<>();
+        topTableFilter.visit(list::add);
+        return list;
+    }
+
+    /**
+     * Get the current rows of the specified table filters: the key of each
+     * row followed by its values, or a single NULL if there is no current row.
+     *
+     * @param sources the table filters
+     * @return the rows
+     */
+    private static ValueRow getSourceRows(ArrayList<TableFilter> sources) {
+        ArrayList<Value> values = new ArrayList<>();
+        for (TableFilter f : sources) {
+            Row row = f.get();
+            if (row == null) {
+                values.add(ValueNull.INSTANCE);
+            } else {
+                values.add(ValueBigint.get(row.getKey()));
+                Collections.addAll(values, row.getValueList());
+            }
+        }
+        return ValueRow.get(values.toArray(new Value[0]));
+    }
+
+    /**
+     * Set the current rows of the specified table filters.
+     *
+     * @param sources the table filters
+     * @param rows the rows returned by {@link #getSourceRows(ArrayList)}
+     */
+    private static void setSourceRows(ArrayList<TableFilter> sources, ValueRow rows) {
+        Value[] values = rows.getList();
+        int offset = 0;
+        for (TableFilter f : sources) {
+            Value key = values[offset++];
+            Row row = null;
+            if (key != ValueNull.INSTANCE) {
+                Table table = f.getTable();
+                int length = table.getColumns().length;
+                row = table.createRow(Arrays.copyOfRange(values, offset, offset + length), SearchRow.MEMORY_CALCULATE);
+                row.setKey(key.getLong());
+                offset += length;
+            }
+            f.set(row);
+        }
+    }
+
+    /**
+     * Gather the groups using multiple threads, if the query reads all rows
+     * of a large table that can be split into ranges of the primary key. Each
+     * range is read, filtered and aggregated by a separate copy of this query,
+     * then the groups of the copies are merged into the groups of this query.
+     *
+     * @param columnCount the number of columns
+     * @return whether the groups were gathered
+     */
+    private boolean gatherGroupParallel(int columnCount) {
+        ForkJoinPool pool = session.getDatabase().getParallelScanPool();
+        if (pool == null) {
+            return false;
+        }
+        int threads = pool.getParallelism() + 1;
+        if (isForUpdate || filters.size() != 1 || topTableFilter.getJoin() != null
+                || topTableFilter.getNestedJoin() != null || !topTableFilter.getIndexConditions().isEmpty()) {
+            return false;
+        }
+        Table table = topTableFilter.getTable();
+        Index index = topTableFilter.getIndex();
+        threads = (int) Math.min(threads, table.getRowCountApproximation(session) / PARALLEL_SCAN_MIN_ROWS);
+        if (threads <= 1 || index != table.getScanIndex(session)) {
+            return false;
+        }
+        Expression[] targets = getGroupDataExpressions(columnCount);
+        if (targets == null) {
+            return false;
+        }
+        ArrayList<Cursor> cursors = index.findRanges(session, threads);
+        if (cursors == null || cursors.size() <= 1) {
+            return false;
+        }
+        int count = cursors.size();
+        Select[] copies = new Select[count];
+        Expression[][] sources = new Expression[count][];
+        String sql = getPlanSQL(DEFAULT_SQL_FLAGS);
+        for (int i = 1; i < count; i++) {
+            Select copy = prepareCopy(sql);
+            if (copy == null) {
+                return false;
+            }
+            Expression[] s = copy.getGroupDataExpressions(columnCount);
+            if (s == null || s.length != targets.length) {
+                return false;
+            }
+            for (int j = 0; j < s.length; j++) {
+                if (s[j].getClass() != targets[j].getClass()) {
+                    return false;
+                }
+            }
+            copy.setGroupData(SelectGroups.getInstance(session, copy.expressions, true, copy.groupIndex));
+            copy.groupData.reset();
+            copies[i] = copy;
+            sources[i] = s;
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        Throwable exception = null;
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(count - 1);
+        try {
+            for (int i = 1; i < count; i++) {
+                Select copy = copies[i];
+                Cursor cursor = cursors.get(i);
+                tasks.add(pool.submit(() -> copy.gatherRange(cursor, columnCount, stop, false)));
+            }
+            gatherRange(cursors.get(0), columnCount, stop, true);
+        } catch (Throwable e) {
+            exception = e;
+            stop.set(true);
+        }
+        // wait for all tasks, they use the session of this query
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                exception = exception == null ? e.getCause() : exception;
+                stop.set(true);
+            } catch (InterruptedException e) {
+                exception = exception == null ? e : exception;
+                stop.set(true);
+            }
+        }
+        if (exception != null) {
+            throw DbException.convert(exception);
+        }
+        for (int i = 1; i < count; i++) {
+            mergeGroups(copies[i].groupData, targets, sources[i]);
+        }
+        groupData.done();
+        return true;
+    }
+
+    /**
+     * Get the aggregates and columns that keep data for the groups of this
+     * query, if the query can be evaluated by multiple threads: all
+     * expressions need to be deterministic, free of subqueries and
+     * independent of the state of the session, and the data of all
+     * aggregates needs to be mergeable.
+     *
+     * @param columnCount the number of columns
+     * @return the expressions, or null
+     */
+    private Expression[] getGroupDataExpressions(int columnCount) {
+        if (condition != null && (!condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                || !condition.isEverything(ExpressionVisitor.getGroupDataExpressionsVisitor(new LinkedHashSet<>()))
+                || !isSessionIndependent(condition))) {
+            return null;
+        }
+        LinkedHashSet<Expression> set = new LinkedHashSet<>();
+        ExpressionVisitor visitor = ExpressionVisitor.getGroupDataExpressionsVisitor(set);
+        for (int i = 0; i < columnCount; i++) {
+            Expression expr = expressions.get(i);
+            if (!expr.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR) || !expr.isEverything(visitor)
+                    || !isSessionIndependent(expr)) {
+                return null;
+            }
+        }
+        for (Expression expr : set) {
+            if (expr instanceof DataAnalysisOperation
+                    && !(expr instanceof Aggregate && ((Aggregate) expr).isMergeable())) {
+                return null;
+            }
+        }
+        return set.toArray(new Expression[0]);
+    }
+
+    /**
+     * Check whether the expression can be evaluated by other threads with the
+     * session of this query. Only columns, constants, parameters, arithmetic,
+     * math functions, comparisons, logical conditions and aggregates of
+     * numeric, boolean and, without a collation, character string values are
+     * accepted, because their evaluation doesn't use or change the state of
+     * the session, such as its LOBs, time zone or the connection of Java
+     * functions.
+     *
+     * @param expr the expression
+     * @return whether the expression is independent of the session
+     */
+    private boolean isSessionIndependent(Expression expr) {
+        expr = expr.getNonAliasExpression();
+        if (!(expr instanceof ExpressionColumn || expr instanceof ValueExpression || expr instanceof Parameter
+                || expr instanceof BinaryOperation || expr instanceof UnaryOperation || expr instanceof MathFunction
+                || expr instanceof Comparison
+                || expr instanceof ConditionAndOr || expr instanceof ConditionAndOrN
+                || expr instanceof ConditionNot || expr instanceof NullPredicate || expr instanceof Aggregate)) {
+            return false;
+        }
+        switch (expr.getType().getValueType()) {
+        case Value.NULL:
+        case Value.BOOLEAN:
+        case Value.TINYINT:
+        case Value.SMALLINT:
+        case Value.INTEGER:
+        case Value.BIGINT:
+        case Value.NUMERIC:
+        case Value.REAL:
+        case Value.DOUBLE:
+        case Value.DECFLOAT:
+            break;
+        case Value.CHAR:
+        case Value.VARCHAR:
+        case Value.VARCHAR_IGNORECASE:
+            if (!CompareMode.OFF.equals(session.getDatabase().getCompareMode().getName())) {
+                return false;
+            }
+            break;
+        default:
+            return false;
+        }
+        for (int i = 0, l = expr.getSubexpressionCount(); i < l; i++) {
+            Expression e = expr.getSubexpression(i);
+            if (e != null && !isSessionIndependent(e)) {
+                return false;
+            }
+        }
+        if (expr instanceof Aggregate) {
+            Expression filter = ((Aggregate) expr).getFilterCondition();
+            return filter == null || isSessionIndependent(filter);
+        }
+        return true;
+    }
+
+    /**
+     * Parse a copy of this query for a parallel scan.
+     *
+     * @param sql the SQL statement of this query
+     * @return the copy, or null if it can't be used
+     */
+    private Select prepareCopy(String sql) {
+        Query query;
+        try {
+            query = session.prepareQueryExpression(sql);
+            query.preparePlan();
+        } catch (DbException e) {
+            return null;
+        }
+        if (!(query instanceof Select)) {
+            return null;
+        }
+        Select copy = (Select) query;
+        if (copy.expressions.size() != expressions.size() || copy.filters.size() != 1 || !copy.isGroupQuery
+                || copy.isWindowQuery) {
+            return null;
+        }
+        ArrayList<Parameter> copyParameters = copy.getParameters();
+        if (copyParameters != null && !copyParameters.isEmpty()) {
+            ArrayList<Parameter> list = getParameters();
+            if (list == null) {
+                return null;
+            }
+            outer: for (Parameter p : copyParameters) {
+                for (Parameter original : list) {
+                    if (original.getIndex() == p.getIndex()) {
+                        p.setValue(original.getParamValue());
+                        continue outer;
+                    }
+                }
+                return null;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Read, filter and aggregate the rows of a range.
+     *
+     * @param cursor the cursor over the range
+     * @param columnCount the number of columns
+     * @param stop set if another range has failed
+     * @param checkCanceled whether to check if the statement was canceled,
+     *            only the thread of the session may do that
+     */
+    private void gatherRange(Cursor cursor, int columnCount, AtomicBoolean stop, boolean checkCanceled) {
+        while (!stop.get() && cursor.next()) {
+            if (checkCanceled) {
+                session.checkCanceled();
+            }
+            topTableFilter.set(cursor.get());
+            if (isConditionMet()) {
+                groupData.nextSource();
+                updateAgg(columnCount, DataAnalysisOperation.STAGE_GROUP);
+            }
+        }
+    }
+
+    /**
+     * Merge the groups of a copy of this query into the groups of this query.
+     *
+     * @param from the groups of the copy
+     * @param targets the aggregates and columns of this query
+     * @param sources the aggregates and columns of the copy
+     */
+    private void mergeGroups(SelectGroups from, Expression[] targets, Expression[] sources) {
+        from.done();
+        for (ValueRow key; (key = from.next()) != null;) {
+            groupData.setCurrentGroup(key);
+            for (int i = 0; i < targets.length; i++) {
+                Object data = from.getCurrentGroupExprData(sources[i]);
+                if (data == null) {
+                    continue;
+                }
+                Expression target = targets[i];
+                Object old = groupData.getCurrentGroupExprData(target);
+                if (old == null) {
+                    groupData.setCurrentGroupExprData(target, data);
+                } else if (target instanceof Aggregate) {
+                    ((Aggregate) target).mergeAggregateData(session, old, data);
+                } else if (!session.areEqual((Value) old, (Value) data)) {
+                    throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, target.getTraceSQL());
+                }
+            }
+        }
+    }
 
     /**
      * Update any aggregate expressions with the query stage.
@@ -541,7 +964,7 @@ void updateAgg(int columnCount, int stage) {
         }
     }
 
-    private void processGroupResult(int columnCount, LocalResult result, long offset, boolean quickOffset,
+    private long processGroupResult(int columnCount, LocalResult result, long offset, boolean quickOffset,
             boolean withHaving) {
         for (ValueRow currentGroupsKey; (currentGroupsKey = groupData.next()) != null;) {
             Value[] row = constructGroupResultRow(currentGroupsKey.getList(), columnCount);
@@ -557,6 +980,7 @@ private void processGroupResult(int columnCount, LocalResult result, long offset
             }
             result.addRow(rowForResult(row, columnCount));
         }
+        return offset;
     }
 
     private Value[] constructGroupResultRow(Value[] keyValues, int columnCount) {
@@ -801,6 +1225,10 @@ protected ResultInterface queryWithoutCache(long maxRows, ResultTarget target) {
         if (isWindowQuery || isGroupQuery && !isGroupSortedQuery) {
             result = createLocalResult(result);
         }
+        if (sort != null && !sortUsingIndex && fetch > 0 && !fetchPercent && offset <= Long.MAX_VALUE - fetch) {
+            // only the first sorted rows are kept
+            result.setTopRows(offset + fetch, withTies);
+        }
         if (!lazy && (fetch >= 0 || offset > 0)) {
             result = createLocalResult(result);
         }
@@ -810,30 +1238,36 @@ protected ResultInterface queryWithoutCache(long maxRows, ResultTarget target) {
         ResultTarget to = result != null ? result : target;
         lazy &= to == null;
         LazyResult lazyResult = null;
-        if (fetch != 0) {
-            // Cannot apply limit now if percent is specified
-            long limit = fetchPercent ? -1 : fetch;
-            if (isQuickAggregateQuery) {
-                queryQuick(columnCount, to, quickOffset && offset > 0);
-            } else if (isWindowQuery) {
-                if (isGroupQuery) {
-                    queryGroupWindow(columnCount, result, offset, quickOffset);
+        try {
+            if (fetch != 0) {
+                // Cannot apply limit now if percent is specified
+                long limit = fetchPercent ? -1 : fetch;
+                if (isQuickAggregateQuery) {
+                    queryQuick(columnCount, to, quickOffset && offset > 0);
+                } else if (isWindowQuery) {
+                    if (isGroupQuery) {
+                        queryGroupWindow(columnCount, result, offset, quickOffset);
+                    } else {
+                        queryWindow(columnCount, result, offset, quickOffset);
+                    }
+                } else if (isGroupQuery) {
+                    if (isGroupSortedQuery) {
+                        lazyResult = queryGroupSorted(columnCount, to, offset, quickOffset);
+                    } else {
+                        queryGroup(columnCount, result, offset, quickOffset);
+                    }
+                } else if (isDistinctQuery) {
+                    queryDistinct(to, offset, limit, withTies, quickOffset);
                 } else {
-                    queryWindow(columnCount, result, offset, quickOffset);
+                    lazyResult = queryFlat(columnCount, to, offset, limit, withTies, quickOffset);
                 }
-            } else if (isGroupQuery) {
-                if (isGroupSortedQuery) {
-                    lazyResult = queryGroupSorted(columnCount, to, offset, quickOffset);
-                } else {
-                    queryGroup(columnCount, result, offset, quickOffset);
+                if (quickOffset) {
+                    offset = 0;
                 }
-            } else if (isDistinctQuery) {
-                queryDistinct(to, offset, limit, withTies, quickOffset);
-            } else {
-                lazyResult = queryFlat(columnCount, to, offset, limit, withTies, quickOffset);
             }
-            if (quickOffset) {
-                offset = 0;
+        } finally {
+            if (lazyResult == null) {
+                topTableFilter.endQuery();
             }
         }
         assert lazy == (lazyResult != null) : lazy;
@@ -856,9 +1290,10 @@ protected ResultInterface queryWithoutCache(long maxRows, ResultTarget target) {
     private void disableLazyForJoinSubqueries(final TableFilter top) {
         if (session.isLazyQueryExecution()) {
             top.visit(f -> {
-                if (f != top && f.getTable().getTableType() == TableType.VIEW) {
+                if (f != top && f.getTable().getTableType() == TableType.VIEW
+                        && f.getIndex() instanceof QueryExpressionIndex) {
                     QueryExpressionIndex idx = (QueryExpressionIndex) f.getIndex();
-                    if (idx != null && idx.getQuery() != null) {
+                    if (idx.getQuery() != null) {
                         idx.getQuery().setNeverLazy(true);
                     }
                 }
@@ -1704,6 +2139,8 @@ public boolean isEverything(ExpressionVisitor visitor) {
             }
             break;
         }
+        case ExpressionVisitor.GET_GROUP_DATA_EXPRESSIONS:
+            return false;
         default:
         }
         ExpressionVisitor v2 = visitor.incrementQueryLevel(1);
@@ -1813,6 +2250,12 @@ public void reset() {
             setCurrentRowNumber(0);
             rowNumber = 0;
         }
+
+        @Override
+        public void close() {
+            super.close();
+            topTableFilter.endQuery();
+        }
     }
 
     /**
@@ -1842,6 +2285,8 @@ protected Value[] fetchNextRow() {
                     return row;
                 }
             }
+            // release the memory of hash joins and the like early
+            topTableFilter.endQuery();
             return null;
         }
 
@@ -1855,6 +2300,7 @@ protected boolean skipNextRow() {
                     return true;
                 }
             }
+            topTableFilter.endQuery();
             return false;
         }
 
@@ -1922,6 +2368,7 @@ protected Value[] fetchNextRow() {
                     }
                 }
             }
+            topTableFilter.endQuery();
             Value[] row = null;
             if (previousKeyValues != null) {
                 row = createGroupSortedRow(previousKeyValues, columnCount);
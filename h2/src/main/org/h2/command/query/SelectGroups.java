@@ -17,6 +17,8 @@
 import org.h2.expression.Expression;
 import org.h2.expression.analysis.DataAnalysisOperation;
 import org.h2.expression.analysis.PartitionData;
+import org.h2.value.CompareMode;
+import org.h2.value.DataType;
 import org.h2.value.Value;
 import org.h2.value.ValueRow;
 
@@ -79,22 +81,16 @@ public void reset() {
 
         @Override
         public void nextSource() {
-            if (groupIndex == null) {
-                currentGroupsKey = ValueRow.EMPTY;
-            } else {
-                Value[] keyValues = new Value[groupIndex.length];
-                // update group
-                for (int i = 0; i < groupIndex.length; i++) {
-                    int idx = groupIndex[i];
-                    Expression expr = expressions.get(idx);
-                    keyValues[i] = expr.getValue(session);
-                }
-                currentGroupsKey = ValueRow.get(keyValues);
-            }
-            Object[] values = groupByData.get(currentGroupsKey);
+            setCurrentGroup(getGroupKey(groupIndex));
+        }
+
+        @Override
+        void setCurrentGroup(ValueRow key) {
+            currentGroupsKey = key;
+            Object[] values = groupByData.get(key);
             if (values == null) {
                 values = createRow();
-                groupByData.put(currentGroupsKey, values);
+                groupByData.put(key, values);
             }
             currentGroupByExprData = values;
             currentGroupRowId++;
@@ -144,6 +140,275 @@ public void resetLazy() {
         }
     }
 
+    /**
+     * Grouped data in an open addressing hash table. The groups are returned
+     * in no particular order.
+     */
+    private static final class Hashed extends SelectGroups {
+
+        private final int[] groupIndex;
+
+        private final CompareMode compareMode;
+
+        /**
+         * The keys of the groups, or null for empty slots.
+         */
+        private ValueRow[] keys;
+
+        /**
+         * The hash codes of the keys.
+         */
+        private int[] hashes;
+
+        /**
+         * The group-by expression data e.g. AggregateData, or null for groups
+         * that were removed.
+         */
+        private Object[][] data;
+
+        private int size;
+
+        /**
+         * The slot of the current group, or -1.
+         */
+        private int current;
+
+        /**
+         * The slot for {@link #next()} method.
+         */
+        private int cursor;
+
+        Hashed(SessionLocal session, ArrayList<Expression> expressions, int[] groupIndex) {
+            super(session, expressions);
+            this.groupIndex = groupIndex;
+            compareMode = session.getDatabase().getCompareMode();
+            current = -1;
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            keys = new ValueRow[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+            data = new Object[INITIAL_CAPACITY][];
+            size = 0;
+            current = -1;
+            cursor = -1;
+        }
+
+        @Override
+        public void nextSource() {
+            ValueRow key = getGroupKey(groupIndex);
+            int hash = hash(key);
+            int slot = find(key, hash);
+            if (slot < 0) {
+                slot = add(~slot, key, hash);
+            }
+            setCurrent(slot);
+        }
+
+        @Override
+        int nextSource(int maxGroups, int level) {
+            ValueRow key = getGroupKey(groupIndex);
+            int hash = hash(key);
+            int slot = find(key, hash);
+            if (slot < 0) {
+                if (size >= maxGroups && level < MAX_SPILL_LEVEL && groupIndex != null) {
+                    // the lowest bits are used for slots
+                    return hash >>> 32 - (level + 1) * SPILL_BITS & SPILL_PARTITIONS - 1;
+                }
+                slot = add(~slot, key, hash);
+            }
+            setCurrent(slot);
+            return -1;
+        }
+
+        @Override
+        void setCurrentGroup(ValueRow key) {
+            int hash = hash(key);
+            int slot = find(key, hash);
+            if (slot < 0) {
+                slot = add(~slot, key, hash);
+            }
+            setCurrent(slot);
+        }
+
+        private void setCurrent(int slot) {
+            current = slot;
+            currentGroupByExprData = data[slot];
+            currentGroupRowId++;
+        }
+
+        /**
+         * Find the slot of the specified key.
+         *
+         * @param key the key
+         * @param hash the hash code of the key
+         * @return the slot, or the inverted empty slot for this key if there
+         *         is no such key
+         */
+        private int find(ValueRow key, int hash) {
+            ValueRow[] keys = this.keys;
+            int mask = keys.length - 1;
+            for (int slot = hash & mask;; slot = slot + 1 & mask) {
+                ValueRow k = keys[slot];
+                if (k == null) {
+                    return ~slot;
+                }
+                if (hashes[slot] == hash && compareMode.compare(k, key) == 0) {
+                    return slot;
+                }
+            }
+        }
+
+        private int add(int slot, ValueRow key, int hash) {
+            if (size + 1 > keys.length * 3 / 4) {
+                grow();
+                slot = ~find(key, hash);
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            data[slot] = createRow();
+            size++;
+            return slot;
+        }
+
+        private void grow() {
+            ValueRow[] oldKeys = keys;
+            int[] oldHashes = hashes;
+            Object[][] oldData = data;
+            int capacity = oldKeys.length << 1, mask = capacity - 1;
+            keys = new ValueRow[capacity];
+            hashes = new int[capacity];
+            data = new Object[capacity][];
+            for (int i = 0, l = oldKeys.length; i < l; i++) {
+                ValueRow k = oldKeys[i];
+                if (k != null) {
+                    int hash = oldHashes[i], slot = hash & mask;
+                    while (keys[slot] != null) {
+                        slot = slot + 1 & mask;
+                    }
+                    keys[slot] = k;
+                    hashes[slot] = hash;
+                    data[slot] = oldData[i];
+                }
+            }
+        }
+
+        @Override
+        void updateCurrentGroupExprData() {
+            // this can be -1 in lazy mode
+            if (current >= 0) {
+                // since we changed the size of the array, update the object in
+                // the hash table
+                data[current] = currentGroupByExprData;
+            }
+        }
+
+        @Override
+        public void done() {
+            super.done();
+            if (groupIndex == null && size == 0) {
+                setCurrentGroup(ValueRow.EMPTY);
+            }
+            current = -1;
+            cursor = -1;
+        }
+
+        @Override
+        public ValueRow next() {
+            for (int l = keys.length; ++cursor < l;) {
+                Object[] values = data[cursor];
+                if (values != null) {
+                    currentGroupByExprData = values;
+                    currentGroupRowId++;
+                    return keys[cursor];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void remove() {
+            // the key remains in the table, so that other keys can be found
+            data[cursor] = null;
+            size--;
+            currentGroupByExprData = null;
+            currentGroupRowId--;
+        }
+
+        @Override
+        public void resetLazy() {
+            super.resetLazy();
+            current = -1;
+        }
+
+        /**
+         * Get the hash code of a key. Keys that are equal in the compare mode
+         * of the database have the same hash code.
+         *
+         * @param key the key
+         * @return the hash code
+         */
+        private static int hash(ValueRow key) {
+            int h = 0;
+            for (Value v : key.getList()) {
+                int t = v.getValueType();
+                int vh;
+                if (t == Value.NULL) {
+                    vh = 0;
+                } else if (DataType.isNumericType(t)) {
+                    // numbers of different data types may be equal
+                    double d = v.getDouble();
+                    vh = d == 0d ? 0 : Double.hashCode(d);
+                } else {
+                    vh = v.hashCode();
+                }
+                h = h * 31 + vh;
+            }
+            // spread the bits, both lowest and highest bits are used
+            h *= 0x9e3779b9;
+            return h ^ h >>> 16;
+        }
+
+        /**
+         * Check whether the groups can be kept in a hash table: equal values
+         * of all group expressions must have the same hash code.
+         *
+         * @param session the session
+         * @param expressions the expressions
+         * @param groupIndex the indexes of group expressions, or null
+         * @return whether the groups can be hashed
+         */
+        static boolean isHashable(SessionLocal session, ArrayList<Expression> expressions, int[] groupIndex) {
+            if (groupIndex != null) {
+                for (int idx : groupIndex) {
+                    int t = expressions.get(idx).getType().getValueType();
+                    switch (t) {
+                    case Value.VARCHAR:
+                        if (!CompareMode.OFF.equals(session.getDatabase().getCompareMode().getName())) {
+                            return false;
+                        }
+                        break;
+                    case Value.NULL:
+                    case Value.VARBINARY:
+                    case Value.BOOLEAN:
+                    case Value.DATE:
+                    case Value.TIME:
+                    case Value.TIMESTAMP:
+                    case Value.UUID:
+                        break;
+                    default:
+                        if (!DataType.isNumericType(t)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
     private static final class Plain extends SelectGroups {
 
         private ArrayList<Object[]> rows;
@@ -194,6 +459,26 @@ public ValueRow next() {
         }
     }
 
+    /**
+     * The number of bits of hash codes of group keys used to select a
+     * partition for the rows of groups that don't fit into memory.
+     */
+    static final int SPILL_BITS = 4;
+
+    /**
+     * The number of partitions for the rows of groups that don't fit into
+     * memory.
+     */
+    static final int SPILL_PARTITIONS = 1 << SPILL_BITS;
+
+    /**
+     * The maximum number of times the rows of a partition may be partitioned
+     * again.
+     */
+    static final int MAX_SPILL_LEVEL = 32 / SPILL_BITS - 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
     /**
      * The database session.
      */
@@ -245,7 +530,11 @@ public ValueRow next() {
      */
     public static SelectGroups getInstance(SessionLocal session, ArrayList<Expression> expressions,
             boolean isGroupQuery, int[] groupIndex) {
-        return isGroupQuery ? new Grouped(session, expressions, groupIndex) : new Plain(session, expressions);
+        if (!isGroupQuery) {
+            return new Plain(session, expressions);
+        }
+        return Hashed.isHashable(session, expressions, groupIndex) ? new Hashed(session, expressions, groupIndex)
+                : new Grouped(session, expressions, groupIndex);
     }
 
     SelectGroups(SessionLocal session, ArrayList<Expression> expressions) {
@@ -302,6 +591,27 @@ public final void setCurrentGroupExprData(Expression expr, Object obj) {
         currentGroupByExprData[index] = obj;
     }
 
+    /**
+     * Evaluates the group expressions for the current source row.
+     *
+     * @param groupIndex
+     *            the indexes of group expressions, or null
+     * @return the key of the group
+     */
+    final ValueRow getGroupKey(int[] groupIndex) {
+        if (groupIndex == null) {
+            return ValueRow.EMPTY;
+        }
+        Value[] keyValues = new Value[groupIndex.length];
+        // update group
+        for (int i = 0; i < groupIndex.length; i++) {
+            int idx = groupIndex[i];
+            Expression expr = expressions.get(idx);
+            keyValues[i] = expr.getValue(session);
+        }
+        return ValueRow.get(keyValues);
+    }
+
     /**
      * Creates new object arrays to holds group-by data.
      *
@@ -385,6 +695,37 @@ public void reset() {
      */
     public abstract void nextSource();
 
+    /**
+     * Invoked for each source row instead of {@link #nextSource()} if the
+     * rows of groups that don't fit into memory can be processed later. Such
+     * rows are assigned to one of {@link #SPILL_PARTITIONS} partitions by the
+     * hash code of their group key, all rows of a group are assigned to the
+     * same partition.
+     *
+     * @param maxGroups
+     *            the maximum number of groups to keep in memory
+     * @param level
+     *            how many times the rows were partitioned before
+     * @return -1 if the data for aggregates of the group of this row is set
+     *         up, or the partition of the row if its group is not in memory
+     */
+    int nextSource(int maxGroups, int level) {
+        nextSource();
+        return -1;
+    }
+
+    /**
+     * Moves to the group with the specified key, the group is created if it
+     * doesn't exist. This is used to merge groups computed over different
+     * sets of rows.
+     *
+     * @param key
+     *            the key of the group
+     */
+    void setCurrentGroup(ValueRow key) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Invoked after all source rows are evaluated.
      */
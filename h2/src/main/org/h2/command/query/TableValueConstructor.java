@@ -293,6 +293,9 @@ public boolean allowGlobalConditions() {
 
     @Override
     public boolean isEverything(ExpressionVisitor visitor) {
+        if (visitor.getType() == ExpressionVisitor.GET_GROUP_DATA_EXPRESSIONS) {
+            return false;
+        }
         ExpressionVisitor v2 = visitor.incrementQueryLevel(1);
         for (Expression e : expressionArray) {
             if (!e.isEverything(v2)) {
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.util.Arrays;
+
+import org.h2.api.ErrorCode;
+import org.h2.mvstore.DataUtils;
+
+/**
+ * <p>
+ * This class implements the LZ4 block format. LZ4 is a Lempel-Ziv variant
+ * with byte-aligned output, optimized for decompression speed: literal runs
+ * and back-references are copied with bulk array copies.
+ * </p>
+ * <p>
+ * The compressed data is a list of sequences. Each sequence starts with a
+ * token byte: the upper four bits are the number of literals, the lower four
+ * bits are the match length minus 4. If a length is 15, it is followed by
+ * bytes that are added to it, until a byte other than 255 is read. Then the
+ * literals follow, then the offset of the match (2 bytes, little endian).
+ * The last sequence only contains literals. The last 5 bytes are always
+ * literals, and the last match starts at least 12 bytes before the end.
+ * </p>
+ * <p>
+ * Each instance should be used by a single thread only.
+ * </p>
+ */
+public final class CompressLZ4 implements Compressor {
+
+    private static final int HASH_LOG = 12;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xffff;
+
+    /**
+     * The position of the last occurrence of a 4 byte sequence, by hash.
+     */
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    @Override
+    public void setOptions(String options) {
+        // nothing to do
+    }
+
+    @Override
+    public int getAlgorithm() {
+        return Compressor.LZ4;
+    }
+
+    @Override
+    public int compress(byte[] in, int inPos, int inLen, byte[] out, int outPos) {
+        int end = inPos + inLen;
+        int anchor = inPos;
+        int op = outPos;
+        if (inLen > MATCH_FIND_LIMIT) {
+            int[] hashTable = this.hashTable;
+            Arrays.fill(hashTable, -1);
+            int matchLimit = end - LAST_LITERALS;
+            int findLimit = end - MATCH_FIND_LIMIT;
+            int ip = inPos;
+            while (ip < findLimit) {
+                int sequence = readInt(in, ip);
+                int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+                int ref = hashTable[hash];
+                hashTable[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(in, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit && in[ref + matchLen] == in[ip + matchLen]) {
+                    matchLen++;
+                }
+                op = writeSequence(in, anchor, ip - anchor, out, op, ip - ref, matchLen);
+                ip += matchLen;
+                anchor = ip;
+            }
+        }
+        int literalLen = end - anchor;
+        if (literalLen >= 15) {
+            out[op++] = (byte) 0xf0;
+            op = writeLength(out, op, literalLen - 15);
+        } else {
+            out[op++] = (byte) (literalLen << 4);
+        }
+        System.arraycopy(in, anchor, out, op, literalLen);
+        return op + literalLen;
+    }
+
+    private static int writeSequence(byte[] in, int literalPos, int literalLen, byte[] out, int op, int offset,
+            int matchLen) {
+        int tokenPos = op++;
+        int token;
+        if (literalLen >= 15) {
+            token = 0xf0;
+            op = writeLength(out, op, literalLen - 15);
+        } else {
+            token = literalLen << 4;
+        }
+        System.arraycopy(in, literalPos, out, op, literalLen);
+        op += literalLen;
+        out[op++] = (byte) offset;
+        out[op++] = (byte) (offset >>> 8);
+        int len = matchLen - MIN_MATCH;
+        if (len >= 15) {
+            token |= 0x0f;
+            op = writeLength(out, op, len - 15);
+        } else {
+            token |= len;
+        }
+        out[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(byte[] out, int op, int len) {
+        while (len >= 255) {
+            out[op++] = (byte) 255;
+            len -= 255;
+        }
+        out[op++] = (byte) len;
+        return op;
+    }
+
+    private static int readInt(byte[] in, int pos) {
+        return (in[pos] & 255) | (in[pos + 1] & 255) << 8 | (in[pos + 2] & 255) << 16 | in[pos + 3] << 24;
+    }
+
+    @Override
+    public void expand(byte[] in, int inPos, int inLen, byte[] out, int outPos, int outLen) {
+        int ip = inPos;
+        int end = inPos + inLen;
+        int op = outPos;
+        int outEnd = outPos + outLen;
+        while (true) {
+            int token = in[ip++] & 255;
+            int literalLen = token >>> 4;
+            if (literalLen == 15) {
+                int b;
+                do {
+                    b = in[ip++] & 255;
+                    literalLen += b;
+                } while (b == 255);
+            }
+            System.arraycopy(in, ip, out, op, literalLen);
+            ip += literalLen;
+            op += literalLen;
+            if (ip >= end) {
+                break;
+            }
+            int offset = (in[ip] & 255) | (in[ip + 1] & 255) << 8;
+            ip += 2;
+            int matchLen = token & 0x0f;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    b = in[ip++] & 255;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            int ref = op - offset;
+            if (offset == 0 || ref < outPos || op + matchLen > outEnd) {
+                throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR,
+                        "Illegal match at {0}", ip - inPos);
+            }
+            if (offset >= matchLen) {
+                System.arraycopy(out, ref, out, op, matchLen);
+                op += matchLen;
+            } else {
+                // overlapping copy
+                for (int i = 0; i < matchLen; i++) {
+                    out[op++] = out[ref++];
+                }
+            }
+        }
+        if (op != outEnd) {
+            throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR,
+                    "Expected {0} bytes, got {1}", outLen, op - outPos);
+        }
+    }
+
+}
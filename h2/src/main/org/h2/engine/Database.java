@@ -16,6 +16,7 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.h2.api.DatabaseEventListener;
@@ -212,6 +213,12 @@ public final class Database implements DataHandler, CastDataProvider {
     private RowFactory rowFactory = RowFactory.getRowFactory();
     private boolean ignoreCatalogs;
 
+    /**
+     * The threads that help to read large tables in parallel, shared by all
+     * queries of this database, or null if parallel scans are disabled.
+     */
+    private final ForkJoinPool parallelScanPool;
+
     private Authenticator authenticator;
 
     public Database(ConnectionInfo ci, String cipher) {
@@ -222,6 +229,12 @@ public Database(ConnectionInfo ci, String cipher) {
         }
         String databaseName = ci.getName();
         this.dbSettings = ci.getDbSettings();
+        int parallelScanThreads = dbSettings.parallelScanThreads;
+        if (parallelScanThreads <= 0) {
+            parallelScanThreads = Runtime.getRuntime().availableProcessors();
+        }
+        // the thread of the query itself reads a part of the table too
+        this.parallelScanPool = parallelScanThreads > 1 ? new ForkJoinPool(parallelScanThreads - 1) : null;
         this.compareMode = CompareMode.getInstance(null, 0);
         this.persistent = ci.isPersistent();
         this.filePasswordHash = ci.getFilePasswordHash();
@@ -1221,6 +1234,9 @@ private void closeImpl(boolean fromShutdownHook) {
                     systemSession.close();
                     systemSession = null;
                 }
+                if (parallelScanPool != null) {
+                    parallelScanPool.shutdown();
+                }
                 tempFileDeleter.deleteAll();
                 closeOpenFilesAndUnlock();
             } catch (DbException | MVStoreException e) {
@@ -2184,6 +2200,16 @@ public TempFileDeleter getTempFileDeleter() {
         return tempFileDeleter;
     }
 
+    /**
+     * Get the pool of threads for parallel table scans. Its size limits the
+     * number of threads used by all parallel scans of this database together.
+     *
+     * @return the pool, or null if parallel scans are disabled
+     */
+    public ForkJoinPool getParallelScanPool() {
+        return parallelScanPool;
+    }
+
     /**
      * Get the first user defined table, excluding the LOB_BLOCKS table that the
      * Recover tool creates.
@@ -281,6 +281,96 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean compressData = get("COMPRESS", false);
 
+    /**
+     * Database setting <code>PARALLEL_SERIALIZATION</code>
+     * (default: false).
+     * Serialize changed pages of the MVStore using multiple threads when
+     * storing.
+     */
+    public final boolean parallelSerialization = get("PARALLEL_SERIALIZATION", false);
+
+    /**
+     * Database setting <code>SYNC_ON_COMMIT</code>
+     * (default: false).
+     * Sync the database file each time changes are stored on commit, that is
+     * when <code>WRITE_DELAY</code> is 0. Concurrent commits share one chunk
+     * write and one sync.
+     */
+    public final boolean syncOnCommit = get("SYNC_ON_COMMIT", false);
+
+    /**
+     * Database setting <code>MEMORY_MAPPED_READ</code>
+     * (default: false).
+     * Read pages of the MVStore from memory mapped segments of the database
+     * file. Not used for encrypted databases.
+     */
+    public final boolean memoryMappedRead = get("MEMORY_MAPPED_READ", false);
+
+    /**
+     * Database setting <code>OFF_HEAP_CACHE_SIZE</code>
+     * (default: 0).
+     * The size of the off-heap page cache of the MVStore in MB, 0 to disable
+     * it. This cache keeps serialized pages in direct memory and is used when
+     * pages are not found in the regular cache, see <code>CACHE_SIZE</code>.
+     */
+    public final int offHeapCacheSize = get("OFF_HEAP_CACHE_SIZE", 0);
+
+    /**
+     * Database setting <code>READ_AHEAD</code>
+     * (default: 0).
+     * The number of leaf pages of the MVStore, which table and index scans
+     * read into the cache in the background, once they move from one leaf
+     * page to the next one. 0 disables read-ahead.
+     */
+    public final int readAhead = get("READ_AHEAD", 0);
+
+    /**
+     * Database setting <code>AUTO_COMPACT_WRITE_RATE</code>
+     * (default: 0).
+     * The maximum rate, at which the background compaction of the MVStore
+     * may write, in KB per second. Background compaction pauses while other
+     * writes exceed this rate. 0 means the rate is not limited.
+     */
+    public final int autoCompactWriteRate = get("AUTO_COMPACT_WRITE_RATE", 0);
+
+    /**
+     * Database setting <code>AUTO_SHRINK</code>
+     * (default: false).
+     * Shrink the database file in the background, while it is in use, if
+     * its fill rate is lower than <code>AUTO_COMPACT_FILL_RATE</code>.
+     */
+    public final boolean autoShrink = get("AUTO_SHRINK", false);
+
+    /**
+     * Database setting <code>COLUMNAR_LAYOUT</code>
+     * (default: false).
+     * Store committed rows of tables column by column within each leaf page
+     * of the MVStore, with runs of equal values and INTEGER or BIGINT columns
+     * stored as differences between consecutive values. This usually makes
+     * pages smaller and compression more efficient. Pages written with
+     * either layout can be read regardless of this setting.
+     */
+    public final boolean columnarLayout = get("COLUMNAR_LAYOUT", false);
+
+    /**
+     * Database setting <code>CREATE_INDEX_THREADS</code>
+     * (default: 1).
+     * The number of threads that read and sort the rows of a table when an
+     * index is created or rebuilt in a persistent database. 0 means one
+     * thread per available processor.
+     */
+    public final int createIndexThreads = get("CREATE_INDEX_THREADS", 1);
+
+    /**
+     * Database setting <code>PARALLEL_SCAN_THREADS</code>
+     * (default: 1).
+     * The number of threads that read, filter and aggregate the rows of a
+     * large persistent table in a grouped or aggregate query over a single
+     * table without usable index conditions. The rows are split into ranges
+     * of the primary key. 0 means one thread per available processor.
+     */
+    public final int parallelScanThreads = get("PARALLEL_SCAN_THREADS", 1);
+
     /**
      * Database setting <code>IGNORE_CATALOGS</code>
      * (default: false).
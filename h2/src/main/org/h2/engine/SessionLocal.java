@@ -214,6 +214,13 @@ static Session getThreadLocalSession() {
     private ArrayList<ValueLob> temporaryLobs;
 
     private Transaction transaction;
+
+    /**
+     * Time in nanoseconds spent waiting for row locks in previous
+     * transactions.
+     */
+    private volatile long lockWaitTime;
+
     private final AtomicReference<State> state = new AtomicReference<>(State.INIT);
     private long startStatement = -1;
 
@@ -673,6 +680,7 @@ public void commit(boolean ddl) {
                 removeTemporaryLobs(true);
                 endTransaction();
             } finally {
+                lockWaitTime += transaction.getLockWaitTime();
                 transaction = null;
             }
             if (!ddl) {
@@ -809,6 +817,7 @@ public void rollbackTo(Savepoint savepoint) {
             markUsedTablesAsUpdated();
             if (savepoint == null) {
                 transaction.rollback();
+                lockWaitTime += transaction.getLockWaitTime();
                 transaction = null;
             } else {
                 transaction.rollbackToSavepoint(savepoint.transactionSavepoint);
@@ -1663,7 +1672,7 @@ public void startStatementWithinTransaction(Command command) {
     private static void addTableToDependencies(MVTable table, HashSet<MVMap<Object,VersionedValue<Object>>> maps) {
         for (Index index : table.getIndexes()) {
             if (index instanceof MVIndex) {
-                maps.add(((MVIndex) index).getMVMap());
+                maps.addAll(((MVIndex) index).getMVMaps());
             }
         }
     }
@@ -1750,6 +1759,17 @@ public int getBlockingSessionId() {
         return transaction == null ? 0 : transaction.getBlockerId();
     }
 
+    /**
+     * Get the total time this session has spent waiting for rows locked by
+     * other sessions, including the current wait, if any.
+     *
+     * @return the lock wait time in milliseconds
+     */
+    public long getLockWaitTime() {
+        Transaction t = transaction;
+        return (lockWaitTime + (t == null ? 0L : t.getLockWaitTime())) / 1_000_000L;
+    }
+
     @Override
     public void onRollback(MVMap<Object, VersionedValue<Object>> map, Object key,
                             VersionedValue<Object> existingValue,
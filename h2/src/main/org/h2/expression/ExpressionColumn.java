@@ -394,6 +394,9 @@ public boolean isEverything(ExpressionVisitor visitor) {
                 visitor.addDependency(column.getTable());
             }
             return true;
+        case ExpressionVisitor.GET_GROUP_DATA_EXPRESSIONS:
+            visitor.addGroupDataExpression(this);
+            return true;
         case ExpressionVisitor.GET_COLUMNS1:
             if (column == null) {
                 throw DbException.get(ErrorCode.COLUMN_NOT_FOUND_1, getTraceSQL());
@@ -6,6 +6,7 @@
 package org.h2.expression;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import org.h2.command.query.AllColumnsForPlan;
 import org.h2.engine.DbObject;
 import org.h2.table.Column;
@@ -142,6 +143,13 @@ public final class ExpressionVisitor {
      */
     public static final int DECREMENT_QUERY_LEVEL = 11;
 
+    /**
+     * Request to get the aggregates and columns that keep data for the groups
+     * of a query (addGroupDataExpression), in the order of their appearance.
+     * Queries are not supported.
+     */
+    public static final int GET_GROUP_DATA_EXPRESSIONS = 12;
+
     /**
      * The visitor singleton for the type QUERY_COMPARABLE.
      */
@@ -267,6 +275,18 @@ public static ExpressionVisitor getDecrementQueryLevelVisitor(HashSet<ColumnReso
         return new ExpressionVisitor(DECREMENT_QUERY_LEVEL, queryDecrement, columnResolvers, null, null, null, null);
     }
 
+    /**
+     * Create a new visitor to get the aggregates and columns that keep data
+     * for the groups of a query.
+     *
+     * @param expressions the set of expressions, in the order of their
+     *            appearance
+     * @return the new visitor
+     */
+    public static ExpressionVisitor getGroupDataExpressionsVisitor(LinkedHashSet<Expression> expressions) {
+        return new ExpressionVisitor(GET_GROUP_DATA_EXPRESSIONS, 0, expressions, null, null, null, null);
+    }
+
     /**
      * Add a new dependency to the set of dependencies.
      * This is used for GET_DEPENDENCIES visitors.
@@ -301,6 +321,17 @@ void addColumn2(Column column) {
         }
     }
 
+    /**
+     * Add an expression that keeps data for groups.
+     * This is used for GET_GROUP_DATA_EXPRESSIONS visitors.
+     *
+     * @param expression the expression
+     */
+    @SuppressWarnings("unchecked")
+    public void addGroupDataExpression(Expression expression) {
+        ((HashSet<Expression>) set).add(expression);
+    }
+
     /**
      * Get the dependency set.
      * This is used for GET_DEPENDENCIES visitors.
@@ -495,6 +495,62 @@ protected Object createAggregateData() {
         return new AggregateDataCollecting(distinct, false, NullCollectionMode.IGNORED);
     }
 
+    /**
+     * Returns whether the data of this aggregate, computed over disjoint sets
+     * of rows, can be merged with {@link #mergeAggregateData(SessionLocal, Object, Object)}.
+     *
+     * @return whether the aggregate data can be merged
+     */
+    public boolean isMergeable() {
+        if (over != null) {
+            return false;
+        }
+        switch (aggregateType) {
+        case COUNT_ALL:
+        case REGR_COUNT:
+        case MIN:
+        case MAX:
+        case BIT_AND_AGG:
+        case BIT_OR_AGG:
+        case BIT_NAND_AGG:
+        case BIT_NOR_AGG:
+        case ANY:
+        case EVERY:
+        case REGR_AVGX:
+        case REGR_AVGY:
+        case REGR_SXX:
+        case REGR_SYY:
+            return true;
+        case COUNT:
+        case SUM:
+        case BIT_XOR_AGG:
+        case BIT_XNOR_AGG:
+        case AVG:
+        case STDDEV_POP:
+        case STDDEV_SAMP:
+        case VAR_POP:
+        case VAR_SAMP:
+            return !distinct;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Merge the data of this aggregate, computed over a different set of
+     * rows, into the target data.
+     *
+     * @param session
+     *            the session
+     * @param target
+     *            the data to update
+     * @param source
+     *            the data to merge
+     */
+    public void mergeAggregateData(SessionLocal session, Object target, Object source) {
+        ((AggregateData) target).merge(session, (AggregateData) source);
+    }
+
     @Override
     public Value getValue(SessionLocal session) {
         return select.isQuickAggregateQuery() ? getValueQuick(session) : super.getValue(session);
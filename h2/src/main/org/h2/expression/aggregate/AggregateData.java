@@ -6,6 +6,7 @@
 package org.h2.expression.aggregate;
 
 import org.h2.engine.SessionLocal;
+import org.h2.message.DbException;
 import org.h2.value.Value;
 
 /**
@@ -29,4 +30,15 @@ abstract class AggregateData {
      */
     abstract Value getValue(SessionLocal session);
 
+    /**
+     * Merge the data of another aggregate of the same kind, computed over a
+     * different set of rows, into this aggregate.
+     *
+     * @param session the session
+     * @param other the data of the other aggregate
+     */
+    void merge(SessionLocal session, AggregateData other) {
+        throw DbException.getInternalError(getClass().getName());
+    }
+
 }
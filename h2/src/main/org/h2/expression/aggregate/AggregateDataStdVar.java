@@ -50,6 +50,27 @@ void add(SessionLocal session, Value v) {
         }
     }
 
+    @Override
+    void merge(SessionLocal session, AggregateData other) {
+        AggregateDataStdVar o = (AggregateDataStdVar) other;
+        if (o.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = o.count;
+            mean = o.mean;
+            m2 = o.m2;
+            return;
+        }
+        // Chan's method to combine the results of Welford's method for two
+        // sets of values
+        long n = count + o.count;
+        double delta = o.mean - mean;
+        mean += delta * o.count / n;
+        m2 += o.m2 + delta * delta * count * o.count / n;
+        count = n;
+    }
+
     @Override
     Value getValue(SessionLocal session) {
         double v;
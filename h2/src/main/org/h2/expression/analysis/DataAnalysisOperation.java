@@ -369,6 +369,9 @@ protected Object getGroupData(SelectGroups groupData, boolean ifExists) {
 
     @Override
     public boolean isEverything(ExpressionVisitor visitor) {
+        if (visitor.getType() == ExpressionVisitor.GET_GROUP_DATA_EXPRESSIONS) {
+            visitor.addGroupDataExpression(this);
+        }
         if (over == null) {
             return true;
         }
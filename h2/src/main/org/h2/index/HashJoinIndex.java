@@ -0,0 +1,253 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.Database;
+import org.h2.engine.SessionLocal;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVTempRowMap;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.value.CompareMode;
+import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueNull;
+
+/**
+ * A hash table over the rows of a table, built on the first lookup of a query
+ * and used to join this table on a column without a suitable index. The rows
+ * are moved to a temporary file if there are more rows than MAX_MEMORY_ROWS.
+ */
+public final class HashJoinIndex extends Index {
+
+    private final Column column;
+
+    private final boolean integer;
+
+    private final int maxMemoryRows;
+
+    private boolean built;
+
+    private ArrayList<Row> rows;
+
+    private HashMap<Value, ArrayList<Row>> map;
+
+    private MVTempRowMap external;
+
+    private HashJoinIndex(Table table, Column column) {
+        super(table, 0, "HASH_JOIN", IndexColumn.wrap(new Column[] { column }), 0, IndexType.createNonUnique(false));
+        this.column = column;
+        integer = isInteger(column.getType().getValueType());
+        Database db = table.getDatabase();
+        maxMemoryRows = db.isPersistent() && !db.isReadOnly() ? db.getMaxMemoryRows() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get a hash join index for the specified table, if the search masks have
+     * an equality condition on a column that can be hashed.
+     *
+     * @param table the table
+     * @param masks per-column comparison bit masks, see constants in
+     *            IndexCondition
+     * @return the index, or {@code null}
+     */
+    public static HashJoinIndex get(Table table, int[] masks) {
+        Column best = null;
+        Column[] columns = table.getColumns();
+        ArrayList<Index> indexes = table.getIndexes();
+        loop: for (int i = 0, l = columns.length; i < l; i++) {
+            Column c = columns[i];
+            if ((masks[i] & IndexCondition.EQUALITY) == IndexCondition.EQUALITY && isHashable(table, c)
+                    && (best == null || c.getSelectivity() > best.getSelectivity())) {
+                if (indexes != null) {
+                    for (Index index : indexes) {
+                        if (index.getColumnIndex(c) == 0) {
+                            continue loop;
+                        }
+                    }
+                }
+                best = c;
+            }
+        }
+        return best != null ? new HashJoinIndex(table, best) : null;
+    }
+
+    private static boolean isHashable(Table table, Column column) {
+        // only the types where equal values are also equal Java objects
+        int type = column.getType().getValueType();
+        switch (type) {
+        case Value.VARCHAR:
+            return CompareMode.OFF.equals(table.getDatabase().getCompareMode().getName());
+        case Value.VARBINARY:
+        case Value.BOOLEAN:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+            return true;
+        default:
+            return isInteger(type);
+        }
+    }
+
+    private static boolean isInteger(int type) {
+        return type >= Value.TINYINT && type <= Value.BIGINT;
+    }
+
+    /**
+     * Get the key of the specified value in the hash table.
+     *
+     * @param v the value
+     * @return the key, or {@code null} if the value has a different data type
+     *         and all rows need to be checked
+     */
+    private Value getKey(Value v) {
+        if (v == ValueNull.INSTANCE) {
+            return v;
+        }
+        int type = v.getValueType();
+        if (integer) {
+            return isInteger(type) ? ValueBigint.get(v.getLong()) : null;
+        }
+        return type == column.getType().getValueType() ? v : null;
+    }
+
+    private void build(SessionLocal session) {
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        int columnId = column.getColumnId();
+        rows = new ArrayList<>();
+        map = new HashMap<>();
+        while (cursor.next()) {
+            Row row = cursor.get();
+            Value key = getKey(row.getValue(columnId));
+            if (external != null) {
+                external.add(key, row);
+                continue;
+            }
+            rows.add(row);
+            map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+            if (rows.size() > maxMemoryRows) {
+                external = new MVTempRowMap(database, table);
+                for (Row r : rows) {
+                    external.add(getKey(r.getValue(columnId)), r);
+                }
+                rows = null;
+                map = null;
+            }
+        }
+        built = true;
+    }
+
+    /**
+     * Remove the hash table, so that it is built again on the next lookup.
+     */
+    public void reset() {
+        built = false;
+        rows = null;
+        map = null;
+        if (external != null) {
+            external.close();
+            external = null;
+        }
+    }
+
+    @Override
+    public Cursor find(SessionLocal session, SearchRow first, SearchRow last) {
+        if (!built) {
+            build(session);
+        }
+        int columnId = column.getColumnId();
+        Value v = first != null ? first.getValue(columnId) : null;
+        Value key = null;
+        if (v != null && last != null && last.getValue(columnId) == v) {
+            key = getKey(v);
+        }
+        // the remaining conditions are checked by the table filter
+        if (external != null) {
+            return external.find(key);
+        }
+        if (key == null) {
+            return new MetaCursor(rows);
+        }
+        ArrayList<Row> list = map.get(key);
+        return list != null ? new MetaCursor(list) : new SingleRowCursor(null);
+    }
+
+    @Override
+    public double getCost(SessionLocal session, int[] masks, TableFilter[] filters, int filter,
+            SortOrder sortOrder, AllColumnsForPlan allColumnsSet) {
+        // The table is read only once per query, a lookup returns the rows
+        // without another lookup in the scan index
+        long rowCount = table.canGetRowCount(session) ? table.getRowCountApproximation(session)
+                : database.getSettings().estimatedFunctionTableRows;
+        return 10 * (getCostRangeIndex(masks, rowCount, filters, filter, null, true, allColumnsSet) + 10);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return column.getSQL(table.getSQL(new StringBuilder(), TRACE_SQL_FLAGS).append(".hashJoin("),
+                TRACE_SQL_FLAGS).append(')').toString();
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void close(SessionLocal session) {
+        reset();
+    }
+
+    @Override
+    public void add(SessionLocal session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void remove(SessionLocal session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void remove(SessionLocal session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void truncate(SessionLocal session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public long getRowCount(SessionLocal session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation(SessionLocal session) {
+        return table.getRowCountApproximation(session);
+    }
+
+}
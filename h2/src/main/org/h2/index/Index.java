@@ -254,6 +254,20 @@ public boolean isFindUsingFullTableScan() {
      */
     public abstract Cursor find(SessionLocal session, SearchRow first, SearchRow last);
 
+    /**
+     * Split a scan over all rows of this index into cursors over disjoint
+     * ranges with about the same number of rows. The cursors are created with
+     * the given session, but may be read by different threads at the same
+     * time.
+     *
+     * @param session the session
+     * @param count the number of ranges
+     * @return the cursors, or null if this index can not be split
+     */
+    public ArrayList<Cursor> findRanges(SessionLocal session, int count) {
+        return null;
+    }
+
     /**
      * Estimate the cost to search for rows given the search mask.
      * There is one element per column in the search mask.
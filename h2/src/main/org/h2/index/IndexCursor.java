@@ -6,6 +6,7 @@
 package org.h2.index;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 
 import org.h2.engine.SessionLocal;
 import org.h2.expression.condition.Comparison;
@@ -16,6 +17,7 @@
 import org.h2.result.SortOrder;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
+import org.h2.table.Partitioning;
 import org.h2.table.Table;
 import org.h2.value.Value;
 import org.h2.value.ValueGeometry;
@@ -31,6 +33,12 @@
  */
 public class IndexCursor implements Cursor {
 
+    /**
+     * The number of rows a lookup of a merge join may skip before it starts
+     * again from the root of the index.
+     */
+    private static final int MAX_MERGE_SKIP = 64;
+
     private SessionLocal session;
     private Index index;
     private Table table;
@@ -44,12 +52,61 @@ public class IndexCursor implements Cursor {
     private Value[] inList;
     private ResultInterface inResult;
 
+    /**
+     * The conditions on the partition column of a partitioned table, or null.
+     */
+    private ArrayList<IndexCondition> partitionConditions;
+
+    /**
+     * The partitions that may contain matching rows, or null for all.
+     */
+    private BitSet partitions;
+
+    /**
+     * Whether the lookups continue from the position of the previous lookup,
+     * as in a merge join.
+     */
+    private boolean mergeJoin;
+
+    /**
+     * The cursor over the rows of the index from the key of a previous lookup
+     * of a merge join, or null.
+     */
+    private Cursor mergeCursor;
+
+    /**
+     * The next row of the merge cursor, or null if there are no more rows.
+     */
+    private SearchRow mergeNext;
+
+    /**
+     * The key of the rows of the last lookup of a merge join, or null.
+     */
+    private Value mergeValue;
+
+    /**
+     * The rows of the last lookup of a merge join.
+     */
+    private final ArrayList<SearchRow> mergeRows = new ArrayList<>();
+
     public IndexCursor() {
     }
 
+    /**
+     * Set the conditions on the partition column of a partitioned table, used
+     * to skip the partitions that can not contain matching rows.
+     *
+     * @param partitionConditions the conditions
+     */
+    public void setPartitionConditions(ArrayList<IndexCondition> partitionConditions) {
+        this.partitionConditions = partitionConditions;
+    }
+
     public void setIndex(Index index) {
         this.index = index;
         this.table = index.getTable();
+        mergeJoin = false;
+        resetMergeJoin();
         Column[] columns = table.getColumns();
         indexColumns = new IndexColumn[columns.length];
         IndexColumn[] idxCols = index.getIndexColumns();
@@ -63,6 +120,39 @@ public void setIndex(Index index) {
         }
     }
 
+    /**
+     * Set whether the lookups should continue from the position of the
+     * previous lookup, as in a merge join. This is used when the lookups are
+     * made in the order of the index.
+     *
+     * @param mergeJoin whether the lookups continue from the previous position
+     */
+    public void setMergeJoin(boolean mergeJoin) {
+        this.mergeJoin = mergeJoin;
+        resetMergeJoin();
+    }
+
+    /**
+     * Check whether the lookups continue from the position of the previous
+     * lookup, as in a merge join.
+     *
+     * @return whether the lookups continue from the previous position
+     */
+    public boolean isMergeJoin() {
+        return mergeJoin;
+    }
+
+    /**
+     * Close the cursor of a merge join, so that the next lookup starts from the
+     * root of the index.
+     */
+    public void resetMergeJoin() {
+        mergeCursor = null;
+        mergeNext = null;
+        mergeValue = null;
+        mergeRows.clear();
+    }
+
     /**
      * Prepare this index cursor to make a lookup in index.
      *
@@ -141,6 +231,16 @@ public void prepare(SessionLocal s, ArrayList<IndexCondition> indexConditions) {
         if (inColumn != null) {
             start = table.getTemplateRow();
         }
+        partitions = null;
+        if (partitionConditions != null && !alwaysFalse && index instanceof PartitionedIndex) {
+            Partitioning partitioning = table.getPartitioning();
+            if (partitioning != null) {
+                partitions = partitioning.getPartitions(s, partitionConditions);
+                if (partitions.isEmpty()) {
+                    alwaysFalse = true;
+                }
+            }
+        }
     }
 
     /**
@@ -158,7 +258,7 @@ public void find(SessionLocal s, ArrayList<IndexCondition> indexConditions) {
             if (intersects != null && index instanceof SpatialIndex) {
                 cursor = ((SpatialIndex) index).findByGeometry(session, start, end, intersects);
             } else if (index != null) {
-                cursor = index.find(session, start, end);
+                cursor = mergeJoin ? findMerge(start, end) : find(start, end);
             }
         }
     }
@@ -315,7 +415,66 @@ private void find(Value v) {
         v = inColumn.convert(session, v);
         int id = inColumn.getColumnId();
         start.setValue(id, v);
-        cursor = index.find(session, start, start);
+        cursor = find(start, start);
+    }
+
+    private Cursor findMerge(SearchRow first, SearchRow last) {
+        Column[] columns = index.getColumns();
+        int id = columns[0].getColumnId();
+        Value v = first != null ? first.getValue(id) : null;
+        if (v == null || v == ValueNull.INSTANCE || last == null || last.getValue(id) != v) {
+            return find(first, last);
+        }
+        for (int i = 1, l = columns.length; i < l; i++) {
+            int columnId = columns[i].getColumnId();
+            if (first.getValue(columnId) != null || last.getValue(columnId) != null) {
+                return find(first, last);
+            }
+        }
+        if (mergeValue != null) {
+            int comp = session.compare(v, mergeValue);
+            if (comp == 0) {
+                return new MergeCursor();
+            } else if (comp < 0) {
+                mergeCursor = null;
+            }
+        }
+        if (mergeCursor != null) {
+            // skip the rows with lower keys, unless there are too many of them
+            for (int skipped = 0; mergeNext != null && session.compare(mergeNext.getValue(id), v) < 0;) {
+                if (++skipped > MAX_MERGE_SKIP) {
+                    mergeCursor = null;
+                    break;
+                }
+                mergeNext = nextMerge();
+            }
+        }
+        if (mergeCursor == null) {
+            mergeCursor = find(first, null);
+            mergeNext = nextMerge();
+        }
+        mergeRows.clear();
+        while (mergeNext != null && session.compare(mergeNext.getValue(id), v) == 0) {
+            mergeRows.add(mergeNext);
+            mergeNext = nextMerge();
+        }
+        mergeValue = v;
+        return new MergeCursor();
+    }
+
+    private SearchRow nextMerge() {
+        if (!mergeCursor.next()) {
+            return null;
+        }
+        // the rows of row id indexes are complete
+        return index.isRowIdIndex() ? mergeCursor.get() : mergeCursor.getSearchRow();
+    }
+
+    private Cursor find(SearchRow first, SearchRow last) {
+        if (partitions != null) {
+            return ((PartitionedIndex) index).find(session, first, last, partitions);
+        }
+        return index.find(session, first, last);
     }
 
     @Override
@@ -323,4 +482,40 @@ public boolean previous() {
         throw DbException.getInternalError(toString());
     }
 
+    /**
+     * A cursor over the rows of the last lookup of a merge join.
+     */
+    private final class MergeCursor implements Cursor {
+
+        private int position = -1;
+
+        private Row row;
+
+        @Override
+        public Row get() {
+            if (row == null) {
+                SearchRow r = getSearchRow();
+                row = index.isRowIdIndex() ? (Row) r : table.getRow(session, r.getKey());
+            }
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return mergeRows.get(position);
+        }
+
+        @Override
+        public boolean next() {
+            row = null;
+            return ++position < mergeRows.size();
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getInternalError(toString());
+        }
+
+    }
+
 }
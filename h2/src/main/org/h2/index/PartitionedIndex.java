@@ -0,0 +1,31 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.BitSet;
+import org.h2.engine.SessionLocal;
+import org.h2.result.SearchRow;
+
+/**
+ * An index of a partitioned table. Such indexes can restrict a search to the
+ * partitions that may contain matching rows.
+ */
+public interface PartitionedIndex {
+
+    /**
+     * Find a row or a list of rows in the given partitions and create a cursor
+     * to iterate over the result.
+     *
+     * @param session the session
+     * @param first the first row, or null for no limit
+     * @param last the last row, or null for no limit
+     * @param partitions the indexes of the partitions to search, or null for
+     *            all partitions
+     * @return the cursor to iterate over the results
+     */
+    Cursor find(SessionLocal session, SearchRow first, SearchRow last, BitSet partitions);
+
+}
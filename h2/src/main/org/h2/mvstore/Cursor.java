@@ -23,7 +23,9 @@
     private K last;
     private V lastValue;
     private Page<K,V> lastPage;
-
+    private final int readAhead;
+    private Page<K,V> prefetchParent;
+    private int prefetchLimit;
 
     public Cursor(RootReference<K,V> rootReference, K from, K to) {
         this(rootReference, from, to, false);
@@ -40,6 +42,7 @@ public Cursor(RootReference<K,V> rootReference, K from, K to, boolean reverse) {
         this.cursorPos = traverseDown(lastPage, from, reverse);
         this.to = to;
         this.reverse = reverse;
+        this.readAhead = lastPage.map.store.getReadAhead();
     }
 
     @Override
@@ -61,7 +64,11 @@ public boolean hasNext() {
                 } else {
                     // traverse down to the leaf taking the leftmost path
                     while (!page.isLeaf()) {
+                        Page<K,V> parent = page;
                         page = page.getChildPage(index);
+                        if (readAhead > 0 && page.isLeaf()) {
+                            readAhead(parent, index);
+                        }
                         index = reverse ? upperBound(page) - 1 : 0;
                         if (keeper == null) {
                             cursorPos = new CursorPos<>(page, index, cursorPos);
@@ -179,6 +186,36 @@ static <K,V> CursorPos<K,V> traverseDown(Page<K,V> page, K key, boolean reverse)
         return cursorPos;
     }
 
+    /**
+     * Request the following sibling leaf pages to be read into the cache in
+     * the background. The cursor only moves from one leaf page to the next
+     * one during sequential iteration, so the next pages are requested once
+     * half of the previously requested ones are consumed.
+     *
+     * @param parent the parent of the leaf page
+     * @param index the index of the leaf page within the parent
+     */
+    private void readAhead(Page<K,V> parent, int index) {
+        int increment = reverse ? -1 : 1;
+        if (parent != prefetchParent) {
+            prefetchParent = parent;
+            prefetchLimit = index;
+        }
+        if ((prefetchLimit - index) * increment > readAhead / 2) {
+            return;
+        }
+        int from = prefetchLimit + increment;
+        int limit = index + readAhead * increment;
+        prefetchLimit = reverse ? Math.max(limit, 0) : Math.min(limit, upperBound(parent) - 1);
+        if (reverse) {
+            if (prefetchLimit <= from) {
+                parent.map.store.prefetchChildPages(parent, prefetchLimit, from + 1);
+            }
+        } else if (from <= prefetchLimit) {
+            parent.map.store.prefetchChildPages(parent, from, prefetchLimit + 1);
+        }
+    }
+
     private static <K,V> int upperBound(Page<K,V> page) {
         return page.isLeaf() ? page.getKeyCount() : page.map.getChildPageCount(page);
     }
@@ -16,6 +16,7 @@
 import java.util.HashMap;
 import java.util.Map;
 
+import org.h2.compress.Compressor;
 import org.h2.engine.Constants;
 import org.h2.jdbc.JdbcException;
 import org.h2.util.StringUtils;
@@ -139,6 +140,17 @@ public final class DataUtils {
      */
     public static final int PAGE_HAS_PAGE_NO = 8;
 
+    /**
+     * The bit mask for the compression algorithm of compressed pages, if the
+     * algorithm is neither LZF nor DEFLATE.
+     */
+    public static final int PAGE_COMPRESSOR_MASK = 0x70;
+
+    /**
+     * The shift of the compression algorithm within the page type.
+     */
+    public static final int PAGE_COMPRESSOR_SHIFT = 4;
+
     /**
      * The maximum length of a variable size int.
      */
@@ -655,6 +667,44 @@ public static long getPagePos(int chunkId, long tocElement) {
         return (tocElement & 0x3FFFFFFFFFL) | ((long) chunkId << 38);
     }
 
+    /**
+     * Get the page type bits for a page compressed with the given algorithm.
+     * LZF and DEFLATE use the original bits, so that such pages can still be
+     * read by older versions.
+     *
+     * @param algorithm the compression algorithm
+     * @return the compression type bits
+     */
+    public static int getPageCompressionType(int algorithm) {
+        switch (algorithm) {
+        case Compressor.NO:
+            return 0;
+        case Compressor.LZF:
+            return PAGE_COMPRESSED;
+        case Compressor.DEFLATE:
+            return PAGE_COMPRESSED_HIGH;
+        default:
+            return PAGE_COMPRESSED | algorithm << PAGE_COMPRESSOR_SHIFT;
+        }
+    }
+
+    /**
+     * Get the compression algorithm of a page from its type.
+     *
+     * @param type the page type
+     * @return the compression algorithm
+     */
+    public static int getPageCompressionAlgorithm(int type) {
+        if ((type & PAGE_COMPRESSED) == 0) {
+            return Compressor.NO;
+        }
+        int algorithm = (type & PAGE_COMPRESSOR_MASK) >>> PAGE_COMPRESSOR_SHIFT;
+        if (algorithm != 0) {
+            return algorithm;
+        }
+        return (type & PAGE_COMPRESSED_HIGH) == PAGE_COMPRESSED_HIGH ? Compressor.DEFLATE : Compressor.LZF;
+    }
+
     /**
      * Create table of content element. The following information is encoded in it:
      * the map id, the page offset, the maximum length, and the type
@@ -7,15 +7,19 @@
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import org.h2.mvstore.cache.FilePathCache;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.encrypt.FileEncrypt;
 import org.h2.store.fs.encrypt.FilePathEncrypt;
+import org.h2.util.MemoryUnmapper;
 
 /**
  * The default storage mechanism of the MVStore. This implementation persists
@@ -24,6 +28,16 @@
  */
 public class FileStore {
 
+    /**
+     * The binary logarithm of the size of a memory mapped segment of the file.
+     */
+    private static final int MAPPED_SEGMENT_SHIFT = 24;
+
+    /**
+     * The size of a memory mapped segment of the file.
+     */
+    private static final long MAPPED_SEGMENT_SIZE = 1L << MAPPED_SEGMENT_SHIFT;
+
     /**
      * The number of read operations.
      */
@@ -44,6 +58,17 @@ public class FileStore {
      */
     protected final AtomicLong writeBytes = new AtomicLong();
 
+    /**
+     * The number of write operations, which were completed before the last
+     * completed sync has started, or -1 if the file was not synced yet.
+     */
+    private volatile long syncedWriteCount = -1;
+
+    /**
+     * The lock held while the file is being synced.
+     */
+    private final Object syncLock = new Object();
+
     /**
      * The free spaces between the chunks. The first block to use is block 2
      * (the first two blocks are the store header).
@@ -81,6 +106,28 @@ public class FileStore {
      */
     private FileLock fileLock;
 
+    /**
+     * Whether reads should be served from memory mapped segments of the file.
+     */
+    private boolean memoryMapped;
+
+    /**
+     * The memory mapped segments of the file (entries are null for segments,
+     * which are not mapped yet), or null if reads are not memory mapped.
+     */
+    private volatile MappedByteBuffer[] mappedSegments;
+
+    /**
+     * The lock held while a segment of the file is being mapped.
+     */
+    private final Object mapLock = new Object();
+
+    /**
+     * Readers of memory mapped segments hold the read lock while they use the
+     * returned buffers; segments are only unmapped with the write lock.
+     */
+    private final ReentrantReadWriteLock mappedReadLock = new ReentrantReadWriteLock();
+
     @Override
     public String toString() {
         return fileName;
@@ -94,13 +141,137 @@ public String toString() {
      * @return the byte buffer
      */
     public ByteBuffer readFully(long pos, int len) {
-        ByteBuffer dst = ByteBuffer.allocate(len);
-        DataUtils.readFully(file, pos, dst);
+        ByteBuffer dst = mappedSegments == null || mappedReadLock.getReadHoldCount() == 0 ? null
+                : readMapped(pos, len);
+        if (dst == null) {
+            dst = ByteBuffer.allocate(len);
+            DataUtils.readFully(file, pos, dst);
+        }
         readCount.incrementAndGet();
         readBytes.addAndGet(len);
         return dst;
     }
 
+    /**
+     * Start reading from the file. Until {@link #endMappedRead()} is called,
+     * {@link #readFully(long, int)} may return views of memory mapped
+     * segments, and these segments are not unmapped. Outside of such a block
+     * the returned buffers are copies.
+     */
+    public void beginMappedRead() {
+        mappedReadLock.readLock().lock();
+    }
+
+    /**
+     * Stop reading from the file. The buffers returned since the matching call
+     * of {@link #beginMappedRead()} must not be used any more.
+     */
+    public void endMappedRead() {
+        mappedReadLock.readLock().unlock();
+    }
+
+    /**
+     * Get a read-only view of the given region of the file from a memory
+     * mapped segment. The segment is mapped if needed.
+     *
+     * @param pos the read position
+     * @param len the number of bytes to read
+     * @return the byte buffer, or null if the region can not be read from a
+     *         memory mapped segment
+     */
+    private ByteBuffer readMapped(long pos, int len) {
+        int offset = (int) (pos & (MAPPED_SEGMENT_SIZE - 1));
+        if (offset + len > MAPPED_SEGMENT_SIZE) {
+            return null;
+        }
+        int index = (int) (pos >>> MAPPED_SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = mappedSegments;
+        MappedByteBuffer segment = segments != null && index < segments.length ? segments[index] : null;
+        if (segment == null && (segment = mapSegment(index)) == null) {
+            return null;
+        }
+        ByteBuffer dst = segment.duplicate();
+        dst.limit(offset + len);
+        dst.position(offset);
+        return dst.slice();
+    }
+
+    /**
+     * Map the segment with the given index. Only segments, which are
+     * completely within the file, are mapped. If the file can not be mapped,
+     * memory mapped reads are disabled.
+     *
+     * @param index the index of the segment
+     * @return the segment, or null if it can not be mapped
+     */
+    private MappedByteBuffer mapSegment(int index) {
+        long start = (long) index << MAPPED_SEGMENT_SHIFT;
+        synchronized (mapLock) {
+            MappedByteBuffer[] segments = mappedSegments;
+            if (segments == null || start + MAPPED_SEGMENT_SIZE > fileSize) {
+                return null;
+            }
+            if (index < segments.length && segments[index] != null) {
+                return segments[index];
+            }
+            MappedByteBuffer segment;
+            try {
+                segment = file.map(FileChannel.MapMode.READ_ONLY, start, MAPPED_SEGMENT_SIZE);
+            } catch (IOException | UnsupportedOperationException e) {
+                mappedSegments = null;
+                return null;
+            }
+            if (index >= segments.length) {
+                segments = Arrays.copyOf(segments, index + 1);
+            } else {
+                segments = segments.clone();
+            }
+            segments[index] = segment;
+            mappedSegments = segments;
+            return segment;
+        }
+    }
+
+    /**
+     * Unmap the memory mapped segments, which are not completely within the
+     * given size. This waits until concurrent readers of mapped segments are
+     * done.
+     *
+     * @param size the new file size
+     */
+    private void releaseMappedSegments(long size) {
+        if (mappedSegments == null) {
+            return;
+        }
+        mappedReadLock.writeLock().lock();
+        try {
+            MappedByteBuffer[] segments;
+            int count;
+            synchronized (mapLock) {
+                segments = mappedSegments;
+                if (segments == null) {
+                    return;
+                }
+                count = (int) Math.min(segments.length, size >>> MAPPED_SEGMENT_SHIFT);
+                if (count == segments.length) {
+                    return;
+                }
+                mappedSegments = Arrays.copyOf(segments, count);
+            }
+            unmap(segments, count);
+        } finally {
+            mappedReadLock.writeLock().unlock();
+        }
+    }
+
+    private static void unmap(MappedByteBuffer[] segments, int from) {
+        for (int i = from; i < segments.length; i++) {
+            if (segments[i] != null) {
+                MemoryUnmapper.unmap(segments[i]);
+            }
+        }
+    }
+
     /**
      * Write to the file.
      *
@@ -180,6 +351,9 @@ private void open(String fileName, boolean readOnly, Function<FileChannel,FileCh
                         "The file is locked: {0}", fileName);
             }
             fileSize = file.size();
+            if (memoryMapped && encryptedFile == null) {
+                mappedSegments = new MappedByteBuffer[0];
+            }
         } catch (IOException e) {
             try { close(); } catch (Exception ignore) {}
             throw DataUtils.newMVStoreException(
@@ -206,20 +380,52 @@ public void close() {
         } finally {
             fileLock = null;
             file = null;
+            releaseAllMappedSegments();
+        }
+    }
+
+    private void releaseAllMappedSegments() {
+        if (mappedSegments == null) {
+            return;
+        }
+        if (mappedReadLock.getReadHoldCount() > 0) {
+            // closed by a failed read of this thread, the segments are
+            // unmapped by the garbage collector
+            mappedSegments = null;
+            return;
+        }
+        mappedReadLock.writeLock().lock();
+        try {
+            MappedByteBuffer[] segments = mappedSegments;
+            mappedSegments = null;
+            if (segments != null) {
+                unmap(segments, 0);
+            }
+        } finally {
+            mappedReadLock.writeLock().unlock();
         }
     }
 
     /**
-     * Flush all changes.
+     * Flush all changes. Concurrent calls are coalesced: if a sync, which has
+     * started after all writes made before this call were completed, finishes
+     * while this call is waiting, the file is not synced again.
      */
     public void sync() {
         if (file != null) {
-            try {
-                file.force(true);
-            } catch (IOException e) {
-                throw DataUtils.newMVStoreException(
-                        DataUtils.ERROR_WRITING_FAILED,
-                        "Could not sync file {0}", fileName, e);
+            long writes = writeCount.get();
+            synchronized (syncLock) {
+                if (writes > syncedWriteCount) {
+                    long start = writeCount.get();
+                    try {
+                        file.force(true);
+                    } catch (IOException e) {
+                        throw DataUtils.newMVStoreException(
+                                DataUtils.ERROR_WRITING_FAILED,
+                                "Could not sync file {0}", fileName, e);
+                    }
+                    syncedWriteCount = start;
+                }
             }
         }
     }
@@ -239,11 +445,12 @@ public long size() {
      * @param size the new file size
      */
     public void truncate(long size) {
+        releaseMappedSegments(size);
         int attemptCount = 0;
         while (true) {
             try {
-                writeCount.incrementAndGet();
                 file.truncate(size);
+                writeCount.incrementAndGet();
                 fileSize = Math.min(fileSize, size);
                 return;
             } catch (IOException e) {
@@ -259,6 +466,28 @@ public void truncate(long size) {
         }
     }
 
+    /**
+     * Set whether reads should be served from memory mapped segments of the
+     * file. Pages are then decoded directly from the mapped memory, without
+     * copying them into a new heap buffer first. This setting has no effect
+     * for encrypted files and for file systems, which do not support memory
+     * mapping. It must be set before the file is opened.
+     *
+     * @param memoryMapped whether reads should be memory mapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Whether reads are served from memory mapped segments of the file.
+     *
+     * @return true if reads are memory mapped
+     */
+    public boolean isMemoryMapped() {
+        return mappedSegments != null;
+    }
+
     /**
      * Get the file instance in use.
      * <p>
@@ -19,6 +19,7 @@
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.h2.compress.Compressor;
 import org.h2.mvstore.type.DataType;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.util.MemoryEstimator;
@@ -50,6 +51,12 @@
     private final DataType<V> valueType;
     private final int keysPerPage;
     private final boolean singleWriter;
+
+    /**
+     * The compression algorithm for new pages, or -1 to use the compression
+     * level of the store.
+     */
+    private volatile int compressionAlgorithm = -1;
     private final K[] keysBuffer;
     private final V[] valuesBuffer;
 
@@ -79,8 +86,14 @@ protected MVMap(Map<String, Object> config, DataType<K> keyType, DataType<V> val
                 DataUtils.readHexLong(config, "createVersion", 0),
                 new AtomicReference<>(),
                 ((MVStore) config.get("store")).getKeysPerPage(),
-                config.containsKey("singleWriter") && (Boolean) config.get("singleWriter")
+                config.containsKey("singleWriter") && (Boolean) config.get("singleWriter"),
+                DataUtils.getConfigParam(config, "appendBufferSize",
+                        ((MVStore) config.get("store")).getKeysPerPage())
         );
+        Object algorithm = config.get("compressionAlgorithm");
+        if (algorithm != null) {
+            setCompressionAlgorithm((Integer) algorithm);
+        }
         setInitialRoot(createEmptyLeaf(), store.getCurrentVersion());
     }
 
@@ -88,17 +101,20 @@ protected MVMap(Map<String, Object> config, DataType<K> keyType, DataType<V> val
     @SuppressWarnings("CopyConstructorMissesField")
     protected MVMap(MVMap<K, V> source) {
         this(source.store, source.keyType, source.valueType, source.id, source.createVersion,
-                new AtomicReference<>(source.root.get()), source.keysPerPage, source.singleWriter);
+                new AtomicReference<>(source.root.get()), source.keysPerPage, source.singleWriter,
+                source.singleWriter ? source.keysBuffer.length : 0);
+        compressionAlgorithm = source.compressionAlgorithm;
     }
 
     // meta map constructor
     MVMap(MVStore store, int id, DataType<K> keyType, DataType<V> valueType) {
-        this(store, keyType, valueType, id, 0, new AtomicReference<>(), store.getKeysPerPage(), false);
+        this(store, keyType, valueType, id, 0, new AtomicReference<>(), store.getKeysPerPage(), false, 0);
         setInitialRoot(createEmptyLeaf(), store.getCurrentVersion());
     }
 
     private MVMap(MVStore store, DataType<K> keyType, DataType<V> valueType, int id, long createVersion,
-            AtomicReference<RootReference<K,V>> root, int keysPerPage, boolean singleWriter) {
+            AtomicReference<RootReference<K,V>> root, int keysPerPage, boolean singleWriter,
+            int appendBufferSize) {
         this.store = store;
         this.id = id;
         this.createVersion = createVersion;
@@ -106,8 +122,8 @@ private MVMap(MVStore store, DataType<K> keyType, DataType<V> valueType, int id,
         this.valueType = valueType;
         this.root = root;
         this.keysPerPage = keysPerPage;
-        this.keysBuffer = singleWriter ? keyType.createStorage(keysPerPage) : null;
-        this.valuesBuffer = singleWriter ? valueType.createStorage(keysPerPage) : null;
+        this.keysBuffer = singleWriter ? keyType.createStorage(Math.max(appendBufferSize, 1)) : null;
+        this.valuesBuffer = singleWriter ? valueType.createStorage(Math.max(appendBufferSize, 1)) : null;
         this.singleWriter = singleWriter;
         this.avgKeySize = keyType.isMemoryEstimationAllowed() ? new AtomicLong() : null;
         this.avgValSize = valueType.isMemoryEstimationAllowed() ? new AtomicLong() : null;
@@ -455,6 +471,24 @@ public void clear() {
      * @return the new root reference
      */
     RootReference<K,V> clearIt() {
+        if (singleWriter) {
+            RootReference<K,V> rootReference = getRoot();
+            if (rootReference.getAppendCounter() > 0 && rootReference.root.getTotalCount() == 0) {
+                // all entries are in the append buffer, so there is no need
+                // to add them to the tree first
+                rootReference = lockRoot(rootReference, 1);
+                int appendCounter = rootReference.getAppendCounter();
+                if (rootReference.root.getTotalCount() == 0) {
+                    Arrays.fill(keysBuffer, 0, appendCounter, null);
+                    if (valuesBuffer != null) {
+                        Arrays.fill(valuesBuffer, 0, appendCounter, null);
+                    }
+                    return unlockRoot(null, 0);
+                }
+                // the buffer was flushed concurrently
+                unlockRoot();
+            }
+        }
         Page<K,V> emptyRootPage = createEmptyLeaf();
         int attempt = 0;
         while (true) {
@@ -623,6 +657,32 @@ boolean isSingleWriter() {
         return singleWriter;
     }
 
+    /**
+     * Get the compression algorithm for new pages of this map.
+     *
+     * @return the compression algorithm (see {@link Compressor}), or -1 if
+     *         the compression level of the store is used
+     */
+    public final int getCompressionAlgorithm() {
+        return compressionAlgorithm;
+    }
+
+    /**
+     * Set the compression algorithm for new pages of this map. Existing pages
+     * are not rewritten, and pages of any algorithm can be read regardless of
+     * this setting, as the algorithm is stored in the page header. The
+     * setting itself is not persisted.
+     *
+     * @param algorithm the compression algorithm (see {@link Compressor}), or
+     *            -1 to use the compression level of the store
+     */
+    public final void setCompressionAlgorithm(int algorithm) {
+        if (algorithm < -1 || algorithm > Compressor.LZ4) {
+            throw DataUtils.newIllegalArgumentException("Unsupported compression algorithm {0}", algorithm);
+        }
+        compressionAlgorithm = algorithm;
+    }
+
     /**
      * Read a page.
      *
@@ -845,6 +905,34 @@ public RootReference<K,V> flushAndGetRoot() {
         return rootReference;
     }
 
+    /**
+     * Get the root reference, including the entries of the append buffer.
+     * Unlike {@link #flushAndGetRoot()}, the buffer is not flushed if all
+     * entries are in the buffer: the root page is then a detached leaf with a
+     * copy of the buffer, which may only be used for reading.
+     *
+     * @return the root reference
+     */
+    public RootReference<K,V> getRootWithAppendBuffer() {
+        RootReference<K,V> rootReference = getRoot();
+        if (singleWriter && rootReference.getAppendCounter() > 0 && rootReference.root.getTotalCount() == 0) {
+            rootReference = lockRoot(rootReference, 1);
+            try {
+                int appendCounter = rootReference.getAppendCounter();
+                if (appendCounter > 0 && rootReference.root.getTotalCount() == 0) {
+                    Page<K,V> page = Page.createLeaf(this,
+                            Arrays.copyOf(keysBuffer, appendCounter),
+                            valuesBuffer == null ? null : Arrays.copyOf(valuesBuffer, appendCounter),
+                            0);
+                    return new RootReference<>(page, rootReference.version);
+                }
+            } finally {
+                unlockRoot();
+            }
+        }
+        return flushAndGetRoot();
+    }
+
     /**
      * Set the initial root.
      *
@@ -1006,7 +1094,12 @@ public boolean isEmpty() {
         return sizeAsLong() == 0;
     }
 
-    final long getCreateVersion() {
+    /**
+     * Get the version in which this map was created.
+     *
+     * @return the version
+     */
+    public final long getCreateVersion() {
         return createVersion;
     }
 
@@ -1035,7 +1128,8 @@ public final MVMap<K, V> openVersion(long version) {
             rootReference = previous;
         }
         if (previous == null && version < store.getOldestVersionToKeep()) {
-            throw DataUtils.newIllegalArgumentException("Unknown version {0}", version);
+            // no longer kept in memory, but may still be available in the file
+            return openReadOnly(store.getRootPos(id, version), version);
         }
         MVMap<K, V> m = openReadOnly(rootReference.root, version);
         assert m.getVersion() <= version : m.getVersion() + " <= " + version;
@@ -1232,7 +1326,7 @@ private RootReference<K,V> flushAppendBuffer(RootReference<K,V> rootReference, b
             IntValueHolder unsavedMemoryHolder = new IntValueHolder();
             int attempt = 0;
             int keyCount;
-            int availabilityThreshold = fullFlush ? 0 : keysPerPage - 1;
+            int availabilityThreshold = fullFlush ? 0 : keysBuffer.length - 1;
             while ((keyCount = rootReference.getAppendCounter()) > availabilityThreshold) {
                 if (!locked) {
                     // instead of just calling lockRoot() we loop here and check if someone else
@@ -1266,7 +1360,7 @@ private RootReference<K,V> flushAppendBuffer(RootReference<K,V> rootReference, b
                     } else {
                         p.expand(available, keysBuffer, valuesBuffer);
                         keyCount -= available;
-                        if (fullFlush) {
+                        if (fullFlush && keyCount <= keysPerPage) {
                             K[] keys = p.createKeyStorage(keyCount);
                             V[] values = p.createValueStorage(keyCount);
                             System.arraycopy(keysBuffer, available, keys, 0, keyCount);
@@ -1284,52 +1378,24 @@ private RootReference<K,V> flushAppendBuffer(RootReference<K,V> rootReference, b
                     }
                 } else {
                     tip = tip.parent;
+                    // the append buffer may be larger than a page,
+                    // in which case the rest is added in the next iteration
+                    int count = Math.min(keyCount, keysPerPage);
                     page = Page.createLeaf(this,
-                            Arrays.copyOf(keysBuffer, keyCount),
-                            valuesBuffer == null ? null : Arrays.copyOf(valuesBuffer, keyCount),
+                            Arrays.copyOf(keysBuffer, count),
+                            valuesBuffer == null ? null : Arrays.copyOf(valuesBuffer, count),
                             0);
-                }
-
-                unsavedMemoryHolder.value = 0;
-                if (page != null) {
-                    assert page.map == this;
-                    assert page.getKeyCount() > 0;
-                    K key = page.getKey(0);
-                    unsavedMemoryHolder.value += page.getMemory();
-                    while (true) {
-                        if (pos == null) {
-                            if (p.getKeyCount() == 0) {
-                                p = page;
-                            } else {
-                                K[] keys = p.createKeyStorage(1);
-                                keys[0] = key;
-                                Page.PageReference<K,V>[] children = Page.createRefStorage(2);
-                                children[0] = new Page.PageReference<>(p);
-                                children[1] = new Page.PageReference<>(page);
-                                unsavedMemoryHolder.value += p.getMemory();
-                                p = Page.createNode(this, keys, children, p.getTotalCount() + page.getTotalCount(), 0);
-                            }
-                            break;
+                    if (count < keyCount) {
+                        remainingBuffer = keyCount - count;
+                        System.arraycopy(keysBuffer, count, keysBuffer, 0, remainingBuffer);
+                        if (valuesBuffer != null) {
+                            System.arraycopy(valuesBuffer, count, valuesBuffer, 0, remainingBuffer);
                         }
-                        Page<K,V> c = p;
-                        p = pos.page;
-                        index = pos.index;
-                        pos = pos.parent;
-                        p = p.copy();
-                        p.setChild(index, page);
-                        p.insertNode(index, key, c);
-                        keyCount = p.getKeyCount();
-                        int at = keyCount - (p.isLeaf() ? 1 : 2);
-                        if (keyCount <= keysPerPage &&
-                                (p.getMemory() < store.getMaxPageSize() || at <= 0)) {
-                            break;
-                        }
-                        key = p.getKey(at);
-                        page = p.split(at);
-                        unsavedMemoryHolder.value += p.getMemory() + page.getMemory();
                     }
                 }
-                p = replacePage(pos, p, unsavedMemoryHolder);
+
+                unsavedMemoryHolder.value = 0;
+                p = appendPage(pos, p, page, keysPerPage, store.getMaxPageSize(), unsavedMemoryHolder);
                 rootReference = rootReference.updatePageAndLockedStatus(p, preLocked || isPersistent(),
                         remainingBuffer);
                 if (rootReference != null) {
@@ -1338,8 +1404,7 @@ private RootReference<K,V> flushAppendBuffer(RootReference<K,V> rootReference, b
                     if (isPersistent() && tip != null) {
                         store.registerUnsavedMemory(unsavedMemoryHolder.value + tip.processRemovalInfo(version));
                     }
-                    assert rootReference.getAppendCounter() <= availabilityThreshold;
-                    break;
+                    continue;
                 }
                 rootReference = getRoot();
             }
@@ -1351,6 +1416,62 @@ private RootReference<K,V> flushAppendBuffer(RootReference<K,V> rootReference, b
         return rootReference;
     }
 
+    /**
+     * Add a page after the last leaf page of the tree, splitting the internal
+     * nodes on the right edge of the tree as needed.
+     *
+     * @param pos the path to the parent of the last leaf page
+     * @param lastLeaf the last leaf page, possibly modified
+     * @param page the page to add, or null
+     * @param keysPerPage the maximum number of keys of an internal node
+     * @param maxPageSize the maximum memory of an internal node
+     * @param unsavedMemoryHolder the holder of the memory of new pages
+     * @return the new root page
+     */
+    private Page<K,V> appendPage(CursorPos<K,V> pos, Page<K,V> lastLeaf, Page<K,V> page, int keysPerPage,
+            long maxPageSize, IntValueHolder unsavedMemoryHolder) {
+        Page<K,V> p = lastLeaf;
+        if (page != null) {
+            assert page.map == this;
+            assert page.getKeyCount() > 0;
+            K key = page.getKey(0);
+            unsavedMemoryHolder.value += page.getMemory();
+            while (true) {
+                if (pos == null) {
+                    if (p.getKeyCount() == 0) {
+                        p = page;
+                    } else {
+                        K[] keys = p.createKeyStorage(1);
+                        keys[0] = key;
+                        Page.PageReference<K,V>[] children = Page.createRefStorage(2);
+                        children[0] = new Page.PageReference<>(p);
+                        children[1] = new Page.PageReference<>(page);
+                        unsavedMemoryHolder.value += p.getMemory();
+                        p = Page.createNode(this, keys, children, p.getTotalCount() + page.getTotalCount(), 0);
+                    }
+                    break;
+                }
+                Page<K,V> c = p;
+                p = pos.page;
+                int index = pos.index;
+                pos = pos.parent;
+                p = p.copy();
+                p.setChild(index, page);
+                p.insertNode(index, key, c);
+                int keyCount = p.getKeyCount();
+                int at = keyCount - (p.isLeaf() ? 1 : 2);
+                if (keyCount <= keysPerPage &&
+                        (p.getMemory() < maxPageSize || at <= 0)) {
+                    break;
+                }
+                key = p.getKey(at);
+                page = p.split(at);
+                unsavedMemoryHolder.value += p.getMemory() + page.getMemory();
+            }
+        }
+        return replacePage(pos, p, unsavedMemoryHolder);
+    }
+
     private static <K,V> Page<K,V> replacePage(CursorPos<K,V> path, Page<K,V> replacement,
             IntValueHolder unsavedMemoryHolder) {
         int unsavedMemory = replacement.isSaved() ? 0 : replacement.getMemory();
@@ -1384,10 +1505,10 @@ public void append(K key, V value) {
             RootReference<K,V> rootReference = lockRoot(getRoot(), 1);
             int appendCounter = rootReference.getAppendCounter();
             try {
-                if (appendCounter >= keysPerPage) {
+                if (appendCounter >= keysBuffer.length) {
                     rootReference = flushAppendBuffer(rootReference, false);
                     appendCounter = rootReference.getAppendCounter();
-                    assert appendCounter < keysPerPage;
+                    assert appendCounter < keysBuffer.length;
                 }
                 keysBuffer[appendCounter] = key;
                 if (valuesBuffer != null) {
@@ -1436,6 +1557,93 @@ public void trimLast() {
         }
     }
 
+    /**
+     * Add entries in ascending order of their keys, building full leaf pages
+     * and their parent nodes bottom up instead of descending from the root for
+     * each entry. The keys must be larger than all keys of this map. This
+     * method is NOT thread safe and can not be used neither concurrently, nor
+     * in combination with any method that updates this map. If an entry is out
+     * of order or the iterator throws an exception, the entries of the already
+     * completed leaf pages remain in the map, but the entries of the last,
+     * incomplete leaf page are not added.
+     *
+     * @param entries the entries, sorted by key
+     * @param fillFactor the percentage of the maximum number of keys and of
+     *            the maximum memory of a page to fill (1 - 100)
+     * @return the number of added entries
+     * @throws IllegalArgumentException if a key is not larger than the
+     *             previous one
+     */
+    public long bulkLoad(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries, int fillFactor) {
+        DataUtils.checkArgument(fillFactor > 0 && fillFactor <= 100,
+                "Fill factor {0} is out of range", fillFactor);
+        int keysPerPage = Math.max(store.getKeysPerPage() * fillFactor / 100, 2);
+        long maxPageSize = Math.max(store.getMaxPageSize() * fillFactor / 100, 1);
+        boolean persistent = isPersistent();
+        K last = flushAndGetRoot().root.getTotalCount() == 0 ? null : lastKey();
+        K[] keys = keyType.createStorage(keysPerPage);
+        V[] values = valueType.createStorage(keysPerPage);
+        int count = 0;
+        long memory = 0;
+        long total = 0;
+        while (entries.hasNext()) {
+            Map.Entry<? extends K, ? extends V> entry = entries.next();
+            K key = entry.getKey();
+            V value = entry.getValue();
+            DataUtils.checkArgument(value != null, "The value may not be null");
+            if (last != null && compare(last, key) >= 0) {
+                throw DataUtils.newIllegalArgumentException(
+                        "Key {0} is not larger than the previous key {1}", key, last);
+            }
+            keys[count] = key;
+            if (values != null) {
+                values[count] = value;
+            }
+            last = key;
+            count++;
+            total++;
+            if (persistent) {
+                memory += MEMORY_POINTER + keyType.getMemory(key) + valueType.getMemory(value);
+            }
+            if (count == keysPerPage || memory >= maxPageSize) {
+                appendLeaf(keys, values, count, keysPerPage, maxPageSize);
+                keys = keyType.createStorage(keysPerPage);
+                values = valueType.createStorage(keysPerPage);
+                count = 0;
+                memory = 0;
+            }
+        }
+        if (count > 0) {
+            appendLeaf(keys, values, count, keysPerPage, maxPageSize);
+        }
+        return total;
+    }
+
+    private void appendLeaf(K[] keys, V[] values, int count, int keysPerPage, long maxPageSize) {
+        if (count < keys.length) {
+            keys = Arrays.copyOf(keys, count);
+            if (values != null) {
+                values = Arrays.copyOf(values, count);
+            }
+        }
+        beforeWrite();
+        RootReference<K,V> rootReference = lockRoot(getRoot(), 1);
+        Page<K,V> rootPage = rootReference.root;
+        try {
+            CursorPos<K,V> pos = rootPage.getAppendCursorPos(null);
+            CursorPos<K,V> tip = pos.parent;
+            IntValueHolder unsavedMemoryHolder = new IntValueHolder();
+            rootPage = appendPage(pos.parent, pos.page, Page.createLeaf(this, keys, values, 0), keysPerPage,
+                    maxPageSize, unsavedMemoryHolder);
+            if (isPersistent()) {
+                store.registerUnsavedMemory(unsavedMemoryHolder.value +
+                        (tip == null ? 0 : tip.processRemovalInfo(rootReference.version)));
+            }
+        } finally {
+            unlockRoot(rootPage);
+        }
+    }
+
     @Override
     public final String toString() {
         return asString(null);
@@ -1564,6 +1772,8 @@ public M create(MVStore store, Map<String, Object> config) {
      */
     public static class Builder<K, V> extends BasicBuilder<MVMap<K, V>, K, V> {
         private boolean singleWriter;
+        private int appendBufferSize;
+        private int compressionAlgorithm = -1;
 
         public Builder() {}
 
@@ -1590,9 +1800,41 @@ public Builder<K,V> singleWriter() {
             return this;
         }
 
+        /**
+         * Set the size of the append buffer of a single writer map, that is
+         * the number of appended entries that are kept in memory before they
+         * are added to the tree. By default, this is the number of keys per
+         * page.
+         *
+         * @param size the number of entries
+         * @return this Builder for chained execution
+         */
+        public Builder<K,V> appendBufferSize(int size) {
+            appendBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Set the compression algorithm for new pages of the map, overriding
+         * the compression level of the store.
+         *
+         * @param algorithm the compression algorithm (see {@link Compressor})
+         * @return this Builder for chained execution
+         */
+        public Builder<K,V> compressionAlgorithm(int algorithm) {
+            compressionAlgorithm = algorithm;
+            return this;
+        }
+
         @Override
         protected MVMap<K, V> create(Map<String, Object> config) {
             config.put("singleWriter", singleWriter);
+            if (appendBufferSize > 0) {
+                config.put("appendBufferSize", appendBufferSize);
+            }
+            if (compressionAlgorithm >= 0) {
+                config.put("compressionAlgorithm", compressionAlgorithm);
+            }
             Object type = config.get("type");
             if(type == null || type.equals("rtree")) {
                 return new MVMap<>(config, getKeyType(), getValueType());
@@ -28,8 +28,10 @@
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -42,9 +44,11 @@
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import org.h2.compress.CompressDeflate;
+import org.h2.compress.CompressLZ4;
 import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
 import org.h2.mvstore.cache.CacheLongKeyLIRS;
+import org.h2.mvstore.cache.OffHeapPageCache;
 import org.h2.mvstore.type.StringDataType;
 import org.h2.util.MathUtils;
 import org.h2.util.Utils;
@@ -192,8 +196,26 @@ public class MVStore implements AutoCloseable {
      */
     private static final int STATE_CLOSED = 3;
 
+    /**
+     * The default number of chunks, which may wait for serialization and,
+     * separately, for being written to the file, before a store operation
+     * blocks.
+     */
     private static final int PIPE_LENGTH = 1;
 
+    /**
+     * The number of changed pages serialized by one task of the parallel
+     * serialization. Commits with fewer changed pages than twice this number
+     * are serialized by the serialization thread alone.
+     */
+    private static final int PARALLEL_SERIALIZATION_BATCH = 32;
+
+    /**
+     * The maximum number of read-ahead requests waiting for the background
+     * reader. Further requests are dropped.
+     */
+    private static final int PREFETCH_QUEUE_LENGTH = 16;
+
 
     /**
      * Lock which governs access to major store operations: store(), close(), ...
@@ -245,6 +267,14 @@ public class MVStore implements AutoCloseable {
      */
     private final CacheLongKeyLIRS<long[]> chunksToC;
 
+    /**
+     * The second level page cache, which keeps serialized pages in direct
+     * (off-heap) buffers, keyed by page position. It is consulted when a page
+     * is not in the page cache, before reading it from the file. Null if
+     * disabled.
+     */
+    private final OffHeapPageCache offHeapCache;
+
     /**
      * The newest chunk. If nothing was stored yet, this field is not set.
      */
@@ -278,7 +308,30 @@ public class MVStore implements AutoCloseable {
 
     private final HashMap<String, Object> storeHeader = new HashMap<>();
 
-    private final Queue<WriteBuffer> writeBufferPool = new ArrayBlockingQueue<>(PIPE_LENGTH + 1);
+    /**
+     * The number of chunks, which may wait for serialization and, separately,
+     * for being written to the file, before a store operation blocks.
+     */
+    private final int pipeLength;
+
+    /**
+     * The number of sibling leaf pages, which a cursor reads ahead in the
+     * background during sequential scans, or 0 if read-ahead is disabled.
+     */
+    private final int readAhead;
+
+    /**
+     * The executor, which reads pages into the cache in the background, or
+     * null if read-ahead is disabled.
+     */
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    /**
+     * The thread of the prefetch executor, once it has started.
+     */
+    private volatile Thread prefetchThread;
+
+    private final Queue<WriteBuffer> writeBufferPool;
 
     private final AtomicInteger lastMapId = new AtomicInteger();
 
@@ -292,12 +345,24 @@ public class MVStore implements AutoCloseable {
      */
     private final int compressionLevel;
 
-    private Compressor compressorFast;
-
-    private Compressor compressorHigh;
+    /**
+     * The shared compressors, by algorithm.
+     */
+    private final Compressor[] compressors = new Compressor[Compressor.LZ4 + 1];
 
     private final boolean recoveryMode;
 
+    /**
+     * Whether keys and values of changed pages are serialized by multiple
+     * threads.
+     */
+    private final boolean parallelSerialization;
+
+    /**
+     * Whether the file is synced after each commit.
+     */
+    private final boolean syncOnCommit;
+
     public final UncaughtExceptionHandler backgroundExceptionHandler;
 
     private volatile long currentVersion;
@@ -357,6 +422,42 @@ public class MVStore implements AutoCloseable {
     private final int autoCompactFillRate;
     private long autoCompactLastFileOpCount;
 
+    /**
+     * Whether the background thread moves chunks toward the beginning of the
+     * file and truncates it whenever the fill rate is low, and not only when
+     * allocation of new chunks indicates fragmentation.
+     */
+    private final boolean autoShrink;
+
+    /**
+     * The maximum rate, at which background compaction may write, in bytes
+     * per second, or 0 if it is not limited.
+     */
+    private final long autoCompactWriteRate;
+
+    /**
+     * The number of bytes background compaction may write now. It grows with
+     * autoCompactWriteRate up to one second's worth of writes.
+     */
+    private long autoCompactBudget;
+
+    /**
+     * The time (since creation) of the last update of the compaction budget.
+     */
+    private long autoCompactBudgetTime;
+
+    /**
+     * The number of bytes written to the file at the last update of the
+     * compaction budget.
+     */
+    private long autoCompactWriteBytes;
+
+    /**
+     * The number of bytes charged to background compaction since the last
+     * update of the compaction budget.
+     */
+    private long autoCompactCharged;
+
     private volatile MVStoreException panicException;
 
     private long lastTimeAbsolute;
@@ -380,6 +481,12 @@ public class MVStore implements AutoCloseable {
      */
     MVStore(Map<String, Object> config) {
         recoveryMode = config.containsKey("recoveryMode");
+        parallelSerialization = config.containsKey("parallelSerialization");
+        syncOnCommit = config.containsKey("syncOnCommit");
+        pipeLength = Math.max(1, DataUtils.getConfigParam(config, "pipeLength", PIPE_LENGTH));
+        autoShrink = config.containsKey("autoShrink");
+        autoCompactWriteRate = Math.max(0, DataUtils.getConfigParam(config, "autoCompactWriteRate", 0)) * 1024L;
+        writeBufferPool = new ArrayBlockingQueue<>(pipeLength + 1);
         compressionLevel = DataUtils.getConfigParam(config, "compress", 0);
         String fileName = (String) config.get("fileName");
         FileStore fileStore = (FileStore) config.get("fileStore");
@@ -416,12 +523,17 @@ public class MVStore implements AutoCloseable {
             cc2.maxMemory = 1024L * 1024L;
             pgSplitSize = 16 * 1024;
         }
+        int offHeapMb = this.fileStore == null ? 0 : DataUtils.getConfigParam(config, "offHeapCacheSize", 0);
         if (cc != null) {
             cache = new CacheLongKeyLIRS<>(cc);
         } else {
             cache = null;
         }
         chunksToC = cc2 == null ? null : new CacheLongKeyLIRS<>(cc2);
+        offHeapCache = offHeapMb > 0 ? new OffHeapPageCache(offHeapMb * 1024L * 1024L) : null;
+        readAhead = this.fileStore == null ? 0 : Math.max(0, DataUtils.getConfigParam(config, "readAhead", 0));
+        prefetchExecutor = readAhead == 0 ? null
+                : Utils.createSingleThreadExecutor("H2-prefetch", new ArrayBlockingQueue<>(PREFETCH_QUEUE_LENGTH));
 
         pgSplitSize = DataUtils.getConfigParam(config, "pageSplitSize", pgSplitSize);
         // Make sure pages will fit into cache
@@ -449,6 +561,7 @@ public class MVStore implements AutoCloseable {
                 try {
                     if (fileStoreShallBeOpen) {
                         boolean readOnly = config.containsKey("readOnly");
+                        this.fileStore.setMemoryMapped(config.containsKey("memoryMapped"));
                         this.fileStore.open(fileName, readOnly, encryptionKey);
                     }
                     if (this.fileStore.size() == 0) {
@@ -1310,6 +1423,7 @@ private void closeStore(boolean normalShutdown, int allowedCompactionTime) {
         // This is a subtle difference between !isClosed() and isOpen().
         while (!isClosed()) {
             stopBackgroundThread(normalShutdown);
+            stopPrefetch();
             setOldestVersionTracker(null);
             storeLock.lock();
             try {
@@ -1348,6 +1462,9 @@ private void closeStore(boolean normalShutdown, int allowedCompactionTime) {
                             // release memory early - this is important when called
                             // because of out of memory
                             clearCaches();
+                            if (offHeapCache != null) {
+                                offHeapCache.close();
+                            }
                             for (MVMap<?, ?> m : new ArrayList<>(maps.values())) {
                                 m.close();
                             }
@@ -1445,6 +1562,11 @@ private long tryCommit(Predicate<MVStore> check) {
      * otherwise it increments the current version
      * and stores the data (for file based stores).
      * <p>
+     * If another thread has started to store changes after this method was
+     * called, they include all changes made before the call, so this method
+     * only waits for that store operation to complete. This way concurrent
+     * commits are grouped into a single chunk.
+     * <p>
      * It is not necessary to call this method when auto-commit is enabled (the default
      * setting), as in this case it is automatically called from time to time or
      * when enough changes have accumulated. However, it may still be called to
@@ -1463,14 +1585,26 @@ private long commit(Predicate<MVStore> check) {
         // because meta map is modified within storeNow() and that
         // causes beforeWrite() call with possibility of going back here
         if(!storeLock.isHeldByCurrentThread() || currentStoreVersion < 0) {
+            // all changes made so far belong to this version or older ones
+            long version = currentVersion;
             storeLock.lock();
             try {
-                if (check.test(this)) {
+                if (currentVersion > version) {
+                    // another thread has started to store them meanwhile,
+                    // together with its own changes, so just wait for it
+                    Utils.flushExecutor(serializationExecutor);
+                    Utils.flushExecutor(bufferSaveExecutor);
+                } else if (check.test(this)) {
                     store(true);
                 }
             } finally {
                 unlockAndCheckPanicCondition();
             }
+            if (syncOnCommit && fileStore != null && !fileStore.isReadOnly()) {
+                // sync outside of the store lock, so that the next commit can
+                // write its chunk meanwhile, concurrent syncs are coalesced
+                fileStore.sync();
+            }
         }
         return currentVersion;
     }
@@ -1531,12 +1665,12 @@ private void storeNow(boolean syncWrite, long reservedLow, Supplier<Long> reserv
         }
     }
 
-    private static void submitOrRun(ThreadPoolExecutor executor, Runnable action,
+    private void submitOrRun(ThreadPoolExecutor executor, Runnable action,
                                     boolean syncRun) throws ExecutionException {
         if (executor != null) {
             try {
                 Future<?> future = executor.submit(action);
-                if (syncRun || executor.getQueue().size() > PIPE_LENGTH) {
+                if (syncRun || executor.getQueue().size() > pipeLength) {
                     try {
                         future.get();
                     } catch (InterruptedException ignore) {/**/}
@@ -1660,6 +1794,9 @@ private void serializeToBuffer(WriteBuffer buff, ArrayList<Page<?, ?>> changed,
         buff.position(headerLength);
 
         long version = c.version;
+        if (parallelSerialization) {
+            preparePages(changed);
+        }
         List<Long> toc = new ArrayList<>();
         for (Page<?,?> p : changed) {
             String key = MVMap.getMapRootKey(p.getMapId());
@@ -1742,6 +1879,24 @@ private void serializeToBuffer(WriteBuffer buff, ArrayList<Page<?, ?>> changed,
         }
     }
 
+    /**
+     * Serialize keys and values of all changed pages in parallel, so that
+     * subsequent sequential write of the chunk only needs to copy them.
+     *
+     * @param changed the changed map roots
+     */
+    private void preparePages(ArrayList<Page<?,?>> changed) {
+        ArrayList<Page<?,?>> pages = new ArrayList<>();
+        for (Page<?,?> p : changed) {
+            if (p.getTotalCount() != 0) {
+                p.collectUnsavedRecursive(pages);
+            }
+        }
+        if (pages.size() >= 2 * PARALLEL_SERIALIZATION_BATCH) {
+            ForkJoinPool.commonPool().invoke(new PageSerializationTask(pages, 0, pages.size()));
+        }
+    }
+
     private void storeBuffer(Chunk c, WriteBuffer buff, ArrayList<Page<?,?>> changed) {
         saveChunkLock.lock();
         try {
@@ -2266,6 +2421,37 @@ public void sync() {
         }
     }
 
+    /**
+     * Shrink the file while the store remains in use. Chunks near the end of
+     * the file are moved into free space closer to the beginning, at most the
+     * given number of bytes at a time, and the free tail of the file is
+     * truncated after each step. The store lock is only held during a step,
+     * so that concurrent commits can proceed between steps; concurrent
+     * readers are not blocked at all. Unlike {@link #compactFile(int)}, the
+     * retention time is not changed and chunks are not rewritten.
+     *
+     * @param targetFillRate stop once the fill rate of the file is higher
+     *            than this
+     * @param stepSize the maximum number of bytes to move in one step
+     * @param maxCompactTime the maximum time in milliseconds to spend
+     * @return true if the file was shrunk, false if it wasn't shrunk or if
+     *         the store is in-memory or read-only
+     */
+    public boolean shrinkFile(int targetFillRate, long stepSize, int maxCompactTime) {
+        checkOpen();
+        if (fileStore == null || fileStore.isReadOnly()) {
+            return false;
+        }
+        long stopAt = System.nanoTime() + maxCompactTime * 1_000_000L;
+        long originalSize = fileStore.size();
+        while (compactMoveChunks(targetFillRate, stepSize)) {
+            if (System.nanoTime() - stopAt > 0L) {
+                break;
+            }
+        }
+        return fileStore.size() < originalSize;
+    }
+
     /**
      * Compact store file, that is, compact blocks that have a low
      * fill rate, and move chunks next to each other. This will typically
@@ -2565,8 +2751,10 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
             if (p == null) {
                 Chunk chunk = getChunk(pos);
                 int pageOffset = DataUtils.getPageOffset(pos);
+                // the buffer may be a view of a memory mapped segment
+                fileStore.beginMappedRead();
                 try {
-                    ByteBuffer buff = chunk.readBufferForPage(fileStore, pageOffset, pos);
+                    ByteBuffer buff = readPageBuffer(chunk, pageOffset, pos);
                     p = Page.read(buff, pos, map);
                 } catch (MVStoreException e) {
                     throw e;
@@ -2574,6 +2762,8 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
                     throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
                             "Unable to read the page at position {0}, chunk {1}, offset {2}",
                             pos, chunk.id, pageOffset, e);
+                } finally {
+                    fileStore.endMappedRead();
                 }
                 cachePage(p);
             }
@@ -2586,6 +2776,35 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
         }
     }
 
+    /**
+     * Get the serialized page from the off-heap cache, or read it from the
+     * file and put a copy of it into the off-heap cache.
+     *
+     * @param chunk the chunk of the page
+     * @param pageOffset the offset of the page within the chunk
+     * @param pos the page position
+     * @return the buffer positioned at the start of the page
+     */
+    private ByteBuffer readPageBuffer(Chunk chunk, int pageOffset, long pos) {
+        if (offHeapCache == null) {
+            return chunk.readBufferForPage(fileStore, pageOffset, pos);
+        }
+        ByteBuffer buff = offHeapCache.get(pos);
+        if (buff != null) {
+            return buff;
+        }
+        buff = chunk.readBufferForPage(fileStore, pageOffset, pos);
+        int start = buff.position();
+        int pageLength = buff.getInt(start);
+        // a broken page is not cached, Page.read() reports the error
+        if (pageLength >= 4 && pageLength <= buff.remaining()) {
+            ByteBuffer src = buff.duplicate();
+            src.limit(start + pageLength);
+            offHeapCache.put(pos, src);
+        }
+        return buff;
+    }
+
     private long[] getToC(Chunk chunk) {
         if (chunk.tocPos == 0) {
             // legacy chunk without table of content
@@ -2600,6 +2819,96 @@ private long[] getToC(Chunk chunk) {
         return toc;
     }
 
+    /**
+     * Read the given child pages of the page into the page cache in the
+     * background, unless they are cached already. Nothing is done if
+     * read-ahead is disabled or the background reader is busy.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     *
+     * @param parent the parent page
+     * @param from the index of the first child page (inclusive)
+     * @param to the index of the last child page (exclusive)
+     */
+    <K,V> void prefetchChildPages(Page<K,V> parent, int from, int to) {
+        if (prefetchExecutor == null || cache == null) {
+            return;
+        }
+        long[] positions = new long[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            long pos = parent.getChildPagePos(i);
+            if (DataUtils.isPageSaved(pos) && cache.get(pos) == null) {
+                positions[count++] = pos;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        MVMap<K,V> map = parent.map;
+        int pageCount = count;
+        try {
+            prefetchExecutor.execute(() -> {
+                prefetchThread = Thread.currentThread();
+                for (int i = 0; i < pageCount && isOpen(); i++) {
+                    long pos = positions[i];
+                    if (cache.get(pos) == null) {
+                        try {
+                            readPage(map, pos);
+                        } catch (RuntimeException ignore) {
+                            // the page may be gone already, or the store is
+                            // being closed; a reader will report the problem
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignore) {/**/}
+    }
+
+    /**
+     * Stop the prefetch thread and wait until it has finished reading. Pages
+     * that are not read yet are dropped. The thread is not interrupted, as an
+     * interrupt closes an interruptible file channel.
+     */
+    private void stopPrefetch() {
+        if (prefetchExecutor == null) {
+            return;
+        }
+        prefetchExecutor.getQueue().clear();
+        prefetchExecutor.shutdown();
+        if (Thread.currentThread() == prefetchThread) {
+            // the store is closed by a failed read of the prefetch thread
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (prefetchExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get the number of sibling leaf pages, which a cursor reads ahead during
+     * sequential scans.
+     *
+     * @return the number of pages, or 0 if read-ahead is disabled
+     */
+    int getReadAhead() {
+        return readAhead;
+    }
+
     @SuppressWarnings("unchecked")
     private <K, V> Page<K, V> readPageFromCache(long pos) {
         return cache == null ? null : (Page<K,V>)cache.get(pos);
@@ -2645,18 +2954,75 @@ private int calculatePageNo(long pos) {
         return pageNo;
     }
 
-    Compressor getCompressorFast() {
-        if (compressorFast == null) {
-            compressorFast = new CompressLZF();
+    /**
+     * Get the compressor for the given algorithm. The same instance is used
+     * to expand pages concurrently, and to compress pages while storing.
+     *
+     * @param algorithm the compression algorithm
+     * @return the compressor
+     */
+    Compressor getCompressor(int algorithm) {
+        Compressor compressor = compressors[algorithm];
+        if (compressor == null) {
+            compressor = createCompressor(algorithm);
+            compressors[algorithm] = compressor;
+        }
+        return compressor;
+    }
+
+    /**
+     * Get the compressor for new pages of the given map, according to the
+     * compression algorithm of the map, or the compression level of the
+     * store.
+     *
+     * @param map the map
+     * @return the compressor, or null if compression is disabled
+     */
+    Compressor getCompressor(MVMap<?, ?> map) {
+        int algorithm = getCompressionAlgorithm(map);
+        return algorithm == Compressor.NO ? null : getCompressor(algorithm);
+    }
+
+    /**
+     * Get the compression algorithm for new pages of the given map.
+     *
+     * @param map the map
+     * @return the compression algorithm
+     */
+    private int getCompressionAlgorithm(MVMap<?, ?> map) {
+        int algorithm = map.getCompressionAlgorithm();
+        if (algorithm >= 0) {
+            return algorithm;
+        }
+        switch (compressionLevel) {
+        case 0:
+            return Compressor.NO;
+        case 1:
+            return Compressor.LZF;
+        default:
+            return Compressor.DEFLATE;
         }
-        return compressorFast;
     }
 
-    Compressor getCompressorHigh() {
-        if (compressorHigh == null) {
-            compressorHigh = new CompressDeflate();
+    /**
+     * Create a new compressor. Unlike the compressors returned by
+     * {@link #getCompressor(int)}, it may be used concurrently with them.
+     *
+     * @param algorithm the compression algorithm
+     * @return the compressor
+     */
+    static Compressor createCompressor(int algorithm) {
+        switch (algorithm) {
+        case Compressor.LZF:
+            return new CompressLZF();
+        case Compressor.DEFLATE:
+            return new CompressDeflate();
+        case Compressor.LZ4:
+            return new CompressLZ4();
+        default:
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                    "Unsupported compression algorithm {0}", algorithm);
         }
-        return compressorHigh;
     }
 
     int getCompressionLevel() {
@@ -3045,6 +3411,9 @@ private void clearCaches() {
         if (chunksToC != null) {
             chunksToC.clear();
         }
+        if (offHeapCache != null) {
+            offHeapCache.clear();
+        }
     }
 
     private long getRootPos(int mapId) {
@@ -3052,6 +3421,50 @@ private long getRootPos(int mapId) {
         return root == null ? 0 : DataUtils.parseHexLong(root);
     }
 
+    /**
+     * Get the position of the root page of a map in an older version, as
+     * stored in the file.
+     *
+     * @param mapId the map id
+     * @param version the version
+     * @return the root position, or 0 if the map was empty
+     * @throws IllegalArgumentException if the data of this version is no
+     *             longer available
+     */
+    long getRootPos(int mapId, long version) {
+        // the chunk of the next version holds the state at the end of this one
+        long nextVersion = version + 1;
+        Chunk c = fileStore == null ? null : getChunkForVersion(nextVersion);
+        if (c == null || c.version != nextVersion || !isKnownVersion(nextVersion)) {
+            throw DataUtils.newIllegalArgumentException("Unknown version {0}", version);
+        }
+        String root = getLayoutMap(nextVersion).get(MVMap.getMapRootKey(mapId));
+        return root == null ? 0 : DataUtils.parseHexLong(root);
+    }
+
+    /**
+     * Get the newest version that was stored at or before the given time.
+     * Changes made after the last chunk was written are not taken into
+     * account, unless the time is not in the past.
+     *
+     * @param time the time, in milliseconds since 1970
+     * @return the version, or -1 if no version was stored at that time
+     */
+    public long getVersionAt(long time) {
+        if (time >= getTimeAbsolute()) {
+            return currentVersion;
+        }
+        long relativeTime = time - creationTime;
+        long version = -1;
+        for (Chunk c : chunks.values()) {
+            // a chunk holds the state at the end of the previous version
+            if (c.time <= relativeTime && c.version - 1 > version) {
+                version = c.version - 1;
+            }
+        }
+        return version;
+    }
+
     /**
      * Get the current version of the data. When a new store is created, the
      * version is 0.
@@ -3210,21 +3623,37 @@ void writeInBackground() {
             // but according to a test it doesn't really help
 
             long time = getTimeSinceCreation();
+            int compactionLimit = getCompactionWriteLimit(time);
             if (time > lastCommitTime + autoCommitDelay) {
                 tryCommit();
-                if (autoCompactFillRate < 0) {
-                    compact(-getTargetFillRate(), autoCommitMemory);
+                if (autoCompactFillRate < 0 && compactionLimit > 0
+                        && storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                    try {
+                        long writeBytes = fileStore.getWriteBytes();
+                        int writeLimit = Math.min(autoCommitMemory, compactionLimit);
+                        if (compact(-getTargetFillRate(), writeLimit)) {
+                            chargeCompaction(writeBytes);
+                        }
+                    } finally {
+                        unlockAndCheckPanicCondition();
+                    }
                 }
             }
             int fillRate = getFillRate();
-            if (fileStore.isFragmented() && fillRate < autoCompactFillRate) {
+            if (compactionLimit == 0) {
+                // compaction is paused
+            } else if ((autoShrink || fileStore.isFragmented()) && fillRate < autoCompactFillRate) {
                 if (storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
                     try {
                         int moveSize = autoCommitMemory;
                         if (isIdle()) {
                             moveSize *= 4;
                         }
-                        compactMoveChunks(101, moveSize);
+                        moveSize = Math.min(moveSize, compactionLimit);
+                        long writeBytes = fileStore.getWriteBytes();
+                        if (compactMoveChunks(101, moveSize)) {
+                            chargeCompaction(writeBytes);
+                        }
                     } finally {
                         unlockAndCheckPanicCondition();
                     }
@@ -3239,7 +3668,10 @@ void writeInBackground() {
                             if (!isIdle()) {
                                 writeLimit /= 4;
                             }
+                            writeLimit = Math.min(writeLimit, compactionLimit);
+                            long writeBytes = fileStore.getWriteBytes();
                             if (rewriteChunks(writeLimit, chunksFillRate)) {
+                                chargeCompaction(writeBytes);
                                 dropUnusedChunks();
                             }
                         } finally {
@@ -3258,6 +3690,51 @@ void writeInBackground() {
         }
     }
 
+    /**
+     * Refill the write budget of background compaction for the time elapsed
+     * since the last call, and get the number of bytes it may write now.
+     * Writes not charged to compaction are considered foreground writes;
+     * compaction is paused while they exceed the compaction write rate.
+     *
+     * @param time the time since creation
+     * @return the number of bytes compaction may write, 0 if it is paused
+     */
+    private int getCompactionWriteLimit(long time) {
+        if (autoCompactWriteRate == 0) {
+            return Integer.MAX_VALUE;
+        }
+        long allowance = autoCompactWriteRate * Math.max(0, time - autoCompactBudgetTime) / 1000;
+        long writeBytes = fileStore.getWriteBytes();
+        long foregroundWrites = writeBytes - autoCompactWriteBytes - autoCompactCharged;
+        autoCompactBudgetTime = time;
+        autoCompactWriteBytes = writeBytes;
+        autoCompactCharged = 0;
+        autoCompactBudget = Math.min(autoCompactBudget + allowance, autoCompactWriteRate);
+        if (foregroundWrites > allowance || autoCompactBudget <= 0) {
+            return 0;
+        }
+        return (int) Math.min(autoCompactBudget, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Charge the bytes written by compaction to its budget. Pages rewritten by
+     * compaction are only written by the next commit, so the changes are
+     * committed first; otherwise they would be counted as foreground writes
+     * later.
+     *
+     * @param writeBytes the number of bytes written to the file before the
+     *            compaction step
+     */
+    private void chargeCompaction(long writeBytes) {
+        assert storeLock.isHeldByCurrentThread();
+        if (autoCompactWriteRate != 0) {
+            store(true);
+            long bytes = fileStore.getWriteBytes() - writeBytes;
+            autoCompactBudget -= bytes;
+            autoCompactCharged += bytes;
+        }
+    }
+
     private void doMaintenance(int targetFillRate) {
         if (autoCompactFillRate > 0 && lastChunk != null && reuseSpace) {
             try {
@@ -3524,6 +4001,26 @@ public int getTocCacheHitRatio() {
         return getCacheHitRatio(chunksToC);
     }
 
+    /**
+     * Get the amount of direct memory used by the off-heap page cache, in MB.
+     *
+     * @return the amount of memory, or 0 if the off-heap cache is disabled
+     */
+    public int getOffHeapCacheSizeUsed() {
+        if (offHeapCache == null) {
+            return 0;
+        }
+        return (int) (offHeapCache.getUsedMemory() >> 20);
+    }
+
+    public int getOffHeapCacheHitRatio() {
+        if (offHeapCache == null) {
+            return 0;
+        }
+        long hits = offHeapCache.getHits();
+        return (int) (100 * hits / (hits + offHeapCache.getMisses() + 1));
+    }
+
     private static int getCacheHitRatio(CacheLongKeyLIRS<?> cache) {
         if (cache == null) {
             return 0;
@@ -3649,10 +4146,15 @@ private int dropUnusedChunks() {
                     if (chunks.remove(chunk.id) != null) {
                         // purge dead pages from cache
                         long[] toc = chunksToC.remove(chunk.id);
-                        if (toc != null && cache != null) {
+                        if (toc != null) {
                             for (long tocElement : toc) {
                                 long pagePos = DataUtils.getPagePos(chunk.id, tocElement);
-                                cache.remove(pagePos);
+                                if (cache != null) {
+                                    cache.remove(pagePos);
+                                }
+                                if (offHeapCache != null) {
+                                    offHeapCache.remove(pagePos);
+                                }
                             }
                         }
 
@@ -3777,6 +4279,49 @@ public void run() {
         }
     }
 
+    /**
+     * A task to serialize keys and values of a range of changed pages. Each
+     * leaf task uses its own buffer and compressors.
+     */
+    private final class PageSerializationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Page<?,?>> pages;
+        private final int from;
+        private final int to;
+
+        PageSerializationTask(List<Page<?,?>> pages, int from, int to) {
+            this.pages = pages;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_SERIALIZATION_BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PageSerializationTask(pages, from, mid), new PageSerializationTask(pages, mid, to));
+            } else {
+                WriteBuffer buff = new WriteBuffer(2 * pageSplitSize);
+                Compressor[] compressors = new Compressor[Compressor.LZ4 + 1];
+                for (int i = from; i < to; i++) {
+                    Page<?,?> page = pages.get(i);
+                    int algorithm = getCompressionAlgorithm(page.map);
+                    Compressor compressor = null;
+                    if (algorithm != Compressor.NO) {
+                        compressor = compressors[algorithm];
+                        if (compressor == null) {
+                            compressor = createCompressor(algorithm);
+                            compressors[algorithm] = compressor;
+                        }
+                    }
+                    page.preparePayload(buff, compressor);
+                }
+            }
+        }
+    }
+
     private static class RemovedPageInfo implements Comparable<RemovedPageInfo> {
         final long version;
         final long removedPageInfo;
@@ -3913,6 +4458,35 @@ public Builder autoCompactFillRate(int percent) {
             return set("autoCompactFillRate", percent);
         }
 
+        /**
+         * Limit the rate, at which the background thread may write while it
+         * compacts the file, in KB per second. Chunks are still chosen by
+         * their fill rate and age, but fewer of them are rewritten or moved
+         * at a time, and compaction pauses while other writes to the file
+         * exceed this rate. The default is 0, meaning the rate is not limited.
+         * Compaction on close is not limited.
+         *
+         * @param kb the write rate in KB per second
+         * @return this
+         */
+        public Builder autoCompactWriteRate(int kb) {
+            return set("autoCompactWriteRate", kb);
+        }
+
+        /**
+         * Shrink the file in the background. If the fill rate of the file is
+         * lower than the auto-compact fill rate, for example after a lot of
+         * data was deleted, the background thread moves a few chunks from the
+         * end of the file into free space closer to the beginning each time
+         * it runs, and truncates the file. By default, chunks are only moved
+         * if new chunks don't fit into the free space.
+         *
+         * @return this
+         */
+        public Builder autoShrink() {
+            return set("autoShrink", 1);
+        }
+
         /**
          * Use the following file name. If the file does not exist, it is
          * automatically created. The parent directory already must exist.
@@ -4025,6 +4599,85 @@ public Builder compressHigh() {
             return set("compress", 2);
         }
 
+        /**
+         * Serialize changed pages using multiple threads. Pages are still
+         * placed into a chunk sequentially, but encoding (and compression) of
+         * their keys and values is split between the threads of the common
+         * fork-join pool. This reduces commit latency when a lot of pages are
+         * changed between commits.
+         *
+         * @return this
+         */
+        public Builder parallelSerialization() {
+            return set("parallelSerialization", 1);
+        }
+
+        /**
+         * Sync the file at the end of each commit, so that changes are durable
+         * when commit returns. Commits of concurrent threads, which arrive
+         * while a chunk is being written or synced, share the next chunk and
+         * the next sync.
+         *
+         * @return this
+         */
+        public Builder syncOnCommit() {
+            return set("syncOnCommit", 1);
+        }
+
+        /**
+         * Serve page reads from memory mapped segments of the file, so that
+         * pages are decoded directly from the mapped memory instead of being
+         * copied into a new heap buffer on each cache miss. This is ignored
+         * for encrypted files, for file systems, which do not support memory
+         * mapping, and if a file store is set explicitly.
+         *
+         * @return this
+         */
+        public Builder memoryMapped() {
+            return set("memoryMapped", 1);
+        }
+
+        /**
+         * Set the size of the off-heap page cache in MB. The default is 0,
+         * meaning it is disabled. This cache keeps serialized (and possibly
+         * compressed) pages in direct memory, so that pages evicted from the
+         * read cache can be decoded again without reading the file, while
+         * the cached bytes don't add to the garbage collector's work.
+         *
+         * @param mb the cache size in megabytes
+         * @return this
+         */
+        public Builder offHeapCacheSize(int mb) {
+            return set("offHeapCacheSize", mb);
+        }
+
+        /**
+         * Set the number of leaf pages, which cursors read ahead into the
+         * cache in a background thread, once a scan moves from one leaf page
+         * to the next one. The default is 0, meaning read-ahead is disabled.
+         *
+         * @param pages the number of pages to read ahead
+         * @return this
+         */
+        public Builder readAhead(int pages) {
+            return set("readAhead", pages);
+        }
+
+        /**
+         * Set the number of chunks, which may be queued for serialization and,
+         * separately, for being written to the file by the background threads,
+         * before committing thread has to wait. Longer pipeline allows one
+         * slow write to overlap with serialization of the following chunks,
+         * at the expense of memory used by queued buffers. Chunks are still
+         * written in order. The default is 1.
+         *
+         * @param length the number of chunks
+         * @return this
+         */
+        public Builder pipeLength(int length) {
+            return set("pipeLength", length);
+        }
+
         /**
          * Set the amount of memory a page should contain at most, in bytes,
          * before it is split. The default is 16 KB for persistent stores and 4
@@ -17,8 +17,6 @@
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
-import org.h2.compress.CompressDeflate;
-import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
 import org.h2.engine.Constants;
 import org.h2.mvstore.tx.TransactionStore;
@@ -232,8 +230,8 @@ public static void dump(String fileName, Writer writer, boolean details) {
                     if (mapId == 0 && details) {
                         ByteBuffer data;
                         if (compressed) {
-                            boolean fast = (type & DataUtils.PAGE_COMPRESSED_HIGH) != DataUtils.PAGE_COMPRESSED_HIGH;
-                            Compressor compressor = getCompressor(fast);
+                            Compressor compressor = MVStore.createCompressor(
+                                    DataUtils.getPageCompressionAlgorithm(type));
                             int lenAdd = DataUtils.readVarInt(chunk);
                             int compLen = pageSize + start - chunk.position();
                             byte[] comp = Utils.newBytes(compLen);
@@ -328,10 +326,6 @@ public static void dump(String fileName, Writer writer, boolean details) {
         pw.flush();
     }
 
-    private static Compressor getCompressor(boolean fast) {
-        return fast ? new CompressLZF() : new CompressDeflate();
-    }
-
     /**
      * Read the summary information of the file and write them to system out.
      *
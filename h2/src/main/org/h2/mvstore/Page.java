@@ -28,7 +28,7 @@
  * page number (0-based sequential number within a chunk): varInt
  * map id: varInt
  * number of keys: varInt
- * type: byte (0: leaf, 1: node; +2: compressed)
+ * type: byte (0: leaf, 1: node; +2: compressed; +4: high; bits 4-6: algorithm)
  * children of the non-leaf node (1 more than keys)
  * compressed: bytes saved (varInt)
  * keys
@@ -82,6 +82,12 @@
      */
     private K[] keys;
 
+    /**
+     * Serialized keys and values, prepared by a parallel serialization, or
+     * null. The first byte holds the compression type bits.
+     */
+    private byte[] preparedPayload;
+
     /**
      * Updater for pos field, which can be updated when page is saved,
      * but can be concurrently marked as removed
@@ -624,15 +630,9 @@ private void read(ByteBuffer buff) {
         if (!isLeaf()) {
             readPayLoad(buff);
         }
-        boolean compressed = (type & DataUtils.PAGE_COMPRESSED) != 0;
-        if (compressed) {
-            Compressor compressor;
-            if ((type & DataUtils.PAGE_COMPRESSED_HIGH) ==
-                    DataUtils.PAGE_COMPRESSED_HIGH) {
-                compressor = map.getStore().getCompressorHigh();
-            } else {
-                compressor = map.getStore().getCompressorFast();
-            }
+        int algorithm = DataUtils.getPageCompressionAlgorithm(type);
+        if (algorithm != Compressor.NO) {
+            Compressor compressor = map.getStore().getCompressor(algorithm);
             int lenAdd = DataUtils.readVarInt(buff);
             int compLen = buff.remaining();
             byte[] comp;
@@ -716,44 +716,18 @@ protected final int write(Chunk chunk, WriteBuffer buff, List<Long> toc) {
         buff.put((byte)type);
         int childrenPos = buff.position();
         writeChildren(buff, true);
-        int compressStart = buff.position();
-        map.getKeyType().write(buff, keys, keyCount);
-        writeValues(buff);
         MVStore store = map.getStore();
-        int expLen = buff.position() - compressStart;
-        if (expLen > 16) {
-            int compressionLevel = store.getCompressionLevel();
-            if (compressionLevel > 0) {
-                Compressor compressor;
-                int compressType;
-                if (compressionLevel == 1) {
-                    compressor = store.getCompressorFast();
-                    compressType = DataUtils.PAGE_COMPRESSED;
-                } else {
-                    compressor = store.getCompressorHigh();
-                    compressType = DataUtils.PAGE_COMPRESSED_HIGH;
-                }
-                byte[] comp = new byte[expLen * 2];
-                ByteBuffer byteBuffer = buff.getBuffer();
-                int pos = 0;
-                byte[] exp;
-                if (byteBuffer.hasArray()) {
-                    exp = byteBuffer.array();
-                    pos = byteBuffer.arrayOffset()  + compressStart;
-                } else {
-                    exp = Utils.newBytes(expLen);
-                    buff.position(compressStart).get(exp);
-                }
-                int compLen = compressor.compress(exp, pos, expLen, comp, 0);
-                int plus = DataUtils.getVarIntLen(expLen - compLen);
-                if (compLen + plus < expLen) {
-                    buff.position(typePos)
-                        .put((byte) (type | compressType));
-                    buff.position(compressStart)
-                        .putVarInt(expLen - compLen)
-                        .put(comp, 0, compLen);
-                }
-            }
+        int compressType;
+        byte[] payload = preparedPayload;
+        if (payload != null) {
+            preparedPayload = null;
+            compressType = payload[0];
+            buff.put(payload, 1, payload.length - 1);
+        } else {
+            compressType = writePayload(buff, store.getCompressor(map));
+        }
+        if (compressType != 0) {
+            buff.getBuffer().put(typePos, (byte) (type | compressType));
         }
         int pageLength = buff.position() - start;
         long tocElement = DataUtils.getTocElement(getMapId(), start, buff.position() - start, type);
@@ -789,6 +763,66 @@ protected final int write(Chunk chunk, WriteBuffer buff, List<Long> toc) {
         return childrenPos;
     }
 
+    /**
+     * Write keys and values of this page to the buffer, compressing them if
+     * a compressor is given and the result is smaller.
+     *
+     * @param buff the target buffer
+     * @param compressor the compressor to use, or null
+     * @return the compression type bits to add to the page type
+     */
+    private int writePayload(WriteBuffer buff, Compressor compressor) {
+        int compressStart = buff.position();
+        map.getKeyType().write(buff, keys, getKeyCount());
+        writeValues(buff);
+        int expLen = buff.position() - compressStart;
+        if (expLen > 16 && compressor != null) {
+            byte[] comp = new byte[expLen * 2];
+            ByteBuffer byteBuffer = buff.getBuffer();
+            int pos = 0;
+            byte[] exp;
+            if (byteBuffer.hasArray()) {
+                exp = byteBuffer.array();
+                pos = byteBuffer.arrayOffset()  + compressStart;
+            } else {
+                exp = Utils.newBytes(expLen);
+                buff.position(compressStart).get(exp);
+            }
+            int compLen = compressor.compress(exp, pos, expLen, comp, 0);
+            int plus = DataUtils.getVarIntLen(expLen - compLen);
+            if (compLen + plus < expLen) {
+                buff.position(compressStart)
+                    .putVarInt(expLen - compLen)
+                    .put(comp, 0, compLen);
+                return DataUtils.getPageCompressionType(compressor.getAlgorithm());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Serialize (and possibly compress) keys and values of this page ahead of
+     * time, so that a subsequent {@link #write(Chunk, WriteBuffer, List)} only
+     * needs to copy them. Unlike the write itself, which depends on the
+     * position within the chunk, this may be done concurrently for different
+     * pages.
+     *
+     * @param buff the scratch buffer to use
+     * @param compressor the compressor to use, not shared with other threads,
+     *            or null
+     */
+    final void preparePayload(WriteBuffer buff, Compressor compressor) {
+        buff.clear();
+        int compressType = writePayload(buff, compressor);
+        ByteBuffer byteBuffer = buff.getBuffer();
+        int length = byteBuffer.position();
+        byte[] payload = new byte[length + 1];
+        payload[0] = (byte) compressType;
+        byteBuffer.flip();
+        byteBuffer.get(payload, 1, length);
+        preparedPayload = payload;
+    }
+
     /**
      * Write values that the buffer contains to the buff.
      *
@@ -813,6 +847,15 @@ protected final int write(Chunk chunk, WriteBuffer buff, List<Long> toc) {
      */
     abstract void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc);
 
+    /**
+     * Collect this page and all children that are changed, in the same order
+     * as {@link #writeUnsavedRecursive(Chunk, WriteBuffer, List)} would store
+     * them.
+     *
+     * @param pages the target list
+     */
+    abstract void collectUnsavedRecursive(List<Page<?,?>> pages);
+
     /**
      * Unlink the children recursively after all data is written.
      */
@@ -1335,6 +1378,24 @@ void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             }
         }
 
+        @Override
+        void collectUnsavedRecursive(List<Page<?,?>> pages) {
+            if (!isSaved()) {
+                pages.add(this);
+                collectChildrenRecursive(pages);
+            }
+        }
+
+        void collectChildrenRecursive(List<Page<?,?>> pages) {
+            int len = getRawChildPageCount();
+            for (int i = 0; i < len; i++) {
+                Page<K,V> p = children[i].getPage();
+                if (p != null) {
+                    p.collectUnsavedRecursive(pages);
+                }
+            }
+        }
+
         void writeChildrenRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             int len = getRawChildPageCount();
             for (int i = 0; i < len; i++) {
@@ -1407,6 +1468,15 @@ void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             }
         }
 
+        @Override
+        void collectUnsavedRecursive(List<Page<?,?>> pages) {
+            if (complete) {
+                super.collectUnsavedRecursive(pages);
+            } else if (!isSaved()) {
+                collectChildrenRecursive(pages);
+            }
+        }
+
         @Override
         public boolean isComplete() {
             return complete;
@@ -1619,6 +1689,13 @@ void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             }
         }
 
+        @Override
+        void collectUnsavedRecursive(List<Page<?,?>> pages) {
+            if (!isSaved()) {
+                pages.add(this);
+            }
+        }
+
         @Override
         void releaseSavedPages() {}
 
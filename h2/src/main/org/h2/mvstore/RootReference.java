@@ -48,7 +48,7 @@
     /**
      * Size of the occupied part of the append buffer.
      */
-    private final byte appendCounter;
+    private final int appendCounter;
 
 
     // This one is used to set root initially and for r/o snapshots
@@ -99,7 +99,7 @@ private RootReference(RootReference<K,V> r, Page<K,V> root, boolean keepLocked,
                 : Thread.currentThread().getId() + " " + r;
         this.holdCount = (byte)(r.holdCount - (keepLocked ? 0 : 1));
         this.ownerId = this.holdCount == 0 ? 0 : Thread.currentThread().getId();
-        this.appendCounter = (byte) appendCounter;
+        this.appendCounter = appendCounter;
     }
 
     // This one is used for version change
@@ -227,7 +227,7 @@ boolean hasChangesSince(long version, boolean persistent) {
     }
 
     int getAppendCounter() {
-        return appendCounter & 0xff;
+        return appendCounter;
     }
 
     /**
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.cache;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.h2.util.MemoryUnmapper;
+
+/**
+ * A cache of serialized pages in direct memory, with keys of type long.
+ * <p>
+ * The memory is allocated in a few large slabs when it is needed, and not for
+ * each entry, so that the number of direct buffers is small and the direct
+ * memory in use never exceeds the maximum size of the cache. The space within
+ * the slabs is allocated in blocks; the blocks of an entry are freed as soon
+ * as the entry is removed or evicted, and are reused by new entries. If there
+ * is no free space for a new entry, the least recently used entries are
+ * evicted. The slabs are released when the cache is closed.
+ * <p>
+ * This implementation is multi-threading safe. Entries are copied into a heap
+ * buffer when they are read, so that the space of an entry can be reused
+ * while its content is still in use.
+ */
+public final class OffHeapPageCache {
+
+    /**
+     * The size of an allocation block in bytes.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * The maximum size of a slab in bytes.
+     */
+    private static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private final int blocksPerSlab;
+
+    /**
+     * The slabs, allocated when needed.
+     */
+    private ByteBuffer[] slabs;
+
+    /**
+     * The used blocks of each slab.
+     */
+    private final BitSet[] usedBlocks;
+
+    /**
+     * The entries, in access order.
+     */
+    private final LinkedHashMap<Long, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long usedMemory;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxMemory the maximum amount of direct memory to use, in bytes
+     */
+    public OffHeapPageCache(long maxMemory) {
+        int slabSize = (int) Math.min(maxMemory, MAX_SLAB_SIZE);
+        blocksPerSlab = Math.max(slabSize / BLOCK_SIZE, 1);
+        int slabCount = (int) Math.min(Math.max(maxMemory / ((long) blocksPerSlab * BLOCK_SIZE), 1),
+                Integer.MAX_VALUE);
+        slabs = new ByteBuffer[slabCount];
+        usedBlocks = new BitSet[slabCount];
+    }
+
+    /**
+     * Get a copy of the value for the given key.
+     *
+     * @param key the key
+     * @return a heap buffer with the value, or null if not found
+     */
+    public synchronized ByteBuffer get(long key) {
+        Entry e = map.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        ByteBuffer src = slabs[e.slab].duplicate();
+        src.position(e.offset);
+        src.limit(e.offset + e.length);
+        ByteBuffer copy = ByteBuffer.allocate(e.length);
+        copy.put(src);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Copy the remaining bytes of the given buffer into the cache, if there is
+     * no entry for the key yet. Least recently used entries are evicted if
+     * needed. Values that are larger than a slab are not cached.
+     *
+     * @param key the key
+     * @param value the value, its position is not changed
+     */
+    public synchronized void put(long key, ByteBuffer value) {
+        int length = value.remaining();
+        int blocks = getBlockCount(length);
+        if (slabs == null || blocks > blocksPerSlab || map.containsKey(key)) {
+            return;
+        }
+        Entry e;
+        while ((e = allocate(blocks)) == null) {
+            Iterator<Entry> iterator = map.values().iterator();
+            if (!iterator.hasNext()) {
+                return;
+            }
+            Entry eldest = iterator.next();
+            iterator.remove();
+            free(eldest);
+        }
+        e.length = length;
+        ByteBuffer dst = slabs[e.slab].duplicate();
+        dst.position(e.offset);
+        dst.put(value.duplicate());
+        map.put(key, e);
+    }
+
+    /**
+     * Remove the entry for the given key and free its space.
+     *
+     * @param key the key
+     */
+    public synchronized void remove(long key) {
+        Entry e = map.remove(key);
+        if (e != null) {
+            free(e);
+        }
+    }
+
+    /**
+     * Remove all entries. The slabs are kept for new entries.
+     */
+    public synchronized void clear() {
+        map.clear();
+        for (BitSet set : usedBlocks) {
+            if (set != null) {
+                set.clear();
+            }
+        }
+        usedMemory = 0;
+    }
+
+    /**
+     * Remove all entries and release the slabs. New entries are not cached
+     * afterwards.
+     */
+    public synchronized void close() {
+        clear();
+        if (slabs != null) {
+            for (ByteBuffer slab : slabs) {
+                if (slab != null) {
+                    MemoryUnmapper.unmap(slab);
+                }
+            }
+            slabs = null;
+        }
+    }
+
+    /**
+     * Get the memory used by the entries, in bytes.
+     *
+     * @return the used memory
+     */
+    public synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return the cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private Entry allocate(int blocks) {
+        for (int i = 0; i < slabs.length; i++) {
+            BitSet set = usedBlocks[i];
+            if (set == null) {
+                slabs[i] = ByteBuffer.allocateDirect(blocksPerSlab * BLOCK_SIZE);
+                usedBlocks[i] = set = new BitSet(blocksPerSlab);
+            }
+            for (int start = set.nextClearBit(0); start + blocks <= blocksPerSlab;) {
+                int end = set.nextSetBit(start);
+                if (end < 0 || end - start >= blocks) {
+                    set.set(start, start + blocks);
+                    usedMemory += blocks * BLOCK_SIZE;
+                    return new Entry(i, start * BLOCK_SIZE);
+                }
+                start = set.nextClearBit(end);
+            }
+        }
+        return null;
+    }
+
+    private void free(Entry e) {
+        int start = e.offset / BLOCK_SIZE;
+        int blocks = getBlockCount(e.length);
+        usedBlocks[e.slab].clear(start, start + blocks);
+        usedMemory -= blocks * BLOCK_SIZE;
+    }
+
+    private static int getBlockCount(int length) {
+        return Math.max((length + BLOCK_SIZE - 1) / BLOCK_SIZE, 1);
+    }
+
+    /**
+     * The location of a cached value.
+     */
+    private static final class Entry {
+
+        /**
+         * The index of the slab.
+         */
+        final int slab;
+
+        /**
+         * The offset within the slab, in bytes.
+         */
+        final int offset;
+
+        /**
+         * The length of the value, in bytes.
+         */
+        int length;
+
+        Entry(int slab, int offset) {
+            this.slab = slab;
+            this.offset = offset;
+        }
+
+    }
+
+}
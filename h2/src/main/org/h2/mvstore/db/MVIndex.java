@@ -5,6 +5,7 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.h2.index.Index;
@@ -44,4 +45,14 @@ protected MVIndex(Table newTable, int id, String name, IndexColumn[] newIndexCol
 
     public abstract MVMap<K,VersionedValue<V>> getMVMap();
 
+    /**
+     * Get the maps of this index, one for each partition of a partitioned
+     * table.
+     *
+     * @return the maps
+     */
+    public List<MVMap<K,VersionedValue<V>>> getMVMaps() {
+        return Collections.singletonList(getMVMap());
+    }
+
 }
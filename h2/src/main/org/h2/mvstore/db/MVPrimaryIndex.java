@@ -5,6 +5,10 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
@@ -14,6 +18,7 @@
 import org.h2.engine.SessionLocal;
 import org.h2.index.Cursor;
 import org.h2.index.IndexType;
+import org.h2.index.PartitionedIndex;
 import org.h2.index.SingleRowCursor;
 import org.h2.message.DbException;
 import org.h2.mvstore.MVMap;
@@ -27,6 +32,7 @@
 import org.h2.result.SortOrder;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
+import org.h2.table.Partitioning;
 import org.h2.table.TableFilter;
 import org.h2.value.Value;
 import org.h2.value.ValueLob;
@@ -36,11 +42,18 @@
 /**
  * A table stored in a MVStore.
  */
-public class MVPrimaryIndex extends MVIndex<Long, SearchRow> {
+public class MVPrimaryIndex extends MVIndex<Long, SearchRow> implements PartitionedIndex {
 
     private final MVTable mvTable;
     private final String mapName;
-    private final TransactionMap<Long, SearchRow> dataMap;
+
+    /**
+     * The maps of the partitions of the table, or the only map if the table
+     * is not partitioned. The list is replaced when a partition is added or
+     * dropped.
+     */
+    private volatile List<TransactionMap<Long, SearchRow>> dataMaps;
+
     private final AtomicLong lastKey = new AtomicLong();
     private int mainIndexColumn = SearchRow.ROWID_INDEX;
 
@@ -48,16 +61,35 @@ public MVPrimaryIndex(Database db, MVTable table, int id, IndexColumn[] columns,
         super(table, id, table.getName() + "_DATA", columns, 0, indexType);
         this.mvTable = table;
         RowDataType valueType = table.getRowFactory().getRowDataType();
+        valueType.setColumnar(db.getSettings().columnarLayout);
         mapName = "table." + getId();
+        Partitioning partitioning = table.getPartitioning();
+        int count = partitioning == null ? 1 : partitioning.getPartitionCount();
+        ArrayList<TransactionMap<Long, SearchRow>> maps = new ArrayList<>(count);
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            TransactionMap<Long, SearchRow> map = openMap(partitioning == null ? mapName
+                    : MVTable.getPartitionMapName(mapName, partitioning.getPartition(i).getName()));
+            Long k = map.map.lastKey();    // include uncommitted keys as well
+            if (k != null && k > last) {
+                last = k;
+            }
+            maps.add(map);
+        }
+        dataMaps = maps;
+        lastKey.set(last);
+    }
+
+    private TransactionMap<Long, SearchRow> openMap(String name) {
         Transaction t = mvTable.getTransactionBegin();
-        dataMap = t.openMap(mapName, LongDataType.INSTANCE, valueType);
-        dataMap.map.setVolatile(!table.isPersistData() || !indexType.isPersistent());
-        if (!db.isStarting()) {
-            dataMap.clear();
+        TransactionMap<Long, SearchRow> map = t.openMap(name, LongDataType.INSTANCE,
+                mvTable.getRowFactory().getRowDataType());
+        map.map.setVolatile(!mvTable.isPersistData() || !getIndexType().isPersistent());
+        if (!database.isStarting()) {
+            map.clear();
         }
         t.commit();
-        Long k = dataMap.map.lastKey();    // include uncommitted keys as well
-        lastKey.set(k == null ? 0 : k);
+        return map;
     }
 
     @Override
@@ -107,7 +139,7 @@ public void add(SessionLocal session, Row row) {
             }
         }
 
-        TransactionMap<Long,SearchRow> map = getMap(session);
+        TransactionMap<Long,SearchRow> map = getMap(session, mvTable.getPartition(row));
         long rowKey = row.getKey();
         try {
             Row old = (Row)map.putIfAbsent(rowKey, row);
@@ -143,7 +175,7 @@ public void remove(SessionLocal session, Row row) {
                 }
             }
         }
-        TransactionMap<Long,SearchRow> map = getMap(session);
+        TransactionMap<Long,SearchRow> map = getMap(session, mvTable.getPartition(row));
         try {
             Row existing = (Row)map.remove(row.getKey());
             if (existing == null) {
@@ -184,9 +216,20 @@ public void update(SessionLocal session, Row oldRow, Row newRow) {
             }
         }
 
-        TransactionMap<Long,SearchRow> map = getMap(session);
+        int partition = mvTable.getPartition(newRow);
+        TransactionMap<Long,SearchRow> map = getMap(session, partition);
         try {
-            Row existing = (Row)map.put(key, newRow);
+            Row existing;
+            int oldPartition = mvTable.getPartition(oldRow);
+            if (oldPartition == partition) {
+                existing = (Row) map.put(key, newRow);
+            } else {
+                // the row moves to another partition
+                existing = (Row) getMap(session, oldPartition).remove(key);
+                if (existing != null && map.putIfAbsent(key, newRow) != null) {
+                    throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, table.getName());
+                }
+            }
             if (existing == null) {
                 StringBuilder builder = new StringBuilder();
                 getSQL(builder, TRACE_SQL_FLAGS).append(": ").append(key);
@@ -212,7 +255,7 @@ public void update(SessionLocal session, Row oldRow, Row newRow) {
      * @return row object if it exists
      */
     Row lockRow(SessionLocal session, Row row) {
-        TransactionMap<Long,SearchRow> map = getMap(session);
+        TransactionMap<Long,SearchRow> map = getMap(session, mvTable.getPartition(row));
         long key = row.getKey();
         return lockRow(map, key);
     }
@@ -227,9 +270,14 @@ private Row lockRow(TransactionMap<Long,SearchRow> map, long key) {
 
     @Override
     public Cursor find(SessionLocal session, SearchRow first, SearchRow last) {
+        return find(session, first, last, null);
+    }
+
+    @Override
+    public Cursor find(SessionLocal session, SearchRow first, SearchRow last, BitSet partitions) {
         long min = extractPKFromRow(first, Long.MIN_VALUE);
         long max = extractPKFromRow(last, Long.MAX_VALUE);
-        return find(session, min, max);
+        return find(session, min, max, partitions);
     }
 
     private long extractPKFromRow(SearchRow row, long defaultValue) {
@@ -259,8 +307,27 @@ public MVTable getTable() {
 
     @Override
     public Row getRow(SessionLocal session, long key) {
-        TransactionMap<Long,SearchRow> map = getMap(session);
-        Row row = (Row) map.getFromSnapshot(key);
+        List<TransactionMap<Long, SearchRow>> maps = dataMaps;
+        Row row = null;
+        for (int i = 0, size = maps.size(); row == null && i < size; i++) {
+            row = (Row) getMap(session, maps.get(i)).getFromSnapshot(key);
+        }
+        if (row == null) {
+            throw DbException.get(ErrorCode.ROW_NOT_FOUND_IN_PRIMARY_INDEX, getTraceSQL(), String.valueOf(key));
+        }
+        return setRowKey(row, key);
+    }
+
+    /**
+     * Get the row with the given key from a partition.
+     *
+     * @param session the session
+     * @param key the key
+     * @param partition the index of the partition
+     * @return the row
+     */
+    Row getRow(SessionLocal session, long key, int partition) {
+        Row row = (Row) getMap(session, partition).getFromSnapshot(key);
         if (row == null) {
             throw DbException.get(ErrorCode.ROW_NOT_FOUND_IN_PRIMARY_INDEX, getTraceSQL(), String.valueOf(key));
         }
@@ -272,7 +339,7 @@ public double getCost(SessionLocal session, int[] masks,
             TableFilter[] filters, int filter, SortOrder sortOrder,
             AllColumnsForPlan allColumnsSet) {
         try {
-            return 10 * getCostRangeIndex(masks, dataMap.sizeAsLongMax(),
+            return 10 * getCostRangeIndex(masks, getRowCountMax(),
                     filters, filter, sortOrder, true, allColumnsSet);
         } catch (MVStoreException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
@@ -292,7 +359,13 @@ public boolean isFirstColumn(Column column) {
 
     @Override
     public void remove(SessionLocal session) {
-        TransactionMap<Long,SearchRow> map = getMap(session);
+        for (TransactionMap<Long, SearchRow> map : dataMaps) {
+            removeMap(session, map);
+        }
+    }
+
+    private static void removeMap(SessionLocal session, TransactionMap<Long, SearchRow> map) {
+        map = getMap(session, map);
         if (!map.isClosed()) {
             Transaction t = session.getTransaction();
             t.removeMap(map);
@@ -304,7 +377,45 @@ public void truncate(SessionLocal session) {
         if (mvTable.getContainsLargeObject()) {
             database.getLobStorage().removeAllForTable(table.getId());
         }
-        getMap(session).clear();
+        for (TransactionMap<Long, SearchRow> map : dataMaps) {
+            getMap(session, map).clear();
+        }
+    }
+
+    /**
+     * Add the map of a new partition after the existing partitions.
+     *
+     * @param partitionName the name of the partition
+     */
+    void addPartition(String partitionName) {
+        ArrayList<TransactionMap<Long, SearchRow>> maps = new ArrayList<>(dataMaps);
+        maps.add(openMap(MVTable.getPartitionMapName(mapName, partitionName)));
+        dataMaps = maps;
+    }
+
+    /**
+     * Remove the map of a partition with all its rows.
+     *
+     * @param session the session
+     * @param partition the index of the partition
+     */
+    void removePartition(SessionLocal session, int partition) {
+        ArrayList<TransactionMap<Long, SearchRow>> maps = new ArrayList<>(dataMaps);
+        TransactionMap<Long, SearchRow> map = maps.remove(partition);
+        if (mvTable.getContainsLargeObject()) {
+            TMIterator<Long, SearchRow, Entry<Long, SearchRow>> it = getMap(session, map).entryIterator(null, null);
+            for (Entry<Long, SearchRow> entry; (entry = it.fetchNext()) != null;) {
+                SearchRow row = entry.getValue();
+                for (int i = 0, len = row.getColumnCount(); i < len; i++) {
+                    Value v = row.getValue(i);
+                    if (v instanceof ValueLob) {
+                        session.removeAtCommit((ValueLob) v);
+                    }
+                }
+            }
+        }
+        dataMaps = maps;
+        removeMap(session, map);
     }
 
     @Override
@@ -314,8 +425,14 @@ public boolean canGetFirstOrLast() {
 
     @Override
     public Cursor findFirstOrLast(SessionLocal session, boolean first) {
-        TransactionMap<Long, SearchRow> map = getMap(session);
-        Entry<Long, SearchRow> entry = first ? map.firstEntry() : map.lastEntry();
+        Entry<Long, SearchRow> entry = null;
+        for (TransactionMap<Long, SearchRow> map : dataMaps) {
+            map = getMap(session, map);
+            Entry<Long, SearchRow> e = first ? map.firstEntry() : map.lastEntry();
+            if (e != null && (entry == null || (e.getKey() < entry.getKey()) == first)) {
+                entry = e;
+            }
+        }
         return new SingleRowCursor(entry != null ? setRowKey((Row) entry.getValue(), entry.getKey()) : null);
     }
 
@@ -326,7 +443,11 @@ public boolean needRebuild() {
 
     @Override
     public long getRowCount(SessionLocal session) {
-        return getMap(session).sizeAsLong();
+        long count = 0;
+        for (TransactionMap<Long, SearchRow> map : dataMaps) {
+            count += getMap(session, map).sizeAsLong();
+        }
+        return count;
     }
 
     /**
@@ -335,7 +456,11 @@ public long getRowCount(SessionLocal session) {
      * @return the maximum number of rows
      */
     public long getRowCountMax() {
-        return dataMap.sizeAsLongMax();
+        long count = 0;
+        for (TransactionMap<Long, SearchRow> map : dataMaps) {
+            count += map.sizeAsLongMax();
+        }
+        return count;
     }
 
     @Override
@@ -345,7 +470,11 @@ public long getRowCountApproximation(SessionLocal session) {
 
     @Override
     public long getDiskSpaceUsed() {
-        return dataMap.map.getRootPage().getDiskSpaceUsed();
+        long size = 0;
+        for (TransactionMap<Long, SearchRow> map : dataMaps) {
+            size += map.map.getRootPage().getDiskSpaceUsed();
+        }
+        return size;
     }
 
     public String getMapName() {
@@ -362,36 +491,105 @@ public void addBufferedRows(List<String> bufferNames) {
         throw new UnsupportedOperationException();
     }
 
-    private Cursor find(SessionLocal session, Long first, Long last) {
-        TransactionMap<Long,SearchRow> map = getMap(session);
+    @Override
+    public ArrayList<Cursor> findRanges(SessionLocal session, int count) {
+        List<TransactionMap<Long, SearchRow>> maps = dataMaps;
+        if (maps.size() != 1) {
+            return null;
+        }
+        // Split the map into ranges with about the same number of entries,
+        // using their positions in the map
+        TransactionMap<Long, SearchRow> map = getMap(session, maps.get(0));
+        long size = map.map.sizeAsLong();
+        ArrayList<Cursor> cursors = new ArrayList<>(count);
+        Long first = null;
+        for (int i = 1; i <= count; i++) {
+            Long next = null, last = null;
+            if (i < count) {
+                next = map.map.getKey(size * i / count);
+                if (next == null || next == Long.MIN_VALUE || first != null && next <= first) {
+                    continue;
+                }
+                last = next - 1;
+            }
+            cursors.add(find(map, first, last));
+            first = next;
+        }
+        return cursors;
+    }
+
+    private Cursor find(SessionLocal session, Long first, Long last, BitSet partitions) {
+        List<TransactionMap<Long, SearchRow>> maps = dataMaps;
+        int size = maps.size();
+        if (size == 1) {
+            return find(getMap(session, maps.get(0)), first, last);
+        }
+        ArrayList<Cursor> cursors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (partitions == null || partitions.get(i)) {
+                cursors.add(find(getMap(session, maps.get(i)), first, last));
+            }
+        }
+        return PartitionedCursor.get(cursors, MVPrimaryIndex::compareKeys);
+    }
+
+    private static Cursor find(TransactionMap<Long,SearchRow> map, Long first, Long last) {
         if (first != null && last != null && first.longValue() == last.longValue()) {
             return new SingleRowCursor(setRowKey((Row) map.getFromSnapshot(first), first));
         }
         return new MVStoreCursor(map.entryIterator(first, last));
     }
 
+    private static int compareKeys(SearchRow a, SearchRow b) {
+        return Long.compare(a.getKey(), b.getKey());
+    }
+
     @Override
     public boolean isRowIdIndex() {
         return true;
     }
 
     /**
-     * Get the map to store the data.
+     * Get the map to store the data of a partition.
      *
      * @param session the session
+     * @param partition the index of the partition
      * @return the map
      */
-    TransactionMap<Long,SearchRow> getMap(SessionLocal session) {
+    private TransactionMap<Long,SearchRow> getMap(SessionLocal session, int partition) {
+        return getMap(session, dataMaps.get(partition));
+    }
+
+    private static TransactionMap<Long,SearchRow> getMap(SessionLocal session, TransactionMap<Long,SearchRow> map) {
         if (session == null) {
-            return dataMap;
+            return map;
         }
         Transaction t = session.getTransaction();
-        return dataMap.getInstance(t);
+        return map.getInstance(t);
     }
 
+    /**
+     * Get the map of the first partition, or the only map if the table is not
+     * partitioned.
+     *
+     * @return the map
+     */
     @Override
     public MVMap<Long, VersionedValue<SearchRow>> getMVMap() {
-        return dataMap.map;
+        return dataMaps.get(0).map;
+    }
+
+    @Override
+    public List<MVMap<Long, VersionedValue<SearchRow>>> getMVMaps() {
+        List<TransactionMap<Long, SearchRow>> maps = dataMaps;
+        if (maps.size() == 1) {
+            return Collections.singletonList(maps.get(0).map);
+        }
+        ArrayList<MVMap<Long, VersionedValue<SearchRow>>> list = new ArrayList<>(maps.size());
+        for (TransactionMap<Long, SearchRow> map : maps) {
+            list.add(map.map);
+        }
+        return list;
     }
 
     private static Row setRowKey(Row row, long key) {
@@ -401,6 +599,27 @@ private static Row setRowKey(Row row, long key) {
         return row;
     }
 
+    /**
+     * Get a cursor over the committed rows of this index as of an older
+     * version of the store.
+     *
+     * @param version the version of the store
+     * @return the cursor
+     * @throws IllegalArgumentException if the data of this version is no
+     *             longer available
+     */
+    Cursor findVersion(long version) {
+        List<TransactionMap<Long, SearchRow>> maps = dataMaps;
+        ArrayList<Cursor> cursors = new ArrayList<>(maps.size());
+        for (TransactionMap<Long, SearchRow> map : maps) {
+            // partitions added later had no rows in this version
+            if (maps.size() == 1 || map.map.getCreateVersion() <= version) {
+                cursors.add(new VersionCursor(map.map.openVersion(version).entrySet().iterator()));
+            }
+        }
+        return PartitionedCursor.get(cursors, MVPrimaryIndex::compareKeys);
+    }
+
     /**
      * A cursor.
      */
@@ -444,4 +663,49 @@ public boolean previous() {
             throw DbException.getUnsupportedException("previous");
         }
     }
+
+    /**
+     * A cursor over the committed rows of an older version.
+     */
+    static final class VersionCursor implements Cursor {
+
+        private final Iterator<Entry<Long, VersionedValue<SearchRow>>> it;
+        private Row row;
+
+        VersionCursor(Iterator<Entry<Long, VersionedValue<SearchRow>>> it) {
+            this.it = it;
+        }
+
+        @Override
+        public Row get() {
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            while (it.hasNext()) {
+                Entry<Long, VersionedValue<SearchRow>> entry = it.next();
+                Row r = (Row) entry.getValue().getCommittedValue();
+                if (r != null) {
+                    if (r.getKey() == 0) {
+                        r.setKey(entry.getKey());
+                    }
+                    row = r;
+                    return true;
+                }
+            }
+            row = null;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+    }
 }
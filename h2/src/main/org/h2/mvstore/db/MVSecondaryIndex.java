@@ -5,8 +5,14 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -16,6 +22,7 @@
 import org.h2.engine.SessionLocal;
 import org.h2.index.Cursor;
 import org.h2.index.IndexType;
+import org.h2.index.PartitionedIndex;
 import org.h2.index.SingleRowCursor;
 import org.h2.message.DbException;
 import org.h2.mvstore.MVMap;
@@ -30,6 +37,7 @@
 import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
 import org.h2.table.IndexColumn;
+import org.h2.table.Partitioning;
 import org.h2.table.TableFilter;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
@@ -38,13 +46,20 @@
 /**
  * An index stored in a MVStore.
  */
-public final class MVSecondaryIndex extends MVIndex<SearchRow, Value> {
+public final class MVSecondaryIndex extends MVIndex<SearchRow, Value> implements PartitionedIndex {
 
     /**
      * The multi-value table.
      */
     private final MVTable                         mvTable;
-    private final TransactionMap<SearchRow,Value> dataMap;
+    private final String                          mapName;
+
+    /**
+     * The maps of the partitions of the table, or the only map if the table
+     * is not partitioned. The list is replaced when a partition is added or
+     * dropped.
+     */
+    private volatile List<TransactionMap<SearchRow,Value>> dataMaps;
 
     public MVSecondaryIndex(Database db, MVTable table, int id, String indexName,
                 IndexColumn[] columns, int uniqueColumnCount, IndexType indexType) {
@@ -53,20 +68,32 @@ public MVSecondaryIndex(Database db, MVTable table, int id, String indexName,
         if (!database.isStarting()) {
             checkIndexColumnTypes(columns);
         }
-        String mapName = "index." + getId();
+        mapName = "index." + getId();
+        Partitioning partitioning = table.getPartitioning();
+        int count = partitioning == null ? 1 : partitioning.getPartitionCount();
+        ArrayList<TransactionMap<SearchRow,Value>> maps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            maps.add(openDataMap(partitioning == null ? mapName
+                    : MVTable.getPartitionMapName(mapName, partitioning.getPartition(i).getName())));
+        }
+        dataMaps = maps;
+    }
+
+    private TransactionMap<SearchRow,Value> openDataMap(String name) {
         RowDataType keyType = getRowFactory().getRowDataType();
         Transaction t = mvTable.getTransactionBegin();
-        dataMap = t.openMap(mapName, keyType, NullValueDataType.INSTANCE);
-        dataMap.map.setVolatile(!table.isPersistData() || !indexType.isPersistent());
-        if (!db.isStarting()) {
-            dataMap.clear();
+        TransactionMap<SearchRow,Value> map = t.openMap(name, keyType, NullValueDataType.INSTANCE);
+        map.map.setVolatile(!mvTable.isPersistData() || !getIndexType().isPersistent());
+        if (!database.isStarting()) {
+            map.clear();
         }
         t.commit();
-        if (!keyType.equals(dataMap.getKeyType())) {
+        if (!keyType.equals(map.getKeyType())) {
             throw DbException.getInternalError(
                     "Incompatible key type, expected " + keyType + " but got "
-                            + dataMap.getKeyType() + " for index " + indexName);
+                            + map.getKeyType() + " for index " + getName());
         }
+        return map;
     }
 
     @Override
@@ -118,6 +145,57 @@ public int compare(Source one, Source two) {
         }
     }
 
+    /**
+     * The rows of the sorted buffers merged in the order of the index. As
+     * equal values of the unique columns are adjacent in this order, rows of a
+     * unique index are only compared with the previous row.
+     */
+    private final class MergedRows implements Iterator<Map.Entry<SearchRow,Value>> {
+
+        private final Queue<Source> queue;
+
+        private final DataType<SearchRow> uniqueType;
+
+        private SearchRow previous, previousUnique;
+
+        MergedRows(Queue<Source> queue) {
+            this.queue = queue;
+            uniqueType = uniqueColumnColumn > 0 ? getUniqueRowFactory().getRowDataType() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<SearchRow,Value> next() {
+            Source s = queue.poll();
+            if (s == null) {
+                throw new NoSuchElementException();
+            }
+            SearchRow row = s.next();
+            if (uniqueType != null) {
+                if (mayHaveNullDuplicates(row)) {
+                    previousUnique = null;
+                } else {
+                    SearchRow unique = getUniqueRowFactory().createRow();
+                    unique.copyFrom(row);
+                    unique.setKey(SearchRow.MATCH_ALL_ROW_KEY);
+                    if (previousUnique != null && uniqueType.compare(previousUnique, unique) == 0) {
+                        throw getDuplicateKeyException(previous.toString());
+                    }
+                    previous = row;
+                    previousUnique = unique;
+                }
+            }
+            if (s.hasNext()) {
+                queue.offer(s);
+            }
+            return new AbstractMap.SimpleImmutableEntry<>(row, ValueNull.INSTANCE);
+        }
+    }
+
     @Override
     public void addBufferedRows(List<String> bufferNames) {
         int buffersCount = bufferNames.size();
@@ -130,19 +208,27 @@ public void addBufferedRows(List<String> bufferNames) {
             }
         }
 
+        // tables with partitions do not use buffered rows
+        TransactionMap<SearchRow,Value> dataMap = dataMaps.get(0);
         try {
-            while (!queue.isEmpty()) {
-                Source s = queue.poll();
-                SearchRow row = s.next();
-
-                if (uniqueColumnColumn > 0 && !mayHaveNullDuplicates(row)) {
-                    checkUnique(false, dataMap, row, Long.MIN_VALUE);
-                }
-
-                dataMap.putCommitted(row, ValueNull.INSTANCE);
-
-                if (s.hasNext()) {
-                    queue.offer(s);
+            if (dataMap.sizeAsLongMax() == 0) {
+                // rows of a new index come in the order of the index,
+                // so its pages can be built bottom up
+                dataMap.bulkLoadCommitted(new MergedRows(queue), 100);
+            } else {
+                while (!queue.isEmpty()) {
+                    Source s = queue.poll();
+                    SearchRow row = s.next();
+
+                    if (uniqueColumnColumn > 0 && !mayHaveNullDuplicates(row)) {
+                        checkUnique(false, dataMap, row, Long.MIN_VALUE);
+                    }
+
+                    dataMap.putCommitted(row, ValueNull.INSTANCE);
+
+                    if (s.hasNext()) {
+                        queue.offer(s);
+                    }
                 }
             }
         } finally {
@@ -176,7 +262,7 @@ public void close(SessionLocal session) {
 
     @Override
     public void add(SessionLocal session, Row row) {
-        TransactionMap<SearchRow,Value> map = getMap(session);
+        TransactionMap<SearchRow,Value> map = getMap(session, mvTable.getPartition(row));
         SearchRow key = convertToKey(row, null);
         boolean checkRequired = uniqueColumnColumn > 0 && !mayHaveNullDuplicates(row);
         if (checkRequired) {
@@ -230,7 +316,7 @@ private void checkUnique(boolean repeatableRead, TransactionMap<SearchRow,Value>
     @Override
     public void remove(SessionLocal session, Row row) {
         SearchRow searchRow = convertToKey(row, null);
-        TransactionMap<SearchRow,Value> map = getMap(session);
+        TransactionMap<SearchRow,Value> map = getMap(session, mvTable.getPartition(row));
         try {
             if (map.remove(searchRow) == null) {
                 StringBuilder builder = new StringBuilder();
@@ -246,7 +332,8 @@ public void remove(SessionLocal session, Row row) {
     public void update(SessionLocal session, Row oldRow, Row newRow) {
         SearchRow searchRowOld = convertToKey(oldRow, null);
         SearchRow searchRowNew = convertToKey(newRow, null);
-        if (!rowsAreEqual(searchRowOld, searchRowNew)) {
+        if (!rowsAreEqual(searchRowOld, searchRowNew)
+                || mvTable.getPartition(oldRow) != mvTable.getPartition(newRow)) {
             super.update(session, oldRow, newRow);
         }
     }
@@ -267,13 +354,30 @@ private boolean rowsAreEqual(SearchRow rowOne, SearchRow rowTwo) {
 
     @Override
     public Cursor find(SessionLocal session, SearchRow first, SearchRow last) {
-        return find(session, first, false, last);
+        return find(session, first, false, last, null);
+    }
+
+    @Override
+    public Cursor find(SessionLocal session, SearchRow first, SearchRow last, BitSet partitions) {
+        return find(session, first, false, last, partitions);
     }
 
-    private Cursor find(SessionLocal session, SearchRow first, boolean bigger, SearchRow last) {
+    private Cursor find(SessionLocal session, SearchRow first, boolean bigger, SearchRow last, BitSet partitions) {
         SearchRow min = convertToKey(first, bigger);
         SearchRow max = convertToKey(last, Boolean.TRUE);
-        return new MVStoreCursor(session, getMap(session).keyIterator(min, max), mvTable);
+        List<TransactionMap<SearchRow,Value>> maps = dataMaps;
+        int size = maps.size();
+        if (size == 1) {
+            return new MVStoreCursor(session, getMap(session, maps.get(0)).keyIterator(min, max), mvTable, 0);
+        }
+        ArrayList<Cursor> cursors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (partitions == null || partitions.get(i)) {
+                cursors.add(new MVStoreCursor(session, getMap(session, maps.get(i)).keyIterator(min, max),
+                        mvTable, i));
+            }
+        }
+        return PartitionedCursor.get(cursors, getRowFactory().getRowDataType()::compare);
     }
 
     private SearchRow convertToKey(SearchRow r, Boolean minMax) {
@@ -299,7 +403,7 @@ public double getCost(SessionLocal session, int[] masks,
             TableFilter[] filters, int filter, SortOrder sortOrder,
             AllColumnsForPlan allColumnsSet) {
         try {
-            return 10 * getCostRangeIndex(masks, dataMap.sizeAsLongMax(),
+            return 10 * getCostRangeIndex(masks, getRowCountMax(),
                     filters, filter, sortOrder, false, allColumnsSet);
         } catch (MVStoreException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
@@ -308,7 +412,13 @@ public double getCost(SessionLocal session, int[] masks,
 
     @Override
     public void remove(SessionLocal session) {
-        TransactionMap<SearchRow,Value> map = getMap(session);
+        for (TransactionMap<SearchRow,Value> map : dataMaps) {
+            removeMap(session, map);
+        }
+    }
+
+    private static void removeMap(SessionLocal session, TransactionMap<SearchRow,Value> map) {
+        map = getMap(session, map);
         if (!map.isClosed()) {
             Transaction t = session.getTransaction();
             t.removeMap(map);
@@ -317,8 +427,33 @@ public void remove(SessionLocal session) {
 
     @Override
     public void truncate(SessionLocal session) {
-        TransactionMap<SearchRow,Value> map = getMap(session);
-        map.clear();
+        for (TransactionMap<SearchRow,Value> map : dataMaps) {
+            getMap(session, map).clear();
+        }
+    }
+
+    /**
+     * Add the map of a new partition after the existing partitions.
+     *
+     * @param partitionName the name of the partition
+     */
+    void addPartition(String partitionName) {
+        ArrayList<TransactionMap<SearchRow,Value>> maps = new ArrayList<>(dataMaps);
+        maps.add(openDataMap(MVTable.getPartitionMapName(mapName, partitionName)));
+        dataMaps = maps;
+    }
+
+    /**
+     * Remove the map of a partition.
+     *
+     * @param session the session
+     * @param partition the index of the partition
+     */
+    void removePartition(SessionLocal session, int partition) {
+        ArrayList<TransactionMap<SearchRow,Value>> maps = new ArrayList<>(dataMaps);
+        TransactionMap<SearchRow,Value> map = maps.remove(partition);
+        dataMaps = maps;
+        removeMap(session, map);
     }
 
     @Override
@@ -328,19 +463,30 @@ public boolean canGetFirstOrLast() {
 
     @Override
     public Cursor findFirstOrLast(SessionLocal session, boolean first) {
-        TMIterator<SearchRow, Value, SearchRow> iter = getMap(session).keyIterator(null, !first);
-        for (SearchRow key; (key = iter.fetchNext()) != null;) {
-            if (key.getValue(columnIds[0]) != ValueNull.INSTANCE) {
-                return new SingleRowCursor(mvTable.getRow(session, key.getKey()));
+        List<TransactionMap<SearchRow,Value>> maps = dataMaps;
+        RowDataType keyType = getRowFactory().getRowDataType();
+        SearchRow result = null;
+        int resultPartition = -1;
+        for (int i = 0, size = maps.size(); i < size; i++) {
+            TMIterator<SearchRow, Value, SearchRow> iter = getMap(session, maps.get(i)).keyIterator(null, !first);
+            for (SearchRow key; (key = iter.fetchNext()) != null;) {
+                if (key.getValue(columnIds[0]) != ValueNull.INSTANCE) {
+                    if (result == null || (keyType.compare(key, result) < 0) == first) {
+                        result = key;
+                        resultPartition = i;
+                    }
+                    break;
+                }
             }
         }
-        return new SingleRowCursor(null);
+        return new SingleRowCursor(result != null ? mvTable.getRow(session, result.getKey(), resultPartition)
+                : null);
     }
 
     @Override
     public boolean needRebuild() {
         try {
-            return dataMap.sizeAsLongMax() == 0;
+            return getRowCountMax() == 0;
         } catch (MVStoreException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
@@ -348,19 +494,30 @@ public boolean needRebuild() {
 
     @Override
     public long getRowCount(SessionLocal session) {
-        TransactionMap<SearchRow,Value> map = getMap(session);
-        return map.sizeAsLong();
+        long count = 0;
+        for (TransactionMap<SearchRow,Value> map : dataMaps) {
+            count += getMap(session, map).sizeAsLong();
+        }
+        return count;
     }
 
     @Override
     public long getRowCountApproximation(SessionLocal session) {
         try {
-            return dataMap.sizeAsLongMax();
+            return getRowCountMax();
         } catch (MVStoreException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
     }
 
+    private long getRowCountMax() {
+        long count = 0;
+        for (TransactionMap<SearchRow,Value> map : dataMaps) {
+            count += map.sizeAsLongMax();
+        }
+        return count;
+    }
+
     @Override
     public long getDiskSpaceUsed() {
         // TODO estimate disk space usage
@@ -374,26 +531,50 @@ public boolean canFindNext() {
 
     @Override
     public Cursor findNext(SessionLocal session, SearchRow higherThan, SearchRow last) {
-        return find(session, higherThan, true, last);
+        return find(session, higherThan, true, last, null);
     }
 
     /**
-     * Get the map to store the data.
+     * Get the map to store the data of a partition.
      *
      * @param session the session
+     * @param partition the index of the partition
      * @return the map
      */
-    private TransactionMap<SearchRow,Value> getMap(SessionLocal session) {
+    private TransactionMap<SearchRow,Value> getMap(SessionLocal session, int partition) {
+        return getMap(session, dataMaps.get(partition));
+    }
+
+    private static TransactionMap<SearchRow,Value> getMap(SessionLocal session, TransactionMap<SearchRow,Value> map) {
         if (session == null) {
-            return dataMap;
+            return map;
         }
         Transaction t = session.getTransaction();
-        return dataMap.getInstance(t);
+        return map.getInstance(t);
     }
 
+    /**
+     * Get the map of the first partition, or the only map if the table is not
+     * partitioned.
+     *
+     * @return the map
+     */
     @Override
     public MVMap<SearchRow,VersionedValue<Value>> getMVMap() {
-        return dataMap.map;
+        return dataMaps.get(0).map;
+    }
+
+    @Override
+    public List<MVMap<SearchRow,VersionedValue<Value>>> getMVMaps() {
+        List<TransactionMap<SearchRow,Value>> maps = dataMaps;
+        if (maps.size() == 1) {
+            return Collections.singletonList(maps.get(0).map);
+        }
+        ArrayList<MVMap<SearchRow,VersionedValue<Value>>> list = new ArrayList<>(maps.size());
+        for (TransactionMap<SearchRow,Value> map : maps) {
+            list.add(map.map);
+        }
+        return list;
     }
 
     /**
@@ -404,13 +585,16 @@ static final class MVStoreCursor implements Cursor {
         private final SessionLocal             session;
         private final TMIterator<SearchRow, Value, SearchRow> it;
         private final MVTable             mvTable;
+        private final int                 partition;
         private       SearchRow           current;
         private       Row                 row;
 
-        MVStoreCursor(SessionLocal session, TMIterator<SearchRow, Value, SearchRow> it, MVTable mvTable) {
+        MVStoreCursor(SessionLocal session, TMIterator<SearchRow, Value, SearchRow> it, MVTable mvTable,
+                int partition) {
             this.session = session;
             this.it = it;
             this.mvTable = mvTable;
+            this.partition = partition;
         }
 
         @Override
@@ -418,7 +602,7 @@ public Row get() {
             if (row == null) {
                 SearchRow r = getSearchRow();
                 if (r != null) {
-                    row = mvTable.getRow(session, r.getKey());
+                    row = mvTable.getRow(session, r.getKey(), partition);
                 }
             }
             return row;
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.h2.engine.Database;
+import org.h2.expression.Expression;
+import org.h2.message.DbException;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVMap.Builder;
+import org.h2.mvstore.type.LongDataType;
+import org.h2.result.ResultExternal;
+import org.h2.result.RowFactory.DefaultRowFactory;
+import org.h2.result.SortOrder;
+import org.h2.value.Value;
+import org.h2.value.ValueRow;
+
+/**
+ * Sorted temporary result for results that aren't distinct.
+ *
+ * <p>
+ * Each batch of rows is sorted in memory and written as a sorted run into a
+ * separate map. The runs are merged while the rows are read, so only one row
+ * of each run is held in memory. If there are more than
+ * {@link #MAX_MERGE_RUNS} runs, groups of runs are first merged into longer
+ * runs, so that the number of runs that are read at the same time is limited.
+ * </p>
+ */
+class MVSortedRunsTempResult extends MVTempResult {
+
+    /**
+     * The maximum number of runs that are merged at the same time.
+     */
+    static final int MAX_MERGE_RUNS = 64;
+
+    /**
+     * The sort order.
+     */
+    private final SortOrder sort;
+
+    /**
+     * Builder for the maps of runs.
+     */
+    private final Builder<Long, ValueRow> builder;
+
+    /**
+     * The sorted runs.
+     */
+    private final ArrayList<MVMap<Long, ValueRow>> runs;
+
+    /**
+     * The number of maps that were created for runs, used for their names.
+     */
+    private int mapCount;
+
+    /**
+     * Rows added with {@link #addRow(Value[])} that aren't written into a run
+     * yet.
+     */
+    private ArrayList<Value[]> pending;
+
+    /**
+     * The runs with remaining rows for the {@link #next()} method, ordered by
+     * their current rows.
+     */
+    private PriorityQueue<Run> queue;
+
+    /**
+     * Creates a shallow copy of the result.
+     *
+     * @param parent
+     *                   parent result
+     */
+    private MVSortedRunsTempResult(MVSortedRunsTempResult parent) {
+        super(parent);
+        this.sort = parent.sort;
+        this.builder = null;
+        this.runs = parent.runs;
+    }
+
+    /**
+     * Creates a new sorted temporary result.
+     *
+     * @param database
+     *            database
+     * @param expressions
+     *            column expressions
+     * @param visibleColumnCount
+     *            count of visible columns
+     * @param resultColumnCount
+     *            the number of columns including visible columns and additional
+     *            virtual columns for ORDER BY clause
+     * @param sort
+     *            sort order
+     */
+    MVSortedRunsTempResult(Database database, Expression[] expressions, int visibleColumnCount,
+            int resultColumnCount, SortOrder sort) {
+        super(database, expressions, visibleColumnCount, resultColumnCount);
+        this.sort = sort;
+        ValueDataType valueType = new ValueDataType(database, new int[resultColumnCount]);
+        valueType.setRowFactory(DefaultRowFactory.INSTANCE.createRowFactory(database, database.getCompareMode(),
+                database, expressions, null, false));
+        builder = new MVMap.Builder<Long, ValueRow>().keyType(LongDataType.INSTANCE).valueType(valueType)
+                .singleWriter();
+        runs = new ArrayList<>();
+    }
+
+    @Override
+    public int addRow(Value[] values) {
+        assert parent == null;
+        if (pending == null) {
+            pending = new ArrayList<>();
+        }
+        pending.add(values);
+        return ++rowCount;
+    }
+
+    @Override
+    public int addRows(Collection<Value[]> rows) {
+        assert parent == null;
+        int size = rows.size();
+        if (pending != null) {
+            size += pending.size();
+        }
+        Value[][] array = new Value[size][];
+        int i = 0;
+        if (pending != null) {
+            for (Value[] row : pending) {
+                array[i++] = row;
+            }
+            pending = null;
+        }
+        for (Value[] row : rows) {
+            array[i++] = row;
+        }
+        addRun(array);
+        rowCount += rows.size();
+        return rowCount;
+    }
+
+    /**
+     * Sort the specified rows and write them as a new run.
+     *
+     * @param rows
+     *            the rows
+     */
+    private void addRun(Value[][] rows) {
+        if (rows.length == 0) {
+            return;
+        }
+        // stable, and large arrays are sorted by multiple threads
+        Arrays.parallelSort(rows, sort);
+        MVMap<Long, ValueRow> map = store.openMap("run" + mapCount++, builder);
+        for (int i = 0, l = rows.length; i < l; i++) {
+            map.append((long) i, ValueRow.get(rows[i]));
+        }
+        runs.add(map);
+    }
+
+    private void flushPending() {
+        if (pending != null) {
+            ArrayList<Value[]> rows = pending;
+            pending = null;
+            addRun(rows.toArray(new Value[0][]));
+        }
+        while (runs.size() > MAX_MERGE_RUNS) {
+            // merge groups of consecutive runs, so that the merge stays stable
+            ArrayList<MVMap<Long, ValueRow>> merged = new ArrayList<>();
+            for (int i = 0, size = runs.size(); i < size; i += MAX_MERGE_RUNS) {
+                List<MVMap<Long, ValueRow>> group = runs.subList(i, Math.min(i + MAX_MERGE_RUNS, size));
+                merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    /**
+     * Merge the specified runs into a new run and remove them.
+     *
+     * @param group
+     *            the runs
+     * @return the new run
+     */
+    private MVMap<Long, ValueRow> mergeRuns(List<MVMap<Long, ValueRow>> group) {
+        MVMap<Long, ValueRow> map = store.openMap("run" + mapCount++, builder);
+        PriorityQueue<Run> queue = openRuns(group);
+        for (long i = 0;; i++) {
+            Value[] row = poll(queue);
+            if (row == null) {
+                break;
+            }
+            map.append(i, ValueRow.get(row));
+        }
+        for (MVMap<Long, ValueRow> run : group) {
+            store.removeMap(run);
+        }
+        return map;
+    }
+
+    private PriorityQueue<Run> openRuns(List<MVMap<Long, ValueRow>> list) {
+        PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(list.size(), 1));
+        for (int i = 0, l = list.size(); i < l; i++) {
+            Run run = new Run(list.get(i).cursor(null), i);
+            if (run.next()) {
+                queue.add(run);
+            }
+        }
+        return queue;
+    }
+
+    private static Value[] poll(PriorityQueue<Run> queue) {
+        Run run = queue.poll();
+        if (run == null) {
+            return null;
+        }
+        Value[] row = run.current;
+        if (run.next()) {
+            queue.add(run);
+        }
+        return row;
+    }
+
+    @Override
+    public boolean contains(Value[] values) {
+        throw DbException.getUnsupportedException("contains()");
+    }
+
+    @Override
+    public synchronized ResultExternal createShallowCopy() {
+        if (parent != null) {
+            return parent.createShallowCopy();
+        }
+        if (closed) {
+            return null;
+        }
+        flushPending();
+        childCount++;
+        return new MVSortedRunsTempResult(this);
+    }
+
+    @Override
+    public Value[] next() {
+        if (queue == null) {
+            flushPending();
+            queue = openRuns(runs);
+        }
+        return poll(queue);
+    }
+
+    @Override
+    public int removeRow(Value[] values) {
+        throw DbException.getUnsupportedException("removeRow()");
+    }
+
+    @Override
+    public void reset() {
+        queue = null;
+    }
+
+    /**
+     * A cursor over a sorted run.
+     */
+    private final class Run implements Comparable<Run> {
+
+        private final Cursor<Long, ValueRow> cursor;
+
+        /**
+         * The number of the run, equal rows of earlier runs are returned first.
+         */
+        private final int number;
+
+        /**
+         * The current row.
+         */
+        Value[] current;
+
+        Run(Cursor<Long, ValueRow> cursor, int number) {
+            this.cursor = cursor;
+            this.number = number;
+        }
+
+        /**
+         * Move to the next row of this run.
+         *
+         * @return whether there is a next row
+         */
+        boolean next() {
+            if (!cursor.hasNext()) {
+                current = null;
+                return false;
+            }
+            cursor.next();
+            current = cursor.getValue().getList();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Run o) {
+            int comp = sort.compare(current, o.current);
+            return comp != 0 ? comp : Integer.compare(number, o.number);
+        }
+
+    }
+
+}
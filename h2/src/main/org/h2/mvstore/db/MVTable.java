@@ -10,6 +10,9 @@
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.h2.api.DatabaseEventListener;
@@ -28,6 +31,7 @@
 import org.h2.message.Trace;
 import org.h2.mode.DefaultNullOrdering;
 import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionStore;
@@ -36,6 +40,7 @@
 import org.h2.result.SortOrder;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
+import org.h2.table.Partitioning;
 import org.h2.table.Table;
 import org.h2.table.TableBase;
 import org.h2.table.TableType;
@@ -119,6 +124,11 @@ public String getEventText() {
 
     private Column rowIdColumn;
 
+    /**
+     * The partitioning of this table, or null.
+     */
+    private volatile Partitioning partitioning;
+
     private final MVPrimaryIndex primaryIndex;
     private final ArrayList<Index> indexes = Utils.newSmallArrayList();
     private final AtomicLong lastModificationId = new AtomicLong();
@@ -128,6 +138,13 @@ public String getEventText() {
      * prevent starvation, since Java's synchronized locking is biased.
      */
     private final ArrayDeque<SessionLocal> waitingSessions = new ArrayDeque<>();
+
+    /**
+     * The number of sessions that are requesting or upgrading to an exclusive
+     * lock. It is only modified while synchronized on this table; while it is
+     * zero, shared locks are acquired without entering the monitor.
+     */
+    private volatile int exclusiveLockRequests;
     private final Trace traceLock;
     private final AtomicInteger changesUntilAnalyze;
     private int nextAnalyze;
@@ -151,6 +168,9 @@ public MVTable(CreateTableData data, Store store) {
         this.store = store;
         this.transactionStore = store.getTransactionStore();
         traceLock = database.getTrace(Trace.LOCK);
+        if (data.partitioning != null) {
+            partitioning = data.partitioning.bind(this);
+        }
 
         primaryIndex = new MVPrimaryIndex(database, this, getId(),
                 IndexColumn.wrap(getColumns()), IndexType.createScan(true));
@@ -161,6 +181,75 @@ public String getMapName() {
         return primaryIndex.getMapName();
     }
 
+    /**
+     * Get the name of the map of a partition of an index.
+     *
+     * @param mapName the name of the map of the index
+     * @param partitionName the name of the partition
+     * @return the name of the map of the partition
+     */
+    static String getPartitionMapName(String mapName, String partitionName) {
+        return mapName + '.' + partitionName;
+    }
+
+    @Override
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * Get the partition of a row.
+     *
+     * @param row the row
+     * @return the index of the partition, or 0 if the table is not partitioned
+     * @throws DbException if the row does not belong to any partition
+     */
+    int getPartition(SearchRow row) {
+        Partitioning p = partitioning;
+        return p == null ? 0 : p.getPartition(row);
+    }
+
+    /**
+     * Add a partition after the existing partitions. No rows are moved.
+     *
+     * @param partition the partition
+     */
+    public void addPartition(Partitioning.Partition partition) {
+        Partitioning p = partitioning.addPartition(partition);
+        syncLastModificationIdWithDatabase();
+        for (Index index : indexes) {
+            if (index instanceof MVPrimaryIndex) {
+                ((MVPrimaryIndex) index).addPartition(partition.getName());
+            } else {
+                ((MVSecondaryIndex) index).addPartition(partition.getName());
+            }
+        }
+        partitioning = p;
+    }
+
+    /**
+     * Drop a partition. The maps of the partition are removed with all their
+     * rows, without scanning them.
+     *
+     * @param session the session
+     * @param partitionName the name of the partition
+     */
+    public void dropPartition(SessionLocal session, String partitionName) {
+        Partitioning old = partitioning;
+        int partition = old.getPartitionIndex(partitionName);
+        Partitioning p = old.dropPartition(partition);
+        syncLastModificationIdWithDatabase();
+        for (int i = indexes.size() - 1; i >= 0; i--) {
+            Index index = indexes.get(i);
+            if (index instanceof MVPrimaryIndex) {
+                ((MVPrimaryIndex) index).removePartition(session, partition);
+            } else {
+                ((MVSecondaryIndex) index).removePartition(session, partition);
+            }
+        }
+        partitioning = p;
+    }
+
     @Override
     public boolean lock(SessionLocal session, int lockType) {
         if (database.getLockMode() == Constants.LOCK_MODE_OFF) {
@@ -176,6 +265,9 @@ public boolean lock(SessionLocal session, int lockType) {
         if (lockType != Table.EXCLUSIVE_LOCK && lockSharedSessions.containsKey(session)) {
             return true;
         }
+        if (lockType == Table.WRITE_LOCK && tryLockShared(session)) {
+            return false;
+        }
         synchronized (this) {
             if (lockType != Table.EXCLUSIVE_LOCK && lockSharedSessions.containsKey(session)) {
                 return true;
@@ -185,9 +277,15 @@ public boolean lock(SessionLocal session, int lockType) {
                 WAITING_FOR_LOCK.set(getName());
             }
             waitingSessions.addLast(session);
+            if (lockType == Table.EXCLUSIVE_LOCK) {
+                exclusiveLockRequests++;
+            }
             try {
                 doLock1(session, lockType);
             } finally {
+                if (lockType == Table.EXCLUSIVE_LOCK) {
+                    exclusiveLockRequests--;
+                }
                 session.setWaitForLock(null, null);
                 if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                     WAITING_FOR_LOCK.remove();
@@ -198,6 +296,40 @@ public boolean lock(SessionLocal session, int lockType) {
         return false;
     }
 
+    /**
+     * Try to acquire a shared lock without synchronization. This only succeeds
+     * if no exclusive lock is held or requested. The session is added to the
+     * set of shared lock holders first and the exclusive lock state is checked
+     * afterwards, while an exclusive lock request is published first and the
+     * set of shared lock holders is checked afterwards, so that at least one
+     * of the two sides sees the other one.
+     *
+     * @param session the session
+     * @return true if the lock was acquired
+     */
+    private boolean tryLockShared(SessionLocal session) {
+        if (exclusiveLockRequests != 0 || lockExclusiveSession != null) {
+            return false;
+        }
+        if (lockSharedSessions.putIfAbsent(session, session) != null) {
+            return true;
+        }
+        if (exclusiveLockRequests != 0 || lockExclusiveSession != null) {
+            lockSharedSessions.remove(session);
+            // a session requesting the exclusive lock may wait for us
+            synchronized (this) {
+                notifyAll();
+            }
+            return false;
+        }
+        traceLock(session, Table.WRITE_LOCK, TraceLockEvent.TRACE_LOCK_OK, NO_EXTRA_INFO);
+        session.registerTableAsLocked(this);
+        if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
+            addLockToDebugList(SHARED_LOCKS);
+        }
+        return true;
+    }
+
     private void doLock1(SessionLocal session, int lockType) {
         traceLock(session, lockType, TraceLockEvent.TRACE_LOCK_REQUESTING_FOR, NO_EXTRA_INFO);
         // don't get the current time unless necessary
@@ -331,6 +463,18 @@ public Row getRow(SessionLocal session, long key) {
         return primaryIndex.getRow(session, key);
     }
 
+    /**
+     * Get the row with the given key from a partition.
+     *
+     * @param session the session
+     * @param key the key
+     * @param partition the index of the partition
+     * @return the row
+     */
+    Row getRow(SessionLocal session, long key, int partition) {
+        return primaryIndex.getRow(session, key, partition);
+    }
+
     @Override
     public Index addIndex(SessionLocal session, String indexName, int indexId, IndexColumn[] cols,
             int uniqueColumnCount, IndexType indexType, boolean create, String indexComment) {
@@ -342,7 +486,11 @@ public Index addIndex(SessionLocal session, String indexName, int indexId, Index
         MVIndex<?,?> index;
         int mainIndexColumn = primaryIndex.getMainIndexColumn() != SearchRow.ROWID_INDEX
                 ? SearchRow.ROWID_INDEX : getMainIndexColumn(indexType, cols);
-        if (database.isStarting()) {
+        if (partitioning != null) {
+            checkPartitionedIndex(cols, uniqueColumnCount, indexType);
+            // the rows of all partitions have unique keys
+            mainIndexColumn = SearchRow.ROWID_INDEX;
+        } else if (database.isStarting()) {
             // if index does exists as a separate map it can't be a delegate
             if (transactionStore.hasMap("index." + indexId)) {
                 // we can not reuse primary index
@@ -380,10 +528,32 @@ public Index addIndex(SessionLocal session, String indexName, int indexId, Index
         return index;
     }
 
+    /**
+     * Check whether an index can be created on this partitioned table. The
+     * index has a separate map for each partition, so a unique index can only
+     * guarantee uniqueness if its unique columns include the partition column.
+     */
+    private void checkPartitionedIndex(IndexColumn[] cols, int uniqueColumnCount, IndexType indexType) {
+        if (indexType.isSpatial()) {
+            throw DbException.getUnsupportedException("spatial index on a partitioned table");
+        }
+        if (indexType.isPrimaryKey() || uniqueColumnCount > 0) {
+            int count = uniqueColumnCount > 0 ? uniqueColumnCount : cols.length;
+            Column column = partitioning.getColumn();
+            for (int i = 0; i < count; i++) {
+                if (cols[i].column == column) {
+                    return;
+                }
+            }
+            throw DbException.getUnsupportedException("unique index without the partition column "
+                    + column.getTraceSQL());
+        }
+    }
+
     private void rebuildIndex(SessionLocal session, MVIndex<?,?> index, String indexName) {
         try {
-            if (!session.getDatabase().isPersistent() || index instanceof MVSpatialIndex) {
-                // in-memory
+            if (!session.getDatabase().isPersistent() || index instanceof MVSpatialIndex || partitioning != null) {
+                // in-memory, or rows of a partitioned table
                 rebuildIndexBuffered(session, index);
             } else {
                 rebuildIndexBlockMerge(session, index);
@@ -414,11 +584,19 @@ private void rebuildIndexBlockMerge(SessionLocal session, MVIndex<?,?> index) {
         Index scan = getScanIndex(session);
         long remaining = scan.getRowCount(session);
         long total = remaining;
+        int bufferSize = database.getMaxMemoryRows() / 2;
+        int threads = database.getSettings().createIndexThreads;
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (threads > 1 && total > bufferSize) {
+            rebuildIndexParallel(session, index, threads, total, bufferSize);
+            return;
+        }
         Cursor cursor = scan.find(session, null, null);
         long i = 0;
         Store store = session.getDatabase().getStore();
 
-        int bufferSize = database.getMaxMemoryRows() / 2;
         ArrayList<Row> buffer = new ArrayList<>(bufferSize);
         String n = getName() + ':' + index.getName();
         ArrayList<String> bufferNames = Utils.newSmallArrayList();
@@ -450,6 +628,88 @@ private void rebuildIndexBlockMerge(SessionLocal session, MVIndex<?,?> index) {
         }
     }
 
+    private void rebuildIndexParallel(SessionLocal session, MVIndex<?,?> index, int threads, long total,
+            int bufferSize) {
+        // Split the primary index into ranges with about the same number of
+        // entries. Every range is read and sorted into runs by a separate
+        // task, then the runs of all ranges are merged into the index, as with
+        // a single thread.
+        ArrayList<Cursor> cursors = primaryIndex.findRanges(session, threads * 4);
+        int rangeBufferSize = Math.max(bufferSize / threads, 1);
+        String n = getName() + ':' + index.getName();
+        AtomicLong progress = new AtomicLong();
+        ArrayList<String> bufferNames = Utils.newSmallArrayList();
+        Throwable exception = null;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<ForkJoinTask<ArrayList<String>>> tasks = new ArrayList<>(cursors.size());
+            for (Cursor cursor : cursors) {
+                tasks.add(pool.submit(() -> sortRange(cursor, index, rangeBufferSize, n, progress, total)));
+            }
+            // wait for all tasks, so that no run is written after a failure
+            for (ForkJoinTask<ArrayList<String>> task : tasks) {
+                try {
+                    bufferNames.addAll(task.get());
+                } catch (ExecutionException e) {
+                    exception = exception == null ? e.getCause() : exception;
+                } catch (InterruptedException e) {
+                    exception = exception == null ? e : exception;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (exception == null && progress.get() != total) {
+            exception = DbException.getInternalError(
+                    "rowcount remaining=" + (total - progress.get()) + ' ' + getName());
+        }
+        if (exception != null) {
+            removeMaps(bufferNames);
+            throw DbException.convert(exception);
+        }
+        index.addBufferedRows(bufferNames);
+    }
+
+    private ArrayList<String> sortRange(Cursor cursor, MVIndex<?,?> index, int bufferSize, String n,
+            AtomicLong progress, long total) {
+        Store store = database.getStore();
+        ArrayList<String> bufferNames = Utils.newSmallArrayList();
+        ArrayList<Row> buffer = new ArrayList<>(bufferSize);
+        try {
+            boolean hasNext;
+            do {
+                hasNext = cursor.next();
+                if (hasNext) {
+                    buffer.add(cursor.get());
+                }
+                if (buffer.size() >= bufferSize || !hasNext && !buffer.isEmpty()) {
+                    sortRows(buffer, index);
+                    String mapName = store.nextTemporaryMapName();
+                    bufferNames.add(mapName);
+                    index.addRowsToBuffer(buffer, mapName);
+                    long i = progress.addAndGet(buffer.size());
+                    synchronized (progress) {
+                        database.setProgress(DatabaseEventListener.STATE_CREATE_INDEX, n, i, total);
+                    }
+                    buffer.clear();
+                }
+            } while (hasNext);
+        } catch (Throwable e) {
+            removeMaps(bufferNames);
+            throw e;
+        }
+        return bufferNames;
+    }
+
+    private void removeMaps(ArrayList<String> mapNames) {
+        MVStore mvStore = database.getStore().getMvStore();
+        for (String mapName : mapNames) {
+            if (mvStore.hasMap(mapName)) {
+                mvStore.removeMap(mapName);
+            }
+        }
+    }
+
     private void rebuildIndexBuffered(SessionLocal session, Index index) {
         Index scan = getScanIndex(session);
         long remaining = scan.getRowCount(session);
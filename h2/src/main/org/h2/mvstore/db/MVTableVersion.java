@@ -0,0 +1,199 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import org.h2.api.ErrorCode;
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.Constants;
+import org.h2.engine.SessionLocal;
+import org.h2.expression.Expression;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.index.VirtualTableIndex;
+import org.h2.message.DbException;
+import org.h2.mvstore.MVStore;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.TableFilter;
+import org.h2.table.TableType;
+import org.h2.table.VirtualTable;
+import org.h2.util.DateTimeUtils;
+import org.h2.value.TypeInfo;
+import org.h2.value.Value;
+import org.h2.value.ValueTimestampTimeZone;
+
+/**
+ * A read-only view of the committed rows of a table as of an older version of
+ * the store, as in <code>SELECT * FROM TEST AS OF VERSION 10</code> or
+ * <code>SELECT * FROM TEST AS OF TIMESTAMP TIMESTAMP '2022-01-01 10:00:00'</code>.
+ * How long old versions can be read depends on the retention time of the
+ * store.
+ */
+public class MVTableVersion extends VirtualTable {
+
+    private final MVTable table;
+
+    private Expression version;
+
+    private final boolean timestamp;
+
+    private boolean optimized;
+
+    private final VersionIndex index;
+
+    /**
+     * Create a new view of an older version of a table.
+     *
+     * @param table the table
+     * @param version the version, or the time as of which to read the table
+     * @param timestamp whether the version expression is a time
+     */
+    public MVTableVersion(MVTable table, Expression version, boolean timestamp) {
+        super(table.getSchema(), 0, table.getName());
+        this.table = table;
+        this.version = version;
+        this.timestamp = timestamp;
+        Column[] tableColumns = table.getColumns();
+        int length = tableColumns.length;
+        Column[] columns = new Column[length];
+        for (int i = 0; i < length; i++) {
+            columns[i] = tableColumns[i].getClone();
+        }
+        setColumns(columns);
+        index = new VersionIndex(this, IndexColumn.wrap(columns));
+    }
+
+    @Override
+    public StringBuilder getSQL(StringBuilder builder, int sqlFlags) {
+        table.getSQL(builder, sqlFlags).append(timestamp ? " AS OF TIMESTAMP " : " AS OF VERSION ");
+        return version.getUnenclosedSQL(builder, sqlFlags);
+    }
+
+    /**
+     * Evaluate the version expression and get the version of the store to
+     * read.
+     *
+     * @param session the session
+     * @return the version
+     */
+    long getVersion(SessionLocal session) {
+        if (!optimized) {
+            version = version.optimize(session);
+            optimized = true;
+        }
+        Value v = version.getValue(session);
+        if (!timestamp) {
+            return v.getLong();
+        }
+        ValueTimestampTimeZone ts = (ValueTimestampTimeZone) v.convertTo(TypeInfo.TYPE_TIMESTAMP_TZ, session);
+        long timeNanos = ts.getTimeNanos();
+        long time = DateTimeUtils.getEpochSeconds(ts.getDateValue(), timeNanos, ts.getTimeZoneOffsetSeconds())
+                * 1_000 + timeNanos / 1_000_000 % 1_000;
+        MVStore store = table.getDatabase().getStore().getMvStore();
+        long result = store.getVersionAt(time);
+        if (result < 0) {
+            throw DbException.getInvalidValueException("AS OF TIMESTAMP", ts.getTraceSQL());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean canGetRowCount(SessionLocal session) {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(SessionLocal session) {
+        throw DbException.getInternalError(toString());
+    }
+
+    @Override
+    public TableType getTableType() {
+        return null;
+    }
+
+    @Override
+    public Index getScanIndex(SessionLocal session) {
+        return index;
+    }
+
+    @Override
+    public ArrayList<Index> getIndexes() {
+        ArrayList<Index> list = new ArrayList<>(1);
+        list.add(index);
+        return list;
+    }
+
+    @Override
+    public long getMaxDataModificationId() {
+        return table.getMaxDataModificationId();
+    }
+
+    @Override
+    public long getRowCountApproximation(SessionLocal session) {
+        return table.getRowCountApproximation(session);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    /**
+     * The scan index of an older version of a table.
+     */
+    private static final class VersionIndex extends VirtualTableIndex {
+
+        private final MVTableVersion tableVersion;
+
+        VersionIndex(MVTableVersion table, IndexColumn[] columns) {
+            super(table, "VERSION_SCAN_INDEX", columns);
+            this.tableVersion = table;
+        }
+
+        @Override
+        public Cursor find(SessionLocal session, SearchRow first, SearchRow last) {
+            long version = tableVersion.getVersion(session);
+            try {
+                return ((MVPrimaryIndex) tableVersion.table.getScanIndex(session)).findVersion(version);
+            } catch (IllegalArgumentException e) {
+                throw DbException.get(ErrorCode.INVALID_VALUE_2, e, Long.toString(version), "AS OF VERSION");
+            }
+        }
+
+        @Override
+        public double getCost(SessionLocal session, int[] masks, TableFilter[] filters, int filter,
+                SortOrder sortOrder, AllColumnsForPlan allColumnsSet) {
+            return 10 * (tableVersion.getRowCountApproximation(session) + Constants.COST_ROW_OFFSET);
+        }
+
+        @Override
+        public int getColumnIndex(Column col) {
+            // the scan index cannot use any columns
+            return -1;
+        }
+
+        @Override
+        public boolean isFirstColumn(Column column) {
+            return false;
+        }
+
+        @Override
+        public String getCreateSQL() {
+            return null;
+        }
+
+        @Override
+        public String getPlanSQL() {
+            return "version scan";
+        }
+
+    }
+
+}
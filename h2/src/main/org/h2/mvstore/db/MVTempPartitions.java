@@ -0,0 +1,118 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.message.DbException;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.LongDataType;
+import org.h2.store.fs.FileUtils;
+import org.h2.util.TempFileDeleter;
+import org.h2.value.ValueRow;
+
+/**
+ * Temporary partitions of rows. The rows of each partition are stored in a
+ * separate map and are read back in the order they were added.
+ *
+ * <p>
+ * As with {@link MVTempResult}, a separate MVStore in a temporary file is used
+ * for all partitions, and {@link TempFileDeleter} is used to delete this file
+ * if the partitions are not closed properly.
+ * </p>
+ */
+public final class MVTempPartitions {
+
+    private final ArrayList<MVMap<Long, ValueRow>> maps;
+
+    private final TempFileDeleter tempFileDeleter;
+
+    private final MVTempResult.CloseImpl closeable;
+
+    private final Reference<?> fileRef;
+
+    private long sequence;
+
+    /**
+     * Creates new temporary partitions.
+     *
+     * @param database
+     *            database
+     * @param count
+     *            the number of partitions
+     */
+    public MVTempPartitions(Database database, int count) {
+        try {
+            String fileName = FileUtils.createTempFile("h2tmp", Constants.SUFFIX_TEMP_FILE, true);
+            FileStore fileStore = database.getStore().getMvStore().getFileStore().open(fileName, false);
+            MVStore store = new MVStore.Builder().adoptFileStore(fileStore).cacheSize(0).autoCommitDisabled()
+                    .open();
+            MVMap.Builder<Long, ValueRow> builder = new MVMap.Builder<Long, ValueRow>()
+                    .keyType(LongDataType.INSTANCE).valueType(new ValueDataType(database, null));
+            maps = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                maps.add(store.openMap("tmp" + i, builder));
+            }
+            tempFileDeleter = database.getTempFileDeleter();
+            closeable = new MVTempResult.CloseImpl(store, fileName);
+            fileRef = tempFileDeleter.addFile(closeable, this);
+        } catch (IOException e) {
+            throw DbException.convert(e);
+        }
+    }
+
+    /**
+     * Add a row to a partition.
+     *
+     * @param partition
+     *            the number of the partition
+     * @param row
+     *            the row
+     */
+    public void add(int partition, ValueRow row) {
+        maps.get(partition).put(sequence++, row);
+    }
+
+    /**
+     * Get an iterator over the rows of a partition.
+     *
+     * @param partition
+     *            the number of the partition
+     * @return the iterator
+     */
+    public Iterator<ValueRow> iterator(int partition) {
+        Cursor<Long, ValueRow> cursor = maps.get(partition).cursor(null);
+        return new Iterator<ValueRow>() {
+
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public ValueRow next() {
+                cursor.next();
+                return cursor.getValue();
+            }
+
+        };
+    }
+
+    /**
+     * Close the partitions and delete their file.
+     */
+    public void close() {
+        tempFileDeleter.deleteFile(fileRef, closeable);
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.index.Cursor;
+import org.h2.message.DbException;
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.store.fs.FileUtils;
+import org.h2.table.Table;
+import org.h2.util.TempFileDeleter;
+import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueRow;
+
+/**
+ * A temporary map from key values to the rows of a table with these keys.
+ *
+ * <p>
+ * As with {@link MVTempResult}, a separate MVStore in a temporary file is used
+ * for each map, and {@link TempFileDeleter} is used to delete this file if the
+ * map is not closed properly.
+ * </p>
+ */
+public final class MVTempRowMap {
+
+    private static final ValueBigint MAX_SEQUENCE = ValueBigint.get(Long.MAX_VALUE);
+
+    private final Table table;
+
+    /**
+     * Map with the keys and the sequential numbers of rows as keys, and the
+     * values of rows and their keys as values.
+     */
+    private final MVMap<ValueRow, ValueRow> map;
+
+    private final TempFileDeleter tempFileDeleter;
+
+    private final MVTempResult.CloseImpl closeable;
+
+    private final Reference<?> fileRef;
+
+    private long sequence;
+
+    /**
+     * Creates a new temporary map for rows of the specified table.
+     *
+     * @param database
+     *            database
+     * @param table
+     *            the table
+     */
+    public MVTempRowMap(Database database, Table table) {
+        this.table = table;
+        try {
+            String fileName = FileUtils.createTempFile("h2tmp", Constants.SUFFIX_TEMP_FILE, true);
+            FileStore fileStore = database.getStore().getMvStore().getFileStore().open(fileName, false);
+            MVStore store = new MVStore.Builder().adoptFileStore(fileStore).cacheSize(0).autoCommitDisabled()
+                    .open();
+            map = store.openMap("tmp", new MVMap.Builder<ValueRow, ValueRow>()
+                    .keyType(new ValueDataType(database, new int[2]))
+                    .valueType(new ValueDataType(database, new int[table.getColumns().length + 1])));
+            tempFileDeleter = database.getTempFileDeleter();
+            closeable = new MVTempResult.CloseImpl(store, fileName);
+            fileRef = tempFileDeleter.addFile(closeable, this);
+        } catch (IOException e) {
+            throw DbException.convert(e);
+        }
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param key
+     *            the key value of the row
+     * @param row
+     *            the row
+     */
+    public void add(Value key, Row row) {
+        int length = row.getColumnCount();
+        Value[] values = Arrays.copyOf(row.getValueList(), length + 1);
+        values[length] = ValueBigint.get(row.getKey());
+        map.put(ValueRow.get(new Value[] { key, ValueBigint.get(sequence++) }), ValueRow.get(values));
+    }
+
+    /**
+     * Get a cursor over the rows with the specified key value.
+     *
+     * @param key
+     *            the key value, or {@code null} for all rows
+     * @return the cursor
+     */
+    public Cursor find(Value key) {
+        return new RowMapCursor(key != null
+                ? map.cursor(ValueRow.get(new Value[] { key, ValueBigint.get(0L) }),
+                        ValueRow.get(new Value[] { key, MAX_SEQUENCE }), false)
+                : map.cursor(null));
+    }
+
+    /**
+     * Close the map and delete its file.
+     */
+    public void close() {
+        tempFileDeleter.deleteFile(fileRef, closeable);
+    }
+
+    /**
+     * A cursor over the rows of the map.
+     */
+    private final class RowMapCursor implements Cursor {
+
+        private final org.h2.mvstore.Cursor<ValueRow, ValueRow> cursor;
+
+        private Row current;
+
+        RowMapCursor(org.h2.mvstore.Cursor<ValueRow, ValueRow> cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public Row get() {
+            return current;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return current;
+        }
+
+        @Override
+        public boolean next() {
+            if (!cursor.hasNext()) {
+                current = null;
+                return false;
+            }
+            cursor.next();
+            Value[] values = cursor.getValue().getList();
+            int length = values.length - 1;
+            current = table.createRow(Arrays.copyOf(values, length), SearchRow.MEMORY_CALCULATE);
+            current.setKey(values[length].getLong());
+            return true;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getInternalError(toString());
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import org.h2.index.Cursor;
+import org.h2.index.SingleRowCursor;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+
+/**
+ * A cursor that merges the sorted cursors over the partitions of an index,
+ * so that the rows are returned in the order of the index.
+ */
+final class PartitionedCursor implements Cursor {
+
+    private final ArrayList<Cursor> cursors;
+
+    private final PriorityQueue<Cursor> queue;
+
+    private Cursor current;
+
+    private PartitionedCursor(ArrayList<Cursor> cursors, Comparator<SearchRow> comparator) {
+        this.cursors = cursors;
+        queue = new PriorityQueue<>(cursors.size(),
+                (a, b) -> comparator.compare(a.getSearchRow(), b.getSearchRow()));
+    }
+
+    /**
+     * Get a cursor over the rows of the given cursors.
+     *
+     * @param cursors the cursors over the partitions
+     * @param comparator the comparator of the rows
+     * @return the cursor
+     */
+    static Cursor get(ArrayList<Cursor> cursors, Comparator<SearchRow> comparator) {
+        switch (cursors.size()) {
+        case 0:
+            return new SingleRowCursor(null);
+        case 1:
+            return cursors.get(0);
+        default:
+            return new PartitionedCursor(cursors, comparator);
+        }
+    }
+
+    @Override
+    public Row get() {
+        return current != null ? current.get() : null;
+    }
+
+    @Override
+    public SearchRow getSearchRow() {
+        return current != null ? current.getSearchRow() : null;
+    }
+
+    @Override
+    public boolean next() {
+        if (current != null) {
+            if (current.next()) {
+                queue.offer(current);
+            }
+        } else if (!cursors.isEmpty()) {
+            for (Cursor cursor : cursors) {
+                if (cursor.next()) {
+                    queue.offer(cursor);
+                }
+            }
+            cursors.clear();
+        }
+        current = queue.poll();
+        return current != null;
+    }
+
+    @Override
+    public boolean previous() {
+        throw DbException.getUnsupportedException("previous");
+    }
+
+}
@@ -12,6 +12,7 @@
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.BasicDataType;
+import org.h2.mvstore.type.ColumnarDataType;
 import org.h2.mvstore.type.MetaType;
 import org.h2.mvstore.type.StatefulDataType;
 import org.h2.result.RowFactory;
@@ -20,19 +21,35 @@
 import org.h2.value.CompareMode;
 import org.h2.value.TypeInfo;
 import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueInteger;
 
 /**
  * The data type for rows.
  *
  * @author <a href='mailto:andrei.tokar@gmail.com'>Andrei Tokar</a>
  */
-public final class RowDataType extends BasicDataType<SearchRow> implements StatefulDataType<Database> {
+public final class RowDataType extends BasicDataType<SearchRow>
+        implements StatefulDataType<Database>, ColumnarDataType<SearchRow> {
+
+    /**
+     * A column stored as runs of equal values: the length of the run and
+     * the value.
+     */
+    private static final byte COLUMN_RUNS = 0;
+
+    /**
+     * A column of INTEGER or BIGINT values stored as the first value and the
+     * differences between consecutive values.
+     */
+    private static final byte COLUMN_DELTAS = 1;
 
     private final ValueDataType valueDataType;
     private final int[]         sortTypes;
     private final int[]         indexes;
     private final int           columnCount;
     private final boolean       storeKeys;
+    private boolean             columnar;
 
     public RowDataType(CastDataProvider provider, CompareMode compareMode, DataHandler handler, int[] sortTypes,
             int[] indexes, int columnCount, boolean storeKeys) {
@@ -64,6 +81,20 @@ public boolean isStoreKeys() {
         return storeKeys;
     }
 
+    /**
+     * Set whether rows of new leaf pages should be written column by column.
+     *
+     * @param columnar whether to use columnar layout
+     */
+    public void setColumnar(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    @Override
+    public boolean isColumnar() {
+        return columnar;
+    }
+
     @Override
     public SearchRow[] createStorage(int capacity) {
         return new SearchRow[capacity];
@@ -181,6 +212,180 @@ public void write(WriteBuffer buff, SearchRow row) {
         }
     }
 
+    @Override
+    public void writeColumns(WriteBuffer buff, SearchRow[] storage, int len) {
+        if (storeKeys) {
+            long last = 0;
+            for (int i = 0; i < len; i++) {
+                long key = storage[i].getKey();
+                buff.putVarLong(encodeDelta(key - last));
+                last = key;
+            }
+        }
+        if (len == 0) {
+            return;
+        }
+        if (indexes == null) {
+            int columnCount = storage[0].getColumnCount();
+            buff.putVarInt(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                writeColumn(buff, storage, len, i);
+            }
+        } else {
+            for (int i : indexes) {
+                writeColumn(buff, storage, len, i);
+            }
+        }
+    }
+
+    private void writeColumn(WriteBuffer buff, SearchRow[] storage, int len, int column) {
+        Value first = storage[0].getValue(column);
+        int type = first == null ? Value.UNKNOWN : first.getValueType();
+        if (type == Value.INTEGER || type == Value.BIGINT) {
+            int i = 1;
+            while (i < len) {
+                Value v = storage[i].getValue(column);
+                if (v == null || v.getValueType() != type) {
+                    break;
+                }
+                i++;
+            }
+            if (i == len) {
+                buff.put(COLUMN_DELTAS).put((byte) type);
+                long last = 0;
+                for (i = 0; i < len; i++) {
+                    long value = storage[i].getValue(column).getLong();
+                    buff.putVarLong(encodeDelta(value - last));
+                    last = value;
+                }
+                return;
+            }
+        }
+        buff.put(COLUMN_RUNS);
+        for (int i = 0; i < len;) {
+            Value v = storage[i].getValue(column);
+            int end = i + 1;
+            while (end < len && isSameValue(v, storage[end].getValue(column))) {
+                end++;
+            }
+            buff.putVarInt(end - i);
+            valueDataType.write(buff, v);
+            i = end;
+        }
+    }
+
+    /**
+     * Check whether two values of a column can be stored as one value of a
+     * run. Values that compare equal are not always the same, for example
+     * strings that only differ in case in a VARCHAR_IGNORECASE column.
+     *
+     * @param a the first value, or null
+     * @param b the second value, or null
+     * @return whether both values have the same type and content
+     */
+    private static boolean isSameValue(Value a, Value b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null || a.getValueType() != b.getValueType()) {
+            return false;
+        }
+        switch (a.getValueType()) {
+        case Value.CHAR:
+        case Value.VARCHAR:
+        case Value.VARCHAR_IGNORECASE:
+            return a.getString().equals(b.getString());
+        case Value.REAL:
+            return Float.floatToRawIntBits(a.getFloat()) == Float.floatToRawIntBits(b.getFloat());
+        case Value.DOUBLE:
+            return Double.doubleToRawLongBits(a.getDouble()) == Double.doubleToRawLongBits(b.getDouble());
+        case Value.BOOLEAN:
+        case Value.TINYINT:
+        case Value.SMALLINT:
+        case Value.INTEGER:
+        case Value.BIGINT:
+        case Value.NUMERIC:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIME_TZ:
+        case Value.TIMESTAMP:
+        case Value.TIMESTAMP_TZ:
+        case Value.BINARY:
+        case Value.VARBINARY:
+        case Value.UUID:
+            // equals() compares the exact content of these values
+            return a.equals(b);
+        default:
+            // LOBs, collections and other values are only merged if they are
+            // the same instance
+            return false;
+        }
+    }
+
+    @Override
+    public void readColumns(ByteBuffer buff, SearchRow[] storage, int len) {
+        RowFactory rowFactory = valueDataType.getRowFactory();
+        for (int i = 0; i < len; i++) {
+            storage[i] = rowFactory.createRow();
+        }
+        if (storeKeys) {
+            long last = 0;
+            for (int i = 0; i < len; i++) {
+                last += decodeDelta(DataUtils.readVarLong(buff));
+                storage[i].setKey(last);
+            }
+        }
+        if (len == 0) {
+            return;
+        }
+        TypeInfo[] columnTypes = rowFactory.getColumnTypes();
+        if (indexes == null) {
+            int columnCount = DataUtils.readVarInt(buff);
+            for (int i = 0; i < columnCount; i++) {
+                readColumn(buff, storage, len, i, columnTypes != null ? columnTypes[i] : null);
+            }
+        } else {
+            for (int i : indexes) {
+                readColumn(buff, storage, len, i, columnTypes != null ? columnTypes[i] : null);
+            }
+        }
+    }
+
+    private void readColumn(ByteBuffer buff, SearchRow[] storage, int len, int column, TypeInfo columnType) {
+        byte layout = buff.get();
+        if (layout == COLUMN_DELTAS) {
+            boolean bigint = buff.get() == Value.BIGINT;
+            long last = 0;
+            for (int i = 0; i < len; i++) {
+                last += decodeDelta(DataUtils.readVarLong(buff));
+                storage[i].setValue(column, bigint ? ValueBigint.get(last) : ValueInteger.get((int) last));
+            }
+        } else if (layout == COLUMN_RUNS) {
+            for (int i = 0; i < len;) {
+                int run = DataUtils.readVarInt(buff);
+                if (run <= 0 || run > len - i) {
+                    throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                            "Illegal run length {0}", run);
+                }
+                int end = i + run;
+                Value v = valueDataType.readValue(buff, columnType);
+                while (i < end) {
+                    storage[i++].setValue(column, v);
+                }
+            }
+        } else {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                    "Unknown column layout {0}", layout);
+        }
+    }
+
+    private static long encodeDelta(long delta) {
+        return (delta << 1) ^ (delta >> 63);
+    }
+
+    private static long decodeDelta(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) {
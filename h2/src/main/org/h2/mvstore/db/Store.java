@@ -111,6 +111,13 @@ public Store(Database db, byte[] key) {
                 if (autoCompactFillRate <= 100) {
                     builder.autoCompactFillRate(autoCompactFillRate);
                 }
+                int autoCompactWriteRate = db.getSettings().autoCompactWriteRate;
+                if (autoCompactWriteRate > 0) {
+                    builder.autoCompactWriteRate(autoCompactWriteRate);
+                }
+                if (db.getSettings().autoShrink) {
+                    builder.autoShrink();
+                }
             }
             if (key != null) {
                 encrypted = true;
@@ -121,6 +128,23 @@ public Store(Database db, byte[] key) {
                 // use a larger page split size to improve the compression ratio
                 builder.pageSplitSize(64 * 1024);
             }
+            if (db.getSettings().parallelSerialization) {
+                builder.parallelSerialization();
+            }
+            if (db.getSettings().syncOnCommit) {
+                builder.syncOnCommit();
+            }
+            if (db.getSettings().memoryMappedRead) {
+                builder.memoryMapped();
+            }
+            int offHeapCacheSize = db.getSettings().offHeapCacheSize;
+            if (offHeapCacheSize > 0) {
+                builder.offHeapCacheSize(offHeapCacheSize);
+            }
+            int readAhead = db.getSettings().readAhead;
+            if (readAhead > 0) {
+                builder.readAhead(readAhead);
+            }
             builder.backgroundExceptionHandler((t, e) -> db.setBackgroundException(DbException.convert(e)));
             // always start without background thread first, and if necessary,
             // it will be set up later, after db has been fully started,
@@ -204,7 +228,16 @@ public TransactionStore getTransactionStore() {
      * @return MVTable
      */
     public MVTable getTable(String tableName) {
-        return tableMap.get(tableName);
+        MVTable table = tableMap.get(tableName);
+        if (table == null && tableName.startsWith("table.")) {
+            // the maps of the partitions of a table are named
+            // table.<id>.<partition name>
+            int end = tableName.indexOf('.', 6);
+            if (end > 0) {
+                table = tableMap.get(tableName.substring(0, end));
+            }
+        }
+        return table;
     }
 
     /**
@@ -268,7 +301,8 @@ public void removeTemporaryMaps(BitSet objectIds) {
             if (mapName.startsWith("temp.")) {
                 mvStore.removeMap(mapName);
             } else if (mapName.startsWith("table.") || mapName.startsWith("index.")) {
-                int id = StringUtils.parseUInt31(mapName, mapName.indexOf('.') + 1, mapName.length());
+                int start = mapName.indexOf('.') + 1, end = mapName.indexOf('.', start);
+                int id = StringUtils.parseUInt31(mapName, start, end < 0 ? mapName.length() : end);
                 if (!objectIds.get(id)) {
                     mvStore.removeMap(mapName);
                 }
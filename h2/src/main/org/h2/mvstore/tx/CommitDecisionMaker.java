@@ -53,6 +53,15 @@ public <T extends VersionedValue<V>> T selectValue(T existingValue, T providedVa
         return (T) VersionedValueCommitted.getInstance(existingValue.getCurrentValue());
     }
 
+    /**
+     * Get the decision made for the last entry.
+     *
+     * @return the decision
+     */
+    MVMap.Decision getDecision() {
+        return decision;
+    }
+
     @Override
     public void reset() {
         decision = null;
@@ -15,15 +15,17 @@
  */
 final class RollbackDecisionMaker extends MVMap.DecisionMaker<Record<?,?>> {
     private final TransactionStore store;
+    private final Transaction transaction;
     private final long transactionId;
     private final long toLogId;
     private final TransactionStore.RollbackListener listener;
     private MVMap.Decision decision;
 
-    RollbackDecisionMaker(TransactionStore store, long transactionId, long toLogId,
+    RollbackDecisionMaker(TransactionStore store, Transaction transaction, long toLogId,
                             TransactionStore.RollbackListener listener) {
         this.store = store;
-        this.transactionId = transactionId;
+        this.transaction = transaction;
+        this.transactionId = transaction.transactionId;
         this.toLogId = toLogId;
         this.listener = listener;
     }
@@ -47,8 +49,20 @@ public MVMap.Decision decide(Record existingValue, Record providedValue) {
                 MVMap<Object, VersionedValue<Object>> map = store.openMap(mapId);
                 if (map != null && !map.isClosed()) {
                     Object key = existingValue.key;
-                    VersionedValue<Object> previousValue = map.operate(key, valueToRestore,
-                            MVMap.DecisionMaker.DEFAULT);
+                    SizeTracker sizeTracker = store.getSizeTracker(mapId);
+                    VersionedValue<Object> previousValue;
+                    if (sizeTracker == null) {
+                        previousValue = map.operate(key, valueToRestore, MVMap.DecisionMaker.DEFAULT);
+                    } else {
+                        sizeTracker.beginUpdate();
+                        try {
+                            previousValue = map.operate(key, valueToRestore, MVMap.DecisionMaker.DEFAULT);
+                            sizeTracker.update(previousValue, valueToRestore, transaction,
+                                    transaction.getSizeChange(mapId));
+                        } finally {
+                            sizeTracker.endUpdate();
+                        }
+                    }
                     listener.onRollback(map, key, previousValue, valueToRestore);
                 }
             }
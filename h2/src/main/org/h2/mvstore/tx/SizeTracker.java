@@ -0,0 +1,175 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.RootReference;
+import org.h2.value.VersionedValue;
+
+/**
+ * Keeps track of the entries of a transactional map that have no committed
+ * value, so that the number of entries visible to a transaction can be
+ * calculated from the total count of the map, the number of these entries,
+ * and the number of entries the transaction itself added or removed, without
+ * scanning the map or the undo logs.
+ * <p>
+ * Every update of the map is enclosed in {@link #beginUpdate()} and
+ * {@link #endUpdate()}. A size is only calculated if no update was in progress
+ * while the counters were read, otherwise the caller falls back to a scan.
+ */
+final class SizeTracker {
+
+    private final TransactionStore store;
+
+    /**
+     * The number of updates started.
+     */
+    private final AtomicLong started = new AtomicLong();
+
+    /**
+     * The number of updates finished.
+     */
+    private final AtomicLong finished = new AtomicLong();
+
+    /**
+     * The number of entries without a committed value.
+     */
+    private final AtomicLong uncommitted = new AtomicLong();
+
+    /**
+     * Whether the counter of entries without a committed value is known to
+     * be exact. It is not if the map had entries of transactions recovered
+     * after a restart when the tracker was created, or entries left over
+     * after an unclean shutdown.
+     */
+    private volatile boolean valid;
+
+    SizeTracker(TransactionStore store, boolean valid) {
+        this.store = store;
+        this.valid = valid;
+    }
+
+    /**
+     * Mark the start of an update of the map.
+     */
+    void beginUpdate() {
+        started.incrementAndGet();
+    }
+
+    /**
+     * Mark the end of an update of the map.
+     */
+    void endUpdate() {
+        finished.incrementAndGet();
+    }
+
+    /**
+     * Account for the replacement of an entry of the map.
+     *
+     * @param oldValue the old value, or null if the entry did not exist
+     * @param newValue the new value, or null if the entry was removed
+     * @param transaction the transaction that changed the entry
+     * @param changes the change of the number of entries visible to the
+     *            transaction, to update, or null
+     */
+    void update(VersionedValue<?> oldValue, VersionedValue<?> newValue, Transaction transaction,
+            AtomicLong changes) {
+        long uncommittedChange = 0;
+        long change = 0;
+        if (oldValue != null) {
+            if (oldValue.getCommittedValue() == null) {
+                uncommittedChange--;
+            }
+            long operationId = oldValue.getOperationId();
+            if (operationId != 0) {
+                int transactionId = TransactionStore.getTransactionId(operationId);
+                if (transactionId == transaction.transactionId) {
+                    change -= getVisibleChange(oldValue);
+                } else if (store.getTransaction(transactionId) == null) {
+                    // leftover of an unclean shutdown
+                    invalidate();
+                }
+            }
+        }
+        if (newValue != null) {
+            if (newValue.getCommittedValue() == null) {
+                uncommittedChange++;
+            }
+            if (newValue.getOperationId() != 0) {
+                change += getVisibleChange(newValue);
+            }
+        }
+        if (uncommittedChange != 0) {
+            uncommitted.addAndGet(uncommittedChange);
+        }
+        if (change != 0 && changes != null) {
+            changes.addAndGet(change);
+        }
+    }
+
+    private static int getVisibleChange(VersionedValue<?> value) {
+        return (value.getCurrentValue() != null ? 1 : 0) - (value.getCommittedValue() != null ? 1 : 0);
+    }
+
+    /**
+     * Account for the removal of all entries of the map.
+     */
+    void clear() {
+        uncommitted.set(0);
+    }
+
+    /**
+     * Stop calculating sizes until the tracker is reset.
+     */
+    synchronized void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Reset an invalid tracker, if the map has no uncommitted entries.
+     *
+     * @param map the map
+     * @param root the root reference of the map, at a time when there were
+     *            no uncommitted entries in any map
+     */
+    synchronized void reset(MVMap<?,?> map, RootReference<?,?> root) {
+        if (!valid) {
+            long start = started.get();
+            if (finished.get() == start && map.getRoot() == root) {
+                long count = uncommitted.get();
+                // fails if an update was started in the meantime
+                if (started.compareAndSet(start, start + 1)) {
+                    uncommitted.addAndGet(-count);
+                    valid = true;
+                    endUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculate the number of entries visible to a transaction, if no
+     * transaction is committing.
+     *
+     * @param map the map
+     * @param root the root reference of the snapshot of the transaction
+     * @param changes the number of entries the transaction has added minus
+     *            the number of entries it has removed
+     * @return the number of entries, or -1 if it can not be calculated
+     *         without a scan
+     */
+    long getSize(MVMap<?,?> map, RootReference<?,?> root, long changes) {
+        long finishedCount = finished.get();
+        long start = started.get();
+        if (finishedCount != start || !valid || map.getRoot() != root) {
+            return -1;
+        }
+        long size = root.getTotalCount() - uncommitted.get() + changes;
+        return started.get() == start ? size : -1;
+    }
+}
@@ -5,12 +5,16 @@
  */
 package org.h2.mvstore.tx;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
 import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
@@ -160,6 +164,28 @@ public final class Transaction {
      */
     private volatile boolean notificationRequested;
 
+    /**
+     * Transactions waiting for map entries locked by this transaction, in the
+     * order of their arrival. Guarded by TransactionStore.lockWaitSync.
+     */
+    private final ArrayDeque<Transaction> waitingTransactions = new ArrayDeque<>();
+
+    /**
+     * Whether the entry this transaction is waiting for was handed over to it.
+     */
+    private volatile boolean lockGranted;
+
+    /**
+     * Total time in nanoseconds spent waiting for entries locked by other
+     * transactions, not including the current wait.
+     */
+    private volatile long lockWaitNanos;
+
+    /**
+     * The value of System.nanoTime() when the current wait started, or 0.
+     */
+    private volatile long lockWaitStart;
+
     /**
      * RootReferences for undo log snapshots
      */
@@ -170,6 +196,19 @@ public final class Transaction {
      */
     private final Map<Integer, TransactionMap<?,?>> transactionMaps = new HashMap<>();
 
+    /**
+     * The number of entries added minus the number of entries removed by this
+     * transaction, by map id. Unlike the transactional maps, they are kept
+     * until the transaction ends.
+     */
+    private final Map<Integer, AtomicLong> sizeChanges = new HashMap<>();
+
+    /**
+     * Whether this transaction was recovered from its undo log when the store
+     * was opened.
+     */
+    boolean recovered;
+
     /**
      * The current isolation level.
      */
@@ -282,6 +321,21 @@ public int getBlockerId() {
         return blocker == null ? 0 : blocker.ownerId;
     }
 
+    /**
+     * Get the total time this transaction has spent waiting for map entries
+     * locked by other transactions, including the current wait, if any.
+     *
+     * @return the lock wait time in nanoseconds
+     */
+    public long getLockWaitTime() {
+        long time = lockWaitNanos;
+        long start = lockWaitStart;
+        if (start != 0L) {
+            time += System.nanoTime() - start;
+        }
+        return time;
+    }
+
     /**
      * Create a new savepoint.
      *
@@ -335,32 +389,48 @@ public void markStatementStart(HashSet<MVMap<Object,VersionedValue<Object>>> map
         }
 
         if (maps != null && !maps.isEmpty()) {
-            // The purpose of the following loop is to get a coherent picture
-            // In order to get such a "snapshot", we wait for a moment of silence,
-            // when no new transaction were committed / closed.
-            BitSet committingTransactions;
-            do {
-                committingTransactions = store.committingTransactions.get();
-                for (MVMap<Object,VersionedValue<Object>> map : maps) {
-                    TransactionMap<?,?> txMap = openMapX(map);
-                    txMap.setStatementSnapshot(new Snapshot(map.flushAndGetRoot(), committingTransactions));
-                }
-                if (isReadCommitted()) {
-                    undoLogRootReferences = store.collectUndoLogRootReferences();
+            // The purpose of the following is to get a coherent picture.
+            // Usually, none of the transactions starts or finishes committing
+            // in between, otherwise the roots are collected again while
+            // holding the lock, which prevents that.
+            MVMap<Object,VersionedValue<Object>>[] mapArray = maps.toArray(new MVMap[0]);
+            RootReference<Object,VersionedValue<Object>>[] roots = new RootReference[mapArray.length];
+            StampedLock lock = store.committingTransactionsLock;
+            long stamp = lock.tryOptimisticRead();
+            BitSet committingTransactions = collectRoots(mapArray, roots);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    committingTransactions = collectRoots(mapArray, roots);
+                } finally {
+                    lock.unlockRead(stamp);
                 }
-            } while (committingTransactions != store.committingTransactions.get());
+            }
             // Now we have a snapshot, where each map RootReference point to state of the map,
             // undoLogRootReferences captures the state of undo logs
             // and committingTransactions mask tells us which of seemingly uncommitted changes
             // should be considered as committed.
             // Subsequent processing uses this snapshot info only.
-            for (MVMap<Object,VersionedValue<Object>> map : maps) {
-                TransactionMap<?,?> txMap = openMapX(map);
+            for (int i = 0; i < mapArray.length; i++) {
+                TransactionMap<?,?> txMap = openMapX(mapArray[i]);
+                txMap.setStatementSnapshot(new Snapshot(roots[i], committingTransactions));
                 txMap.promoteSnapshot();
             }
         }
     }
 
+    private BitSet collectRoots(MVMap<Object,VersionedValue<Object>>[] maps,
+            RootReference<Object,VersionedValue<Object>>[] roots) {
+        BitSet committingTransactions = store.committingTransactions.get();
+        for (int i = 0; i < maps.length; i++) {
+            roots[i] = maps[i].flushAndGetRoot();
+        }
+        if (isReadCommitted()) {
+            undoLogRootReferences = store.collectUndoLogRootReferences();
+        }
+        return committingTransactions;
+    }
+
     /**
      * Mark an exit from SQL statement execution within this transaction.
      */
@@ -533,7 +603,8 @@ public void rollbackToSavepoint(long savepointId) {
         try {
             store.rollbackTo(this, logId, savepointId);
         } finally {
-            notifyAllWaitingTransactions();
+            store.partialRollbackCount.incrementAndGet();
+            handOffWaitingTransactions(null, null);
             long expectedState = composeState(STATUS_ROLLING_BACK, logId, hasRollback(lastState));
             long newState = composeState(STATUS_OPEN, savepointId, true);
             do {
@@ -637,47 +708,152 @@ private void checkNotClosed() {
         }
     }
 
+    /**
+     * Get the number of entries added minus the number of entries removed by
+     * this transaction in the given map.
+     *
+     * @param mapId the map id
+     * @return the mutable number of entries
+     */
+    AtomicLong getSizeChange(int mapId) {
+        return sizeChanges.computeIfAbsent(mapId, id -> new AtomicLong());
+    }
+
     /**
      * Transition this transaction into a closed state.
      */
     void closeIt() {
         transactionMaps.clear();
-        long lastState = setStatus(STATUS_CLOSED);
+        sizeChanges.clear();
+        setStatus(STATUS_CLOSED);
         store.store.deregisterVersionUsage(txCounter);
-        if((hasChanges(lastState) || hasRollback(lastState))) {
-            notifyAllWaitingTransactions();
-        }
+        handOffWaitingTransactions(null, null);
     }
 
-    private void notifyAllWaitingTransactions() {
-        if (notificationRequested) {
-            synchronized (this) {
-                notifyAll();
+    /**
+     * Hand map entries released by this transaction over to the transactions
+     * waiting for them. For every entry only the transaction that waits
+     * longest is woken up, the other ones are queued behind it, because it
+     * is going to lock the entry again.
+     *
+     * @param mapName the name of the map of the released entry, or null if
+     *            all entries may have been released
+     * @param key the key of the released entry
+     */
+    void handOffWaitingTransactions(String mapName, Object key) {
+        if (!notificationRequested) {
+            return;
+        }
+        synchronized (store.lockWaitSync) {
+            ArrayList<Transaction> granted = new ArrayList<>();
+            for (Iterator<Transaction> it = waitingTransactions.iterator(); it.hasNext();) {
+                Transaction waiter = it.next();
+                if (mapName != null && !waiter.isWaitingFor(mapName, key)) {
+                    continue;
+                }
+                it.remove();
+                Transaction next = null;
+                for (Transaction t : granted) {
+                    if (t.isWaitingFor(waiter.blockingMapName, waiter.blockingKey)) {
+                        next = t;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    granted.add(waiter);
+                    waiter.lockGranted = true;
+                    synchronized (waiter) {
+                        waiter.notifyAll();
+                    }
+                } else {
+                    next.notificationRequested = true;
+                    next.waitingTransactions.addLast(waiter);
+                    waiter.blockingTransaction = next;
+                }
             }
         }
     }
 
+    private boolean isWaitingFor(String mapName, Object key) {
+        return mapName.equals(blockingMapName) && Objects.equals(key, blockingKey);
+    }
+
     /**
-     * Make this transaction to wait for the specified transaction to be closed,
-     * because both of them try to modify the same map entry.
+     * Make this transaction to wait for the specified transaction to release
+     * the map entry both of them try to modify. Waiting transactions are
+     * queued and woken up one by one in the order of their arrival.
      *
      * @param toWaitFor transaction to wait for
      * @param mapName name of the map containing blocking entry
      * @param key of the blocking entry
-     * @return true if other transaction was closed and this one can proceed, false if timed out
+     * @param rollbackCount the number of rollbacks to a savepoint before the
+     *            blocking entry was read
+     * @return true if the entry was released and this transaction can
+     *         proceed, false if timed out
      */
-    public boolean waitFor(Transaction toWaitFor, String mapName, Object key) {
+    public boolean waitFor(Transaction toWaitFor, String mapName, Object key, long rollbackCount) {
         blockingTransaction = toWaitFor;
         blockingMapName = mapName;
         blockingKey = key;
-        if (isDeadlocked(toWaitFor)) {
-            tryThrowDeadLockException(false);
+        lockGranted = false;
+        long start = System.nanoTime();
+        lockWaitStart = start;
+        boolean granted = false;
+        try {
+            if (isDeadlocked(toWaitFor)) {
+                tryThrowDeadLockException(false);
+            }
+            granted = !toWaitFor.addWaitingTransaction(this, rollbackCount)
+                    || awaitLock(start + timeoutMillis * 1_000_000L);
+            return granted;
+        } finally {
+            lockWaitStart = 0L;
+            lockWaitNanos += System.nanoTime() - start;
+            leaveWaitQueue(granted);
+        }
+    }
+
+    private boolean addWaitingTransaction(Transaction waiter, long rollbackCount) {
+        synchronized (store.lockWaitSync) {
+            // must be set before the status is checked, see closeIt()
+            notificationRequested = true;
+            if (getStatus() == STATUS_CLOSED || store.partialRollbackCount.get() != rollbackCount) {
+                return false;
+            }
+            waitingTransactions.addLast(waiter);
+            return true;
+        }
+    }
+
+    private synchronized boolean awaitLock(long until) {
+        while (!lockGranted) {
+            if (getStatus() != STATUS_OPEN) {
+                tryThrowDeadLockException(true);
+            }
+            long dur = until - System.nanoTime();
+            if (dur <= 0L) {
+                return false;
+            }
+            try {
+                wait(Math.max(dur / 1_000_000L, 1L));
+            } catch (InterruptedException ex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void leaveWaitQueue(boolean granted) {
+        synchronized (store.lockWaitSync) {
+            if (!granted) {
+                blockingTransaction.waitingTransactions.remove(this);
+                // pass on the entry if it was handed over to us concurrently
+                handOffWaitingTransactions(blockingMapName, blockingKey);
+            }
+            blockingMapName = null;
+            blockingKey = null;
+            blockingTransaction = null;
         }
-        boolean result = toWaitFor.waitForThisToEnd(timeoutMillis, this);
-        blockingMapName = null;
-        blockingKey = null;
-        blockingTransaction = null;
-        return result;
     }
 
     private boolean isDeadlocked(Transaction toWaitFor) {
@@ -700,7 +876,9 @@ private boolean isDeadlocked(Transaction toWaitFor) {
                 Transaction btx = youngest.blockingTransaction;
                 if (btx != null) {
                     youngest.setStatus(STATUS_ROLLING_BACK);
-                    btx.notifyAllWaitingTransactions();
+                    synchronized (youngest) {
+                        youngest.notifyAll();
+                    }
                     return false;
                 }
             }
@@ -727,29 +905,6 @@ private void tryThrowDeadLockException(boolean throwIt) {
         }
     }
 
-    private synchronized boolean waitForThisToEnd(int millis, Transaction waiter) {
-        long until = System.currentTimeMillis() + millis;
-        notificationRequested = true;
-        long state;
-        int status;
-        while((status = getStatus(state = statusAndLogId.get())) != STATUS_CLOSED
-                && status != STATUS_ROLLED_BACK && !hasRollback(state)) {
-            if (waiter.getStatus() != STATUS_OPEN) {
-                waiter.tryThrowDeadLockException(true);
-            }
-            long dur = until - System.currentTimeMillis();
-            if(dur <= 0) {
-                return false;
-            }
-            try {
-                wait(dur);
-            } catch (InterruptedException ex) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     /**
      * Remove the map.
      *
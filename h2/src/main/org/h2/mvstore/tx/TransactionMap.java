@@ -12,7 +12,8 @@
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.BiFunction;
 
 import org.h2.engine.IsolationLevel;
@@ -69,6 +70,17 @@
      */
     private boolean hasChanges;
 
+    /**
+     * Keeps track of the entries without a committed value.
+     */
+    private final SizeTracker sizeTracker;
+
+    /**
+     * The number of entries added minus the number of entries removed by the
+     * transaction, or null if not known yet.
+     */
+    private AtomicLong sizeChange;
+
     private final TxDecisionMaker<K,V> txDecisionMaker;
     private final TxDecisionMaker<K,V> ifAbsentDecisionMaker;
     private final TxDecisionMaker<K,V> lockDecisionMaker;
@@ -77,6 +89,7 @@
     TransactionMap(Transaction transaction, MVMap<K, VersionedValue<V>> map) {
         this.transaction = transaction;
         this.map = map;
+        this.sizeTracker = transaction.store.getSizeTracker(map);
         this.txDecisionMaker = new TxDecisionMaker<>(map.getId(), transaction);
         this.ifAbsentDecisionMaker = new TxDecisionMaker.PutIfAbsentDecisionMaker<>(map.getId(),
                 transaction, this::getFromSnapshot);
@@ -130,22 +143,34 @@ public long sizeAsLong() {
         if (!isolationLevel.allowNonRepeatableRead() && hasChanges) {
             return sizeAsLongRepeatableReadWithChanges();
         }
-        // getting coherent picture of the map, committing transactions, and undo logs
-        // either from values stored in transaction (never loops in that case),
-        // or current values from the transaction store (loops until moment of silence)
-        Snapshot<K,VersionedValue<V>> snapshot;
-        RootReference<Long,Record<?,?>>[] undoLogRootReferences;
-        do {
-            snapshot = getSnapshot();
-            undoLogRootReferences = getTransaction().getUndoLogRootReferences();
-        } while (!snapshot.equals(getSnapshot()));
-
+        // The snapshot of the map and the committing transactions is taken
+        // from the statement, or from the transaction store. If no
+        // transaction is committing, the size tracker calculates the size
+        // from the total count of the map, its counter of entries without a
+        // committed value, and the entries this transaction added or removed;
+        // it gives up if the map changed after the snapshot, or if an update
+        // was in progress while its counters were read. Otherwise the size
+        // is adjusted using the undo logs, whose root references are only
+        // coherent with the snapshot of the statement.
+        Snapshot<K,VersionedValue<V>> snapshot = getSnapshot();
         RootReference<K,VersionedValue<V>> mapRootReference = snapshot.root;
+        if (isolationLevel != IsolationLevel.READ_UNCOMMITTED && snapshot.committingTransactions.isEmpty()) {
+            // if the snapshot is still current, the entries without a
+            // committed value are tracked
+            long size = sizeTracker.getSize(map, mapRootReference, getSizeChange().get());
+            if (size >= 0) {
+                return size;
+            }
+        }
+        RootReference<Long,Record<?,?>>[] undoLogRootReferences = snapshot == this.snapshot
+                ? getTransaction().getUndoLogRootReferences() : null;
+
         long size = mapRootReference.getTotalCount();
         long undoLogsTotalSize = undoLogRootReferences == null ? size
                 : TransactionStore.calculateUndoLogsTotalSize(undoLogRootReferences);
         // if we are looking at the map without any uncommitted values
         if (undoLogsTotalSize == 0) {
+            sizeTracker.reset(map, mapRootReference);
             return size;
         }
         return adjustSize(undoLogRootReferences, mapRootReference,
@@ -292,8 +317,15 @@ public V putIfAbsent(K key, V value) {
      * @param value to be appended
      */
     public void append(K key, V value) {
-        map.append(key, VersionedValueUncommitted.getInstance(
-                                        transaction.log(new Record<>(map.getId(), key, null)), value, null));
+        VersionedValue<V> newValue = VersionedValueUncommitted.getInstance(
+                transaction.log(new Record<>(map.getId(), key, null)), value, null);
+        sizeTracker.beginUpdate();
+        try {
+            map.append(key, newValue);
+            sizeTracker.update(null, newValue, transaction, getSizeChange());
+        } finally {
+            sizeTracker.endUpdate();
+        }
         hasChanges = true;
     }
 
@@ -323,11 +355,46 @@ public V lock(K key) {
     public V putCommitted(K key, V value) {
         DataUtils.checkArgument(value != null, "The value may not be null");
         VersionedValue<V> newValue = VersionedValueCommitted.getInstance(value);
-        VersionedValue<V> oldValue = map.put(key, newValue);
+        VersionedValue<V> oldValue;
+        sizeTracker.beginUpdate();
+        try {
+            oldValue = map.put(key, newValue);
+            sizeTracker.update(oldValue, newValue, transaction, getSizeChange());
+        } finally {
+            sizeTracker.endUpdate();
+        }
         V result = oldValue == null ? null : oldValue.getCurrentValue();
         return result;
     }
 
+    /**
+     * Add committed entries in ascending order of their keys, without adding
+     * undo log entries. The keys must be larger than all keys of the map.
+     *
+     * @param entries the entries, sorted by key
+     * @param fillFactor the percentage of a page to fill (1 - 100)
+     * @return the number of added entries
+     * @see MVMap#bulkLoad(Iterator, int)
+     */
+    public long bulkLoadCommitted(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+            int fillFactor) {
+        return map.bulkLoad(new Iterator<Map.Entry<K,VersionedValue<V>>>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K,VersionedValue<V>> next() {
+                Map.Entry<? extends K, ? extends V> entry = entries.next();
+                V value = entry.getValue();
+                DataUtils.checkArgument(value != null, "The value may not be null");
+                return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                        VersionedValueCommitted.getInstance(value));
+            }
+        }, fillFactor);
+    }
+
     private V set(K key, V value) {
         txDecisionMaker.initialize(key, value);
         return set(key, txDecisionMaker);
@@ -337,20 +404,36 @@ private V set(Object key, TxDecisionMaker<K,V> decisionMaker) {
         Transaction blockingTransaction;
         VersionedValue<V> result;
         String mapName = null;
+        long rollbackCount;
         do {
             assert transaction.getBlockerId() == 0;
             @SuppressWarnings("unchecked")
             K k = (K) key;
-            // second parameter (value) is not really used,
-            // since TxDecisionMaker has it embedded
-            result = map.operate(k, null, decisionMaker);
+            rollbackCount = transaction.store.partialRollbackCount.get();
+            MVMap.Decision decision;
+            sizeTracker.beginUpdate();
+            try {
+                // second parameter (value) is not really used,
+                // since TxDecisionMaker has it embedded
+                result = map.operate(k, null, decisionMaker);
+                decision = decisionMaker.getDecision();
+                if (decision == MVMap.Decision.PUT) {
+                    sizeTracker.update(result, decisionMaker.getSelectedValue(), transaction, getSizeChange());
+                }
+            } finally {
+                sizeTracker.endUpdate();
+            }
 
-            MVMap.Decision decision = decisionMaker.getDecision();
             assert decision != null;
             assert decision != MVMap.Decision.REPEAT;
             blockingTransaction = decisionMaker.getBlockingTransaction();
             if (decision != MVMap.Decision.ABORT || blockingTransaction == null) {
-                hasChanges |= decision != MVMap.Decision.ABORT;
+                boolean changed = decision != MVMap.Decision.ABORT;
+                hasChanges |= changed;
+                if (!changed && mapName != null) {
+                    // the entry was handed over to us, but is not locked
+                    transaction.handOffWaitingTransactions(mapName, key);
+                }
                 V res = result == null ? null : result.getCurrentValue();
                 return res;
             }
@@ -358,7 +441,7 @@ private V set(Object key, TxDecisionMaker<K,V> decisionMaker) {
             if (mapName == null) {
                 mapName = map.getName();
             }
-        } while (transaction.waitFor(blockingTransaction, mapName, key));
+        } while (transaction.waitFor(blockingTransaction, mapName, key, rollbackCount));
 
         throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTION_LOCKED,
                 "Map entry <{0}> with key <{1}> and value {2} is locked by tx {3} and can not be updated by tx {4}"
@@ -536,21 +619,26 @@ Snapshot<K,VersionedValue<V>> createSnapshot() {
      * @return function's result
      */
     <R> R useSnapshot(BiFunction<RootReference<K,VersionedValue<V>>, BitSet, R> snapshotConsumer) {
-        // The purpose of the following loop is to get a coherent picture
+        // The purpose of the following is to get a coherent picture
         // of a state of two independent volatile / atomic variables,
         // which they had at some recent moment in time.
-        // In order to get such a "snapshot", we wait for a moment of silence,
-        // when neither of the variables concurrently changes it's value.
-        AtomicReference<BitSet> holder = transaction.store.committingTransactions;
-        BitSet committingTransactions = holder.get();
-        while (true) {
-            BitSet prevCommittingTransactions = committingTransactions;
-            RootReference<K,VersionedValue<V>> root = map.getRoot();
-            committingTransactions = holder.get();
-            if (committingTransactions == prevCommittingTransactions) {
-                return snapshotConsumer.apply(root, committingTransactions);
+        // Usually, none of the transactions starts or finishes committing in
+        // between, otherwise the read is repeated while holding the lock.
+        TransactionStore store = transaction.store;
+        StampedLock lock = store.committingTransactionsLock;
+        long stamp = lock.tryOptimisticRead();
+        BitSet committingTransactions = store.committingTransactions.get();
+        RootReference<K,VersionedValue<V>> root = map.getRoot();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                committingTransactions = store.committingTransactions.get();
+                root = map.getRoot();
+            } finally {
+                lock.unlockRead(stamp);
             }
         }
+        return snapshotConsumer.apply(root, committingTransactions);
     }
 
     /**
@@ -614,10 +702,25 @@ public boolean isClosed() {
     @Override
     public void clear() {
         // TODO truncate transactionally?
-        map.clear();
+        sizeTracker.beginUpdate();
+        try {
+            map.clear();
+            sizeTracker.clear();
+            getSizeChange().set(0);
+        } finally {
+            sizeTracker.endUpdate();
+        }
         hasChanges = true;
     }
 
+    private AtomicLong getSizeChange() {
+        AtomicLong sizeChange = this.sizeChange;
+        if (sizeChange == null) {
+            this.sizeChange = sizeChange = transaction.getSizeChange(map.getId());
+        }
+        return sizeChange;
+    }
+
     @Override
     public Set<Entry<K, V>> entrySet() {
         return new AbstractSet<Entry<K, V>>() {
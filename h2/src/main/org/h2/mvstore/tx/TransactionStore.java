@@ -11,13 +11,18 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
 import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.Cursor;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
+import org.h2.mvstore.Page;
 import org.h2.mvstore.RootReference;
 import org.h2.mvstore.rtree.MVRTreeMap;
 import org.h2.mvstore.rtree.SpatialDataType;
@@ -84,6 +89,39 @@ public class TransactionStore {
      */
     final AtomicReference<BitSet> committingTransactions = new AtomicReference<>(new BitSet());
 
+    /**
+     * Guards changes of committingTransactions. Readers, which need a picture
+     * of committingTransactions coherent with some map root references, first
+     * try an optimistic read, and fall back to a read lock if a transaction
+     * started or finished committing concurrently, instead of retrying.
+     */
+    final StampedLock committingTransactionsLock = new StampedLock();
+
+    /**
+     * Guards the queues of transactions waiting for map entries locked by
+     * other transactions. It is only used when a transaction has to wait.
+     */
+    final Object lockWaitSync = new Object();
+
+    /**
+     * The number of rollbacks to a savepoint. A transaction that has read an
+     * entry locked by another transaction only starts to wait if it was not
+     * changed in the meantime, as the entry may have been released already.
+     */
+    final AtomicLong partialRollbackCount = new AtomicLong();
+
+    /**
+     * The size trackers of the transactional maps, by map id.
+     */
+    private final ConcurrentHashMap<Integer,SizeTracker> sizeTrackers = new ConcurrentHashMap<>();
+
+    /**
+     * The number of open transactions that were recovered from the undo logs
+     * when the store was opened. The entries they changed are not known to
+     * size trackers.
+     */
+    private final AtomicInteger recoveredTransactions = new AtomicInteger();
+
     private boolean init;
 
     /**
@@ -112,6 +150,14 @@ public class TransactionStore {
 
     private static final char UNDO_LOG_OPEN = '.';
 
+    /**
+     * The number of undo log records of a transaction that are kept in memory,
+     * in the append buffer of its undo log map. Only larger transactions, or
+     * transactions that are open while the store is written, add them to the
+     * undo log map itself.
+     */
+    private static final int UNDO_LOG_BUFFER_SIZE = 256;
+
     /**
      * Hard limit on the number of concurrently opened transactions
      */
@@ -163,6 +209,7 @@ public TransactionStore(MVStore store, MetaType<?> metaDataType, DataType<?> dat
     MVMap.Builder<Long,Record<?, ?>> createUndoLogBuilder() {
         return new MVMap.Builder<Long,Record<?,?>>()
                 .singleWriter()
+                .appendBufferSize(UNDO_LOG_BUFFER_SIZE)
                 .keyType(LongDataType.INSTANCE)
                 .valueType(new Record.Type(this));
     }
@@ -234,8 +281,10 @@ public void init(RollbackListener listener) {
                                     assert lastUndoKey == null || getTransactionId(lastUndoKey) == transactionId;
                                     logId = lastUndoKey == null ? 0 : getLogId(lastUndoKey) + 1;
                                 }
-                                registerTransaction(transactionId, status, name, logId, timeoutMillis, 0,
-                                        IsolationLevel.READ_COMMITTED, listener);
+                                Transaction t = registerTransaction(transactionId, status, name, logId,
+                                        timeoutMillis, 0, IsolationLevel.READ_COMMITTED, listener);
+                                t.recovered = true;
+                                recoveredTransactions.incrementAndGet();
                                 continue;
                             }
                         }
@@ -480,9 +529,32 @@ void removeUndoLogRecord(int transactionId) {
      * @param map the map
      */
     void removeMap(TransactionMap<?,?> map) {
+        sizeTrackers.remove(map.map.getId());
         store.removeMap(map.map);
     }
 
+    /**
+     * Get the size tracker of a map, creating it if needed.
+     *
+     * @param map the map
+     * @return the size tracker
+     */
+    SizeTracker getSizeTracker(MVMap<?,?> map) {
+        return sizeTrackers.computeIfAbsent(map.getId(),
+                id -> new SizeTracker(this, recoveredTransactions.get() == 0));
+    }
+
+    /**
+     * Get the size tracker of a map.
+     *
+     * @param mapId the map id
+     * @return the size tracker, or null if the map was not opened for a
+     *         transaction
+     */
+    SizeTracker getSizeTracker(int mapId) {
+        return sizeTrackers.get(mapId);
+    }
+
     /**
      * Commit a transaction.
      *  @param t transaction to commit
@@ -501,7 +573,9 @@ void commit(Transaction t, boolean recovery) {
                 removeUndoLogRecord(transactionId);
                 cursor = undoLog.cursor(null);
             } else {
-                cursor = undoLog.cursor(null);
+                // short transactions have all records in the append buffer,
+                // iterate over them without adding them to the undo log map
+                cursor = undoLog.cursor(undoLog.getRootWithAppendBuffer(), null, null, false);
                 markUndoLogAsCommitted(transactionId);
             }
 
@@ -519,9 +593,24 @@ void commit(Transaction t, boolean recovery) {
                     if (map != null && !map.isClosed()) { // might be null if map was removed later
                         Object key = op.key;
                         commitDecisionMaker.setUndoKey(undoKey);
-                        // second parameter (value) is not really
-                        // used by CommitDecisionMaker
-                        map.operate(key, null, commitDecisionMaker);
+                        SizeTracker sizeTracker = getSizeTracker(mapId);
+                        if (sizeTracker == null) {
+                            // second parameter (value) is not really
+                            // used by CommitDecisionMaker
+                            map.operate(key, null, commitDecisionMaker);
+                        } else {
+                            sizeTracker.beginUpdate();
+                            try {
+                                VersionedValue<Object> oldValue = map.operate(key, null, commitDecisionMaker);
+                                if (commitDecisionMaker.getDecision() != MVMap.Decision.ABORT) {
+                                    // a committed value is not counted,
+                                    // just like a removed entry
+                                    sizeTracker.update(oldValue, null, t, null);
+                                }
+                            } finally {
+                                sizeTracker.endUpdate();
+                            }
+                        }
                     }
                 }
             } finally {
@@ -535,14 +624,16 @@ void commit(Transaction t, boolean recovery) {
     }
 
     private void flipCommittingTransactionsBit(int transactionId, boolean flag) {
-        boolean success;
-        do {
+        long stamp = committingTransactionsLock.writeLock();
+        try {
             BitSet original = committingTransactions.get();
             assert original.get(transactionId) != flag : flag ? "Double commit" : "Mysterious bit's disappearance";
             BitSet clone = (BitSet) original.clone();
             clone.set(transactionId, flag);
-            success = committingTransactions.compareAndSet(original, clone);
-        } while(!success);
+            committingTransactions.set(clone);
+        } finally {
+            committingTransactionsLock.unlockWrite(stamp);
+        }
     }
 
     <K,V> MVMap<K, VersionedValue<V>> openVersionedMap(String name, DataType<K> keyType, DataType<V> valueType) {
@@ -610,6 +701,9 @@ <K,V> MVMap<K,VersionedValue<V>> getMap(int mapId) {
      */
     void endTransaction(Transaction t, boolean hasChanges) {
         t.closeIt();
+        if (t.recovered) {
+            recoveredTransactions.decrementAndGet();
+        }
         int txId = t.transactionId;
         transactions.set(txId, null);
 
@@ -720,10 +814,15 @@ Transaction getTransaction(int transactionId) {
     void rollbackTo(Transaction t, long maxLogId, long toLogId) {
         int transactionId = t.getId();
         MVMap<Long,Record<?,?>> undoLog = undoLogs[transactionId];
-        RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, transactionId, toLogId, t.listener);
+        // records are removed from the end of the undo log, so that the ones
+        // still in its append buffer are dropped without being added to the map
+        Page<Long,Record<?,?>> root = undoLog.getRootWithAppendBuffer().root;
+        RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, t, toLogId, t.listener);
         for (long logId = maxLogId - 1; logId >= toLogId; logId--) {
             Long undoKey = getOperationId(transactionId, logId);
-            undoLog.operate(undoKey, null, decisionMaker);
+            if (decisionMaker.decide(undoLog.get(root, undoKey), null) == MVMap.Decision.REMOVE) {
+                undoLog.trimLast();
+            }
             decisionMaker.reset();
         }
     }
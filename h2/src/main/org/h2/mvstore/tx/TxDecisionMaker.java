@@ -54,6 +54,11 @@
     private       MVMap.Decision decision;
     private       V              lastValue;
 
+    /**
+     * The value selected for the last {@link MVMap.Decision#PUT} decision.
+     */
+    private       VersionedValue<V> selectedValue;
+
     TxDecisionMaker(int mapId, Transaction transaction) {
         this.mapId = mapId;
         this.transaction = transaction;
@@ -125,13 +130,16 @@ public final void reset() {
         blockingTransaction = null;
         decision = null;
         lastValue = null;
+        selectedValue = null;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     // always return value (ignores existingValue)
     public <T extends VersionedValue<V>> T selectValue(T existingValue, T providedValue) {
-        return (T) VersionedValueUncommitted.getInstance(undoKey, getNewValue(existingValue), lastValue);
+        T value = (T) VersionedValueUncommitted.getInstance(undoKey, getNewValue(existingValue), lastValue);
+        selectedValue = value;
+        return value;
     }
 
     /**
@@ -181,6 +189,10 @@ final V getLastValue() {
         return lastValue;
     }
 
+    final VersionedValue<V> getSelectedValue() {
+        return selectedValue;
+    }
+
     /**
      * Check whether specified transaction id belongs to "current" transaction
      * (transaction we are acting within).
@@ -10,6 +10,7 @@
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.BasicDataType;
+import org.h2.mvstore.type.ColumnarDataType;
 import org.h2.mvstore.type.DataType;
 import org.h2.mvstore.type.MetaType;
 import org.h2.mvstore.type.StatefulDataType;
@@ -50,12 +51,21 @@ private int getValMemory(T obj) {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void read(ByteBuffer buff, Object storage, int len) {
-        if (buff.get() == 0) {
+        byte mode = buff.get();
+        if (mode == 0) {
             // fast path (no op ids or null entries)
             for (int i = 0; i < len; i++) {
                 cast(storage)[i] = VersionedValueCommitted.getInstance(valueType.read(buff));
             }
+        } else if (mode == 2) {
+            // fast path, values are stored column by column
+            T[] values = valueType.createStorage(len);
+            ((ColumnarDataType<T>) valueType).readColumns(buff, values, len);
+            for (int i = 0; i < len; i++) {
+                cast(storage)[i] = VersionedValueCommitted.getInstance(values[i]);
+            }
         } else {
             // slow path (some entries may be null)
             for (int i = 0; i < len; i++) {
@@ -78,6 +88,7 @@ public VersionedValue<T> read(ByteBuffer buff) {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void write(WriteBuffer buff, Object storage, int len) {
         boolean fastPath = true;
         for (int i = 0; i < len; i++) {
@@ -86,7 +97,14 @@ public void write(WriteBuffer buff, Object storage, int len) {
                 fastPath = false;
             }
         }
-        if (fastPath) {
+        if (fastPath && valueType instanceof ColumnarDataType && ((ColumnarDataType<T>) valueType).isColumnar()) {
+            buff.put((byte) 2);
+            T[] values = valueType.createStorage(len);
+            for (int i = 0; i < len; i++) {
+                values[i] = cast(storage)[i].getCurrentValue();
+            }
+            ((ColumnarDataType<T>) valueType).writeColumns(buff, values, len);
+        } else if (fastPath) {
             buff.put((byte) 0);
             for (int i = 0; i < len; i++) {
                 VersionedValue<T> v = cast(storage)[i];
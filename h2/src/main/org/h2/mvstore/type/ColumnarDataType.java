@@ -0,0 +1,46 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.type;
+
+import java.nio.ByteBuffer;
+
+import org.h2.mvstore.WriteBuffer;
+
+/**
+ * A data type of composite values, which can also store all values of a page
+ * column by column, instead of one value after another.
+ *
+ * @param <T> the value type
+ */
+public interface ColumnarDataType<T> {
+
+    /**
+     * Whether new pages should be written column by column. Pages written
+     * column by column can always be read, regardless of this setting.
+     *
+     * @return true if columnar layout should be used
+     */
+    boolean isColumnar();
+
+    /**
+     * Write a list of values column by column.
+     *
+     * @param buff the target buffer
+     * @param storage the values
+     * @param len the number of values
+     */
+    void writeColumns(WriteBuffer buff, T[] storage, int len);
+
+    /**
+     * Read a list of values written by
+     * {@link #writeColumns(WriteBuffer, Object[], int)}.
+     *
+     * @param buff the source buffer
+     * @param storage the target array
+     * @param len the number of values
+     */
+    void readColumns(ByteBuffer buff, T[] storage, int len);
+}
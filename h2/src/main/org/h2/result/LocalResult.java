@@ -7,6 +7,8 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 
 import org.h2.engine.Database;
@@ -75,6 +77,18 @@ public static LocalResult forTable(SessionLocal session, Table table) {
     private boolean fetchPercent;
     private SortOrder withTiesSortOrder;
     private boolean limitsWereApplied;
+    /**
+     * The sorted rows that can be returned: the first rows are at the end of
+     * the queue, or {@code null} if all rows are collected.
+     */
+    private PriorityQueue<Value[]> topRows;
+    private int topRowCount;
+    private boolean topWithTies;
+    /**
+     * The rows that are equal to the last row of {@link #topRows} and aren't
+     * in that queue, for WITH TIES.
+     */
+    private ArrayList<Value[]> topTies;
     private ResultExternal external;
     private boolean distinct;
     private int[] distinctIndexes;
@@ -427,6 +441,8 @@ private void addRowInternal(Value... values) {
             } else {
                 rowCount = external.addRow(values);
             }
+        } else if (topRows != null) {
+            addTopRow(values);
         } else {
             rows.add(values);
             rowCount++;
@@ -449,10 +465,91 @@ public int getVisibleColumnCount() {
         return visibleColumnCount;
     }
 
+    /**
+     * Sets the number of the first sorted rows that can be returned, the sum of
+     * OFFSET and FETCH values. Other rows are discarded while they are added,
+     * so only this number of rows is held in memory. This method should be
+     * invoked after the sort order is set and before rows are added; it has no
+     * effect for distinct results and if there are more such rows than fit into
+     * memory.
+     *
+     * @param count the number of rows
+     * @param withTies whether rows equal to the last row should be returned too
+     */
+    public void setTopRows(long count, boolean withTies) {
+        if (sort == null || isAnyDistinct() || count <= 0 || count > maxMemoryRows || !rows.isEmpty()
+                || external != null) {
+            return;
+        }
+        topRowCount = (int) count;
+        topWithTies = withTies;
+        // the last of the first rows is at the head of the queue
+        topRows = new PriorityQueue<>(Math.min(topRowCount, 1_024) + 1, Collections.reverseOrder(sort));
+        if (withTies) {
+            topTies = Utils.newSmallArrayList();
+        }
+    }
+
+    private void addTopRow(Value[] values) {
+        PriorityQueue<Value[]> topRows = this.topRows;
+        if (topRows.size() < topRowCount) {
+            topRows.add(values);
+            rowCount++;
+            return;
+        }
+        int comp = sort.compare(values, topRows.peek());
+        if (comp > 0) {
+            return;
+        }
+        if (comp == 0) {
+            // earlier rows are preferred
+            if (topWithTies) {
+                topTies.add(values);
+                rowCount++;
+                checkTopTies();
+            }
+            return;
+        }
+        Value[] last = topRows.poll();
+        topRows.add(values);
+        if (topWithTies) {
+            if (sort.compare(last, topRows.peek()) == 0) {
+                topTies.add(last);
+                rowCount++;
+                checkTopTies();
+                return;
+            }
+            rowCount -= topTies.size();
+            topTies.clear();
+        }
+    }
+
+    private void checkTopTies() {
+        if (rowCount > maxMemoryRows) {
+            // too many ties, collect all rows as usual
+            moveTopRows();
+            if (rows.size() > maxMemoryRows) {
+                addRowsToDisk();
+            }
+        }
+    }
+
+    private void moveTopRows() {
+        rows.addAll(topRows);
+        topRows = null;
+        if (topTies != null) {
+            rows.addAll(topTies);
+            topTies = null;
+        }
+    }
+
     /**
      * This method is called after all rows have been added.
      */
     public void done() {
+        if (topRows != null) {
+            moveTopRows();
+        }
         if (external != null) {
             addRowsToDisk();
         } else {
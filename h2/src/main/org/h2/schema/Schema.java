@@ -777,6 +777,9 @@ public Table createTable(CreateTableData data) {
                 }
                 data.tableEngine = tableEngine;
             }
+            if (data.partitioning != null) {
+                throw DbException.getUnsupportedException("PARTITION BY with ENGINE " + tableEngine);
+            }
             if (data.tableEngineParams == null) {
                 data.tableEngineParams = this.tableEngineParams;
             }
@@ -66,4 +66,10 @@ public boolean isDeterministic() {
         return function.isDeterministic();
     }
 
+    @Override
+    boolean canHashJoin() {
+        // the arguments can't reference columns of other tables
+        return true;
+    }
+
 }
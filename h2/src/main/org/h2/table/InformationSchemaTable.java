@@ -812,6 +812,7 @@ public InformationSchemaTable(Schema schema, int id, int type) {
                     column("SESSION_STATE"), //
                     column("BLOCKER_ID", TypeInfo.TYPE_INTEGER), //
                     column("SLEEP_SINCE", TypeInfo.TYPE_TIMESTAMP_TZ), //
+                    column("LOCK_WAIT_TIME", TypeInfo.TYPE_BIGINT), //
             };
             break;
         case SESSION_STATE:
@@ -2868,7 +2869,9 @@ private void sessions(SessionLocal session, ArrayList<Row> rows, SessionLocal s)
                 // BLOCKER_ID
                 blockingSessionId == 0 ? null : ValueInteger.get(blockingSessionId),
                 // SLEEP_SINCE
-                s.getState() == State.SLEEP ? s.getCommandStartOrEnd() : null
+                s.getState() == State.SLEEP ? s.getCommandStartOrEnd() : null,
+                // LOCK_WAIT_TIME
+                ValueBigint.get(s.getLockWaitTime())
         );
     }
 
@@ -2971,6 +2974,7 @@ private void settings(SessionLocal session, ArrayList<Row> rows) {
         }
         Store store = database.getStore();
         MVStore mvStore = store.getMvStore();
+        add(session, rows, "info.LAST_STORED_VERSION", Long.toString(mvStore.getCurrentVersion() - 1));
         FileStore fs = mvStore.getFileStore();
         if (fs != null) {
             add(session, rows,
@@ -0,0 +1,606 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.table;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import org.h2.api.ErrorCode;
+import org.h2.engine.Database;
+import org.h2.engine.SessionLocal;
+import org.h2.expression.condition.Comparison;
+import org.h2.index.IndexCondition;
+import org.h2.message.DbException;
+import org.h2.result.SearchRow;
+import org.h2.util.HasSQL;
+import org.h2.util.DateTimeUtils;
+import org.h2.util.ParserUtil;
+import org.h2.util.Utils;
+import org.h2.value.CompareMode;
+import org.h2.value.DataType;
+import org.h2.value.ExtTypeInfoRow;
+import org.h2.value.TypeInfo;
+import org.h2.value.Value;
+import org.h2.value.ValueCollectionBase;
+import org.h2.value.ValueDecfloat;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueTimeTimeZone;
+import org.h2.value.ValueTimestampTimeZone;
+
+/**
+ * The partitioning of a table. Each row belongs to exactly one partition,
+ * which is determined by the value of the partition column:
+ * <ul>
+ * <li>RANGE: the first partition with an upper bound above the value, if
+ * any; the upper bound of the last partition may be MAXVALUE</li>
+ * <li>LIST: the partition that lists the value, if any</li>
+ * <li>HASH: a hash code of the value modulo the number of partitions; the
+ * hash code only depends on the content of the value, so that it is the same
+ * after a restart, and values that compare equal have the same hash code</li>
+ * </ul>
+ * Instances are immutable; adding or dropping a partition creates a new
+ * partitioning.
+ */
+public final class Partitioning {
+
+    /**
+     * The partitioning method.
+     */
+    public enum Type {
+
+        /**
+         * Partitions are ranges of values.
+         */
+        RANGE,
+
+        /**
+         * Partitions are lists of values.
+         */
+        LIST,
+
+        /**
+         * Partitions are determined by the hash code of the value.
+         */
+        HASH;
+
+    }
+
+    /**
+     * A partition.
+     */
+    public static final class Partition {
+
+        private final String name;
+
+        private final Value[] values;
+
+        /**
+         * Create a new partition.
+         *
+         * @param name the name
+         * @param values the exclusive upper bound of a range partition (null
+         *            for MAXVALUE), the values of a list partition, or null
+         *            for a hash partition
+         */
+        public Partition(String name, Value[] values) {
+            this.name = name;
+            this.values = values;
+        }
+
+        /**
+         * Get the name of this partition.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    private final Type type;
+
+    private final String columnName;
+
+    private final Partition[] partitions;
+
+    /**
+     * The partition column, or null if this partitioning is not bound to a
+     * table.
+     */
+    private final Column column;
+
+    private final Database database;
+
+    private final CompareMode compareMode;
+
+    /**
+     * The partitions of the values of a list partitioning.
+     */
+    private final TreeMap<Value, Integer> listValues;
+
+    /**
+     * Create a new partitioning that is not yet bound to a table.
+     *
+     * @param type the partitioning method
+     * @param columnName the name of the partition column
+     * @param partitions the partitions
+     */
+    public Partitioning(Type type, String columnName, ArrayList<Partition> partitions) {
+        this(type, columnName, partitions.toArray(new Partition[0]), null);
+    }
+
+    private Partitioning(Type type, String columnName, Partition[] partitions, Column column) {
+        this.type = type;
+        this.columnName = columnName;
+        this.partitions = partitions;
+        this.column = column;
+        if (column == null) {
+            database = null;
+            compareMode = null;
+            listValues = null;
+            return;
+        }
+        database = column.getTable().getDatabase();
+        compareMode = database.getCompareMode();
+        if (type == Type.HASH && !CompareMode.OFF.equals(compareMode.getName())
+                && hasCharacterString(column.getType())) {
+            // equal strings of a collation may have different hash codes
+            throw DbException.getUnsupportedException("HASH partitioning of a character string column with COLLATION "
+                    + compareMode.getName());
+        }
+        if (partitions.length == 0) {
+            throw DbException.getInvalidValueException("partition count", 0);
+        }
+        TreeMap<String, Partition> names = new TreeMap<>();
+        for (Partition p : partitions) {
+            if (names.put(p.name, p) != null) {
+                throw DbException.getInvalidValueException("partition", p.name);
+            }
+        }
+        if (type == Type.LIST) {
+            listValues = new TreeMap<>(this::compare);
+            for (int i = 0; i < partitions.length; i++) {
+                for (Value v : partitions[i].values) {
+                    if (listValues.put(v, i) != null) {
+                        throw DbException.getInvalidValueException("partition value", v.getTraceSQL());
+                    }
+                }
+            }
+        } else {
+            listValues = null;
+            if (type == Type.RANGE) {
+                for (int i = 0, last = partitions.length - 1; i <= last; i++) {
+                    Value bound = partitions[i].values[0];
+                    if (bound == null ? i < last
+                            : bound == ValueNull.INSTANCE
+                                    || i > 0 && compare(partitions[i - 1].values[0], bound) >= 0) {
+                        throw DbException.getInvalidValueException("partition bound",
+                                bound == null ? "MAXVALUE" : bound.getTraceSQL());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Bind this partitioning to a table. The partition column is resolved
+     * and the values of the partitions are converted to its data type.
+     *
+     * @param table the table
+     * @return the bound partitioning
+     */
+    public Partitioning bind(Table table) {
+        Column c = table.getColumn(column != null ? column.getName() : columnName);
+        Database db = table.getDatabase();
+        Partition[] list = new Partition[partitions.length];
+        for (int i = 0; i < list.length; i++) {
+            Partition p = partitions[i];
+            Value[] values = p.values;
+            if (values != null) {
+                values = values.clone();
+                for (int j = 0; j < values.length; j++) {
+                    if (values[j] != null) {
+                        values[j] = c.convert(db, values[j]);
+                    }
+                }
+            }
+            list[i] = new Partition(p.name, values);
+        }
+        return new Partitioning(type, c.getName(), list, c);
+    }
+
+    /**
+     * Create a new partitioning with an additional partition. A range
+     * partition is added after the last partition, which must not have the
+     * upper bound MAXVALUE. The values of a list partition must not be listed
+     * in another partition. Partitions can not be added to a hash partitioning.
+     *
+     * @param partition the new partition
+     * @return the new partitioning
+     */
+    public Partitioning addPartition(Partition partition) {
+        if (type == Type.HASH) {
+            throw DbException.getUnsupportedException("ADD PARTITION to a hash partitioning");
+        }
+        int length = partitions.length;
+        Partition[] list = new Partition[length + 1];
+        System.arraycopy(partitions, 0, list, 0, length);
+        list[length] = partition;
+        return new Partitioning(type, columnName, list, null).bind(column.getTable());
+    }
+
+    /**
+     * Create a new partitioning without the given partition. The rows of a
+     * dropped range partition are removed; new rows with values in its range
+     * are added to the next partition.
+     *
+     * @param index the index of the partition
+     * @return the new partitioning
+     */
+    public Partitioning dropPartition(int index) {
+        if (type == Type.HASH) {
+            throw DbException.getUnsupportedException("DROP PARTITION of a hash partitioning");
+        }
+        int length = partitions.length;
+        Partition[] list = new Partition[length - 1];
+        System.arraycopy(partitions, 0, list, 0, index);
+        System.arraycopy(partitions, index + 1, list, index, length - index - 1);
+        return new Partitioning(type, columnName, list, column);
+    }
+
+    /**
+     * Get the index of the partition with the given name.
+     *
+     * @param name the name of the partition
+     * @return the index
+     * @throws DbException if there is no such partition
+     */
+    public int getPartitionIndex(String name) {
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i].name.equals(name)) {
+                return i;
+            }
+        }
+        throw DbException.getInvalidValueException("partition", name);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the partition column.
+     *
+     * @return the column
+     */
+    public Column getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the number of partitions.
+     *
+     * @return the number of partitions
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Get a partition.
+     *
+     * @param index the index of the partition
+     * @return the partition
+     */
+    public Partition getPartition(int index) {
+        return partitions[index];
+    }
+
+    /**
+     * Get the partition of a row.
+     *
+     * @param row the row
+     * @return the index of the partition
+     * @throws DbException if the row does not belong to any partition
+     */
+    public int getPartition(SearchRow row) {
+        Value v = row.getValue(column.getColumnId());
+        int index = getPartition(v);
+        if (index < 0) {
+            StringBuilder builder = new StringBuilder("PARTITION OF ");
+            column.getTable().getSQL(builder, HasSQL.TRACE_SQL_FLAGS).append(" FOR ");
+            column.getSQL(builder, HasSQL.TRACE_SQL_FLAGS).append(" = ").append(v.getTraceSQL());
+            throw DbException.get(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, builder.toString());
+        }
+        return index;
+    }
+
+    /**
+     * Get the partition of a value of the partition column.
+     *
+     * @param v the value, converted to the data type of the column
+     * @return the index of the partition, or -1 if there is none
+     */
+    public int getPartition(Value v) {
+        switch (type) {
+        case RANGE: {
+            if (v == ValueNull.INSTANCE) {
+                return -1;
+            }
+            int low = 0, high = partitions.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                Value bound = partitions[mid].values[0];
+                if (bound == null || compare(v, bound) < 0) {
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low < partitions.length ? low : -1;
+        }
+        case LIST: {
+            Integer index = listValues.get(v);
+            return index != null ? index : -1;
+        }
+        default:
+            return Math.floorMod(getHash(v), partitions.length);
+        }
+    }
+
+    /**
+     * Get the hash code of a value for a hash partitioning. Unlike
+     * {@link Value#hashCode()}, it doesn't depend on the class of the value,
+     * and values that compare equal have the same hash code.
+     *
+     * @param v the value
+     * @return the hash code
+     */
+    static int getHash(Value v) {
+        switch (v.getValueType()) {
+        case Value.NULL:
+            return 0;
+        case Value.CHAR:
+            // trailing spaces are ignored in comparisons
+            return v.convertToChar().getString().hashCode();
+        case Value.VARCHAR:
+        case Value.CLOB:
+            return v.getString().hashCode();
+        case Value.VARCHAR_IGNORECASE: {
+            String s = v.getString();
+            int h = 0;
+            for (int i = 0, l = s.length(); i < l;) {
+                int cp = s.codePointAt(i);
+                h = 31 * h + Character.toLowerCase(Character.toUpperCase(cp));
+                i += Character.charCount(cp);
+            }
+            return h;
+        }
+        case Value.BINARY:
+        case Value.VARBINARY:
+        case Value.JAVA_OBJECT:
+        case Value.GEOMETRY:
+        case Value.JSON:
+            return Utils.getByteArrayHash(v.getBytesNoCopy());
+        case Value.NUMERIC:
+            // the scale is ignored in comparisons
+            return v.getBigDecimal().stripTrailingZeros().hashCode();
+        case Value.DECFLOAT:
+            return ((ValueDecfloat) v).isFinite() ? v.getBigDecimal().stripTrailingZeros().hashCode()
+                    : v.getString().hashCode();
+        case Value.TIME_TZ: {
+            ValueTimeTimeZone t = (ValueTimeTimeZone) v;
+            return Long.hashCode(t.getNanos() - t.getTimeZoneOffsetSeconds() * DateTimeUtils.NANOS_PER_SECOND);
+        }
+        case Value.TIMESTAMP_TZ: {
+            ValueTimestampTimeZone t = (ValueTimestampTimeZone) v;
+            return Long.hashCode(DateTimeUtils.absoluteDayFromDateValue(t.getDateValue()) * DateTimeUtils.NANOS_PER_DAY
+                    + t.getTimeNanos() - t.getTimeZoneOffsetSeconds() * DateTimeUtils.NANOS_PER_SECOND);
+        }
+        case Value.ARRAY:
+        case Value.ROW: {
+            int h = v.getValueType();
+            for (Value e : ((ValueCollectionBase) v).getList()) {
+                h = 31 * h + getHash(e);
+            }
+            return h;
+        }
+        default:
+            // hash codes of other values only depend on their content
+            return v.hashCode();
+        }
+    }
+
+    private static boolean hasCharacterString(TypeInfo type) {
+        switch (type.getValueType()) {
+        case Value.ARRAY: {
+            TypeInfo componentType = (TypeInfo) type.getExtTypeInfo();
+            return componentType == null || hasCharacterString(componentType);
+        }
+        case Value.ROW:
+            for (Map.Entry<String, TypeInfo> field : ((ExtTypeInfoRow) type.getExtTypeInfo()).getFields()) {
+                if (hasCharacterString(field.getValue())) {
+                    return true;
+                }
+            }
+            return false;
+        default:
+            return DataType.isCharacterStringType(type.getValueType());
+        }
+    }
+
+    /**
+     * Get the partitions that may contain rows matching the given conditions
+     * on the partition column.
+     *
+     * @param session the session
+     * @param conditions the index conditions on the partition column
+     * @return the partitions
+     */
+    public BitSet getPartitions(SessionLocal session, ArrayList<IndexCondition> conditions) {
+        int count = partitions.length;
+        BitSet result = new BitSet(count);
+        result.set(0, count);
+        for (IndexCondition condition : conditions) {
+            if (result.isEmpty()) {
+                break;
+            }
+            if (condition.isAlwaysFalse()) {
+                result.clear();
+                break;
+            }
+            BitSet set;
+            switch (condition.getCompareType()) {
+            case Comparison.IN_LIST:
+                set = new BitSet(count);
+                for (Value v : condition.getCurrentValueList(session)) {
+                    if (v != ValueNull.INSTANCE && !addPartition(session, set, v)) {
+                        set = null;
+                        break;
+                    }
+                }
+                break;
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                Value v = condition.getCurrentValue(session);
+                set = new BitSet(count);
+                if (v == ValueNull.INSTANCE && condition.getCompareType() == Comparison.EQUAL
+                        || addPartition(session, set, v)) {
+                    break;
+                }
+                set = null;
+                break;
+            }
+            default:
+                set = null;
+                if (type == Type.HASH || condition.getCompareType() == Comparison.IN_QUERY) {
+                    break;
+                }
+                Value v = condition.getCurrentValue(session);
+                if (v == ValueNull.INSTANCE) {
+                    break;
+                }
+                int compareType = condition.getCompareType();
+                boolean strict = compareType == Comparison.BIGGER || compareType == Comparison.SMALLER;
+                if (condition.isStart()) {
+                    set = getPartitions(session, v, null, strict);
+                } else if (condition.isEnd()) {
+                    set = getPartitions(session, null, v, strict);
+                }
+            }
+            if (set != null) {
+                result.and(set);
+            }
+        }
+        return result;
+    }
+
+    private boolean addPartition(SessionLocal session, BitSet set, Value v) {
+        try {
+            v = column.convert(session, v);
+        } catch (DbException e) {
+            return false;
+        }
+        int index = getPartition(v);
+        if (index >= 0) {
+            set.set(index);
+        }
+        return true;
+    }
+
+    private BitSet getPartitions(SessionLocal session, Value min, Value max, boolean strict) {
+        int count = partitions.length;
+        BitSet set = new BitSet(count);
+        // the lowest result of comparing a value with the bound that matches
+        int limit = strict ? 1 : 0;
+        if (type == Type.RANGE) {
+            for (int i = 0; i < count; i++) {
+                Value upper = partitions[i].values[0];
+                if (max != null && i > 0 && session.compare(partitions[i - 1].values[0], max) >= 1 - limit) {
+                    break;
+                }
+                if (min == null || upper == null || session.compare(min, upper) < 0) {
+                    set.set(i);
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                for (Value v : partitions[i].values) {
+                    if (v != ValueNull.INSTANCE && (min == null || session.compare(v, min) >= limit)
+                            && (max == null || session.compare(max, v) >= limit)) {
+                        set.set(i);
+                        break;
+                    }
+                }
+            }
+        }
+        return set;
+    }
+
+    private int compare(Value a, Value b) {
+        return a.compareTo(b, database, compareMode);
+    }
+
+    /**
+     * Append the SQL of this partitioning to the specified builder.
+     *
+     * @param builder the string builder
+     * @param sqlFlags formatting flags
+     * @return the specified string builder
+     */
+    public StringBuilder getSQL(StringBuilder builder, int sqlFlags) {
+        builder.append("PARTITION BY ").append(type.name()).append(" (");
+        if (column != null) {
+            column.getSQL(builder, sqlFlags);
+        } else {
+            ParserUtil.quoteIdentifier(builder, columnName, sqlFlags);
+        }
+        builder.append(')');
+        if (type == Type.HASH) {
+            return builder.append(" PARTITIONS ").append(partitions.length);
+        }
+        builder.append(" (");
+        for (int i = 0; i < partitions.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            getSQL(builder, partitions[i], sqlFlags);
+        }
+        return builder.append(')');
+    }
+
+    /**
+     * Append the SQL of a partition of this partitioning to the specified
+     * builder.
+     *
+     * @param builder the string builder
+     * @param partition the partition
+     * @param sqlFlags formatting flags
+     * @return the specified string builder
+     */
+    public StringBuilder getSQL(StringBuilder builder, Partition partition, int sqlFlags) {
+        ParserUtil.quoteIdentifier(builder.append("PARTITION "), partition.name, sqlFlags);
+        if (type == Type.RANGE) {
+            Value bound = partition.values[0];
+            builder.append(" VALUES LESS THAN ");
+            if (bound == null) {
+                return builder.append("MAXVALUE");
+            }
+            return bound.getSQL(builder.append('('), sqlFlags).append(')');
+        }
+        builder.append(" VALUES IN (");
+        for (int i = 0; i < partition.values.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            partition.values[i].getSQL(builder, sqlFlags);
+        }
+        return builder.append(')');
+    }
+
+}
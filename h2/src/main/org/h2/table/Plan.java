@@ -113,6 +113,10 @@ public double calculateCost(SessionLocal session, AllColumnsForPlan allColumnsSe
                 t.debug("Plan       :   for table filter {0}", tableFilter);
             }
             PlanItem item = tableFilter.getBestPlanItem(session, allFilters, i, allColumnsSet);
+            if (i > 0) {
+                TableFilter outer = allFilters[i - 1];
+                tableFilter.checkMergeJoin(item, outer, planItems.get(outer));
+            }
             planItems.put(tableFilter, item);
             if (t.isDebugEnabled()) {
                 t.debug("Plan       :   best plan item cost {0} index {1}",
@@ -195,6 +195,7 @@ public final PlanItem getBestPlanItem(SessionLocal session, int[] masks, TableFi
         PlanItem item = new PlanItem();
         item.cost = i.getCost(session, masks, filters, filter, sortOrder, allColumnsSet);
         item.setIndex(i);
+        checkHashJoin(session, masks, filters, filter, sortOrder, allColumnsSet, item);
         return item;
     }
 
@@ -304,6 +305,12 @@ public boolean isDeterministic() {
         return viewQuery.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR);
     }
 
+    @Override
+    boolean canHashJoin() {
+        // correlated queries depend on the current rows of outer queries
+        return isDeterministic() && viewQuery.isEverything(ExpressionVisitor.INDEPENDENT_VISITOR);
+    }
+
     @Override
     public final void addDependencies(HashSet<DbObject> dependencies) {
         super.addDependencies(dependencies);
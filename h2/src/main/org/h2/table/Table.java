@@ -23,6 +23,7 @@
 import org.h2.engine.Right;
 import org.h2.engine.SessionLocal;
 import org.h2.expression.ExpressionVisitor;
+import org.h2.index.HashJoinIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
@@ -847,9 +848,56 @@ public PlanItem getBestPlanItem(SessionLocal session, int[] masks,
                 }
             }
         }
+        checkHashJoin(session, masks, filters, filter, sortOrder, allColumnsSet, item);
         return item;
     }
 
+    /**
+     * Use a hash join index for the plan item if this table is joined in a
+     * query on a column without a suitable index, and if the hash join is
+     * cheaper than the index of the plan item.
+     *
+     * @param session the session
+     * @param masks per-column comparison bit masks, null means 'always false',
+     *              see constants in IndexCondition
+     * @param filters all joined table filters
+     * @param filter the current table filter index
+     * @param sortOrder the sort order
+     * @param allColumnsSet the set of all columns
+     * @param item the plan item
+     */
+    final void checkHashJoin(SessionLocal session, int[] masks, TableFilter[] filters, int filter,
+            SortOrder sortOrder, AllColumnsForPlan allColumnsSet, PlanItem item) {
+        if (masks == null || filter <= 0 || getIndexHints(filters, filter) != null
+                || filters[filter].getSelect() == null || !canHashJoin()) {
+            return;
+        }
+        HashJoinIndex index = HashJoinIndex.get(this, masks);
+        if (index != null) {
+            double cost = index.getCost(session, masks, filters, filter, sortOrder, allColumnsSet);
+            Trace t = session.getTrace();
+            if (t.isDebugEnabled()) {
+                t.debug("Table      :     potential plan item cost {0} index {1}", cost, index.getPlanSQL());
+            }
+            if (cost < item.cost) {
+                item.cost = cost;
+                item.setIndex(index);
+            }
+        }
+    }
+
+    /**
+     * Check whether the rows of this table can be read once per execution of
+     * a query into the hash table of a hash join. The rows must not depend on
+     * the current rows of other tables, and reading them must not have side
+     * effects.
+     *
+     * @return whether hash joins with this table are possible
+     */
+    boolean canHashJoin() {
+        return getTableType() == TableType.TABLE;
+    }
+
     private static boolean isIndexExcludedByHints(IndexHints indexHints, Index index) {
         return indexHints != null && !indexHints.allowIndex(index);
     }
@@ -1433,4 +1481,13 @@ public int getMainIndexColumn() {
         return SearchRow.ROWID_INDEX;
     }
 
+    /**
+     * Get the partitioning of this table.
+     *
+     * @return the partitioning, or null if the table is not partitioned
+     */
+    public Partitioning getPartitioning() {
+        return null;
+    }
+
 }
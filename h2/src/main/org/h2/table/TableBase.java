@@ -148,6 +148,10 @@ private String getCreateSQL(boolean forMeta) {
         if (isHidden) {
             buff.append("\nHIDDEN");
         }
+        Partitioning partitioning = getPartitioning();
+        if (partitioning != null) {
+            partitioning.getSQL(buff.append('\n'), DEFAULT_SQL_FLAGS);
+        }
         return buff.toString();
     }
 
@@ -18,8 +18,10 @@
 import org.h2.engine.Right;
 import org.h2.engine.SessionLocal;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
 import org.h2.expression.condition.Comparison;
 import org.h2.expression.condition.ConditionAndOr;
+import org.h2.index.HashJoinIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexCondition;
 import org.h2.index.IndexCursor;
@@ -261,7 +263,9 @@ public PlanItem getBestPlanItem(SessionLocal s, TableFilter[] filters, int filte
             do {
                 filter++;
             } while (filters[filter] != join);
-            item.setJoinPlan(join.getBestPlanItem(s, filters, filter, allColumnsSet));
+            PlanItem joinItem = join.getBestPlanItem(s, filters, filter, allColumnsSet);
+            join.checkMergeJoin(joinItem, this, item);
+            item.setJoinPlan(joinItem);
             // TODO optimizer: calculate cost of a join: should use separate
             // expected row number and lookup cost
             item.cost += item.cost * item.getJoinPlan().cost;
@@ -269,6 +273,67 @@ public PlanItem getBestPlanItem(SessionLocal s, TableFilter[] filters, int filte
         return item;
     }
 
+    /**
+     * Check whether the lookups of this table filter with the index of the
+     * given plan item are made in the order of this index, because the rows of
+     * the outer table filter are read in the order of the joined column. If so,
+     * every lookup continues from the position of the previous lookup, as in a
+     * merge join, and the cost of the plan item is reduced. This isn't done
+     * if the outer table filter reads at most one row.
+     *
+     * @param item the plan item of this table filter
+     * @param outer the outer table filter
+     * @param outerItem the plan item of the outer table filter
+     */
+    void checkMergeJoin(PlanItem item, TableFilter outer, PlanItem outerItem) {
+        Index index = item.getIndex();
+        Index outerIndex = outerItem.getIndex();
+        if (select == null || table.getPartitioning() != null || index.getIndexType().isScan()
+                || !isOrderedBy(index, null) || isSingleRowLookup(outerIndex, outerItem.getMasks())) {
+            return;
+        }
+        Column column = index.getIndexColumns()[0].column;
+        for (IndexCondition condition : indexConditions) {
+            if (condition.getCompareType() == Comparison.EQUAL && condition.getColumn() == column) {
+                Expression e = condition.getExpression();
+                if (e instanceof ExpressionColumn) {
+                    ExpressionColumn c = (ExpressionColumn) e;
+                    if (c.getTableFilter() == outer && outer.isOrderedBy(outerIndex, c.getColumn())) {
+                        item.setMergeJoin(true);
+                        // the rows are read sequentially, without a search
+                        // from the root of the index for every lookup
+                        item.cost /= 2;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isSingleRowLookup(Index index, int[] masks) {
+        IndexColumn[] columns = index.getIndexColumns();
+        if (masks == null || columns == null || !index.getIndexType().isUnique()) {
+            return false;
+        }
+        for (IndexColumn c : columns) {
+            int id = c.column.getColumnId();
+            if (id < 0 || (masks[id] & IndexCondition.EQUALITY) != IndexCondition.EQUALITY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isOrderedBy(Index index, Column column) {
+        if (index.getIndexType().isScan()) {
+            return column != null && table.getMainIndexColumn() == column.getColumnId();
+        }
+        IndexColumn[] columns = index.getIndexColumns();
+        return index.canGetFirstOrLast() && columns != null && columns.length > 0
+                && (column == null || columns[0].column == column)
+                && (columns[0].sortType & SortOrder.DESCENDING) == 0;
+    }
+
     /**
      * Set what plan item (index, cost, masks) to use.
      *
@@ -281,6 +346,7 @@ public void setPlanItem(PlanItem item) {
             return;
         }
         setIndex(item.getIndex());
+        cursor.setMergeJoin(item.isMergeJoin());
         masks = item.getMasks();
         if (nestedJoin != null) {
             if (item.getNestedJoinPlan() != null) {
@@ -318,6 +384,18 @@ private void setScanIndexes() {
      * can not be used, and optimize the conditions.
      */
     public void prepare() {
+        Partitioning partitioning = table.getPartitioning();
+        if (partitioning != null) {
+            // conditions on the partition column select the partitions to read
+            // even if the index can not use them
+            ArrayList<IndexCondition> partitionConditions = Utils.newSmallArrayList();
+            for (IndexCondition condition : indexConditions) {
+                if (condition.isAlwaysFalse() || condition.getColumn() == partitioning.getColumn()) {
+                    partitionConditions.add(condition);
+                }
+            }
+            cursor.setPartitionConditions(partitionConditions);
+        }
         // forget all unused index conditions
         // the indexConditions list may be modified here
         for (int i = 0; i < indexConditions.size(); i++) {
@@ -360,6 +438,10 @@ public void prepare() {
     public void startQuery(SessionLocal s) {
         this.session = s;
         scanCount = 0;
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).reset();
+        }
+        cursor.resetMergeJoin();
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -368,6 +450,23 @@ public void startQuery(SessionLocal s) {
         }
     }
 
+    /**
+     * End the query. This will release the hash tables of hash joins and the
+     * cursors of merge joins.
+     */
+    public void endQuery() {
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).reset();
+        }
+        cursor.resetMergeJoin();
+        if (nestedJoin != null) {
+            nestedJoin.endQuery();
+        }
+        if (join != null) {
+            join.endQuery();
+        }
+    }
+
     /**
      * Reset to the current position.
      */
@@ -757,6 +856,9 @@ public StringBuilder getPlanSQL(StringBuilder builder, boolean isJoin, int sqlFl
         if (index != null && (sqlFlags & HasSQL.ADD_PLAN_INFORMATION) != 0) {
             builder.append('\n');
             StringBuilder planBuilder = new StringBuilder().append("/* ").append(index.getPlanSQL());
+            if (cursor.isMergeJoin()) {
+                planBuilder.append(" merge join");
+            }
             if (!indexConditions.isEmpty()) {
                 planBuilder.append(": ");
                 for (int i = 0, size = indexConditions.size(); i < size; i++) {
@@ -327,7 +327,7 @@ private void dumpMVStoreFile(PrintWriter writer, String fileName) {
                 if (!mapName.startsWith("table.")) {
                     continue;
                 }
-                String tableId = mapName.substring("table.".length());
+                String tableId = getTableId(mapName);
                 if (Integer.parseInt(tableId) == 0) {
                     TransactionMap<Long, Row> dataMap = store.begin().openMap(mapName);
                     Iterator<Long> dataIt = dataMap.keyIterator(null);
@@ -350,7 +350,7 @@ private void dumpMVStoreFile(PrintWriter writer, String fileName) {
                 if (!mapName.startsWith("table.")) {
                     continue;
                 }
-                String tableId = mapName.substring("table.".length());
+                String tableId = getTableId(mapName);
                 if (Integer.parseInt(tableId) == 0) {
                     continue;
                 }
@@ -604,6 +604,13 @@ private static boolean isSchemaObjectTypeDelayed(MetaRecord m) {
         return false;
     }
 
+    private static String getTableId(String mapName) {
+        // the maps of the partitions of a table are named
+        // table.<id>.<partition name>
+        int start = "table.".length(), end = mapName.indexOf('.', start);
+        return mapName.substring(start, end < 0 ? mapName.length() : end);
+    }
+
     private void createTemporaryTable(PrintWriter writer) {
         if (!objectIdSet.contains(storageId)) {
             objectIdSet.add(storageId);
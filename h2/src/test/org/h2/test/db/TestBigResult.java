@@ -16,6 +16,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 
 import org.h2.message.TraceSystem;
 import org.h2.store.FileLister;
@@ -53,6 +54,9 @@ public void test() throws SQLException {
         testLargeUpdateDelete();
         testCloseConnectionDelete();
         testOrderGroup();
+        testLargeGroup();
+        testExternalSort();
+        testTopRows();
         testLimitBufferedResult();
         deleteDb("bigResult");
     }
@@ -398,6 +402,132 @@ private void testCloseConnectionDelete() throws SQLException {
         }
     }
 
+    private void testLargeGroup() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        int count = getSize(3000, 20000);
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, G INT, S VARCHAR, D DECIMAL(10, 2))");
+        stat.execute("INSERT INTO TEST SELECT X, MOD(X * 7, " + count / 3 + "), 'g' || MOD(X, 100), X / 10 "
+                + "FROM SYSTEM_RANGE(1, " + count + ")");
+        stat.execute("CREATE TABLE CHILD(ID INT PRIMARY KEY, PID INT, V INT)");
+        stat.execute("INSERT INTO CHILD SELECT X, X * 2, X FROM SYSTEM_RANGE(1, " + count / 4 + ")");
+        String[] queries = {
+                "SELECT G, COUNT(*), SUM(ID), MIN(S), MAX(D) FROM TEST GROUP BY G",
+                "SELECT G, S, COUNT(*) FROM TEST GROUP BY G, S HAVING COUNT(*) > 1 ORDER BY G, S OFFSET 10 ROWS",
+                "SELECT D, COUNT(C.V), SUM(C.V), LISTAGG(T.ID, ',') WITHIN GROUP (ORDER BY T.ID) "
+                        + "FROM TEST T LEFT JOIN CHILD C ON C.PID = T.ID GROUP BY D",
+                "SELECT COUNT(*), SUM(ID) FROM TEST",
+        };
+        ArrayList<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(getResult(stat.executeQuery(query)));
+        }
+        // groups that don't fit into memory are partitioned
+        stat.execute("SET MAX_MEMORY_ROWS 10");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], expected.get(i), getResult(stat.executeQuery(queries[i])));
+        }
+        conn.close();
+    }
+
+    private void testExternalSort() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        int count = getSize(3000, 20000);
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, G INT, S VARCHAR)");
+        stat.execute("INSERT INTO TEST SELECT X, NULLIF(MOD(X * 7, 13), 0), 's' || MOD(X, 10) "
+                + "FROM SYSTEM_RANGE(1, " + count + ")");
+        String[] queries = {
+                "SELECT ID, G, S FROM TEST ORDER BY G DESC NULLS FIRST, ID",
+                "SELECT ID, G, S FROM TEST ORDER BY S, G NULLS LAST, ID DESC OFFSET 7 ROWS",
+                "SELECT G, S FROM TEST ORDER BY G, S OFFSET 100 ROWS FETCH FIRST 5 ROWS WITH TIES",
+        };
+        ArrayList<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(getOrderedResult(stat.executeQuery(query)));
+        }
+        // rows are sorted in runs that are merged while they are read, with
+        // many runs groups of runs are merged first
+        for (int maxMemoryRows : new int[] { 100, 5 }) {
+            stat.execute("SET MAX_MEMORY_ROWS " + maxMemoryRows);
+            for (int i = 0; i < queries.length; i++) {
+                assertEquals(queries[i], expected.get(i), getOrderedResult(stat.executeQuery(queries[i])));
+            }
+        }
+        conn.close();
+    }
+
+    private void testTopRows() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        int count = getSize(3000, 20000);
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, G INT, S VARCHAR)");
+        stat.execute("INSERT INTO TEST SELECT X, MOD(X * 7, 13), 's' || MOD(X, 100) FROM SYSTEM_RANGE(1, "
+                + count + ")");
+        stat.execute("SET MAX_MEMORY_ROWS 100");
+        String all = getOrderedResult(stat.executeQuery("SELECT ID, G, S FROM TEST ORDER BY G, ID"));
+        String[] lines = all.split("\n");
+        assertEquals(String.join("\n", Arrays.copyOfRange(lines, 0, 10)) + '\n', getOrderedResult(
+                stat.executeQuery("SELECT ID, G, S FROM TEST ORDER BY G, ID FETCH FIRST 10 ROWS ONLY")));
+        assertEquals(String.join("\n", Arrays.copyOfRange(lines, 70, 100)) + '\n', getOrderedResult(
+                stat.executeQuery("SELECT ID, G, S FROM TEST ORDER BY G, ID OFFSET 70 ROWS FETCH NEXT 30 ROWS ONLY")));
+        assertEquals("", getOrderedResult(stat.executeQuery(
+                "SELECT ID, G, S FROM TEST ORDER BY G, ID OFFSET " + count + " ROWS FETCH NEXT 30 ROWS ONLY")));
+        int[] groupSizes = new int[13];
+        ResultSet rs = stat.executeQuery("SELECT G, COUNT(*) FROM TEST GROUP BY G");
+        while (rs.next()) {
+            groupSizes[rs.getInt(1)] = rs.getInt(2);
+        }
+        // only the first rows are kept, but all rows equal to the last one
+        // are returned
+        for (int fetch : new int[] { 1, 5, 50 }) {
+            rs = stat.executeQuery("SELECT G, COUNT(*) FROM (SELECT G FROM TEST ORDER BY G DESC "
+                    + "OFFSET 3 ROWS FETCH FIRST " + fetch + " ROWS WITH TIES) GROUP BY G");
+            assertTrue(rs.next());
+            assertEquals(12, rs.getInt(1));
+            assertEquals(groupSizes[12] - 3, rs.getInt(2));
+            assertFalse(rs.next());
+        }
+        rs = stat.executeQuery("SELECT G, COUNT(*) FROM (SELECT G FROM TEST ORDER BY G "
+                + "FETCH FIRST " + (groupSizes[0] + 1) + " ROWS WITH TIES) GROUP BY G ORDER BY G");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertEquals(groupSizes[1], rs.getInt(2));
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    private static String getOrderedResult(ResultSet rs) throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                builder.append(rs.getString(i)).append(' ');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String getResult(ResultSet rs) throws SQLException {
+        ArrayList<String> rows = new ArrayList<>();
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                builder.append(rs.getString(i)).append(' ');
+            }
+            rows.add(builder.toString());
+        }
+        Collections.sort(rows);
+        return rows.toString();
+    }
+
     private void testLimitBufferedResult() throws SQLException {
         deleteDb("bigResult");
         Connection conn = getConnection("bigResult");
@@ -21,6 +21,7 @@
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.h2.api.ErrorCode;
 import org.h2.test.TestAll;
 import org.h2.test.TestBase;
@@ -61,6 +62,7 @@ public void test() throws Exception {
         testConcurrentSchemaChange();
         testConcurrentLobAdd();
         testConcurrentAlter();
+        testConcurrentSharedAndExclusiveLocks();
         testConcurrentInsertUpdateSelect();
         testViews();
         testConcurrentInsert();
@@ -155,6 +157,55 @@ public void call() throws Exception {
         }
     }
 
+    private void testConcurrentSharedAndExclusiveLocks() throws Exception {
+        String db = getTestName();
+        deleteDb(db);
+        final String url = getURL(db + ";LOCK_TIMEOUT=10000", true);
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, x int)");
+            AtomicInteger inserted = new AtomicInteger();
+            Task[] tasks = new Task[4];
+            for (int i = 0; i < tasks.length; i++) {
+                final int x = i;
+                Task t = new Task() {
+                    @Override
+                    public void call() throws Exception {
+                        int count = 0;
+                        try (Connection c2 = getConnection(url)) {
+                            PreparedStatement prep = c2.prepareStatement("insert into test(id, x) values(?, ?)");
+                            while (!stop) {
+                                prep.setInt(1, count * tasks.length + x);
+                                prep.setInt(2, x);
+                                prep.executeUpdate();
+                                count++;
+                            }
+                        }
+                        inserted.addAndGet(count);
+                    }
+                };
+                tasks[i] = t;
+                t.execute();
+            }
+            // each index is built while inserts are running, so it only
+            // contains all rows if the exclusive lock excludes the inserts
+            for (int i = 0; i < 20; i++) {
+                stat.execute("create index idx_" + i + " on test(x)");
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            for (int i = 0; i < 20; i++) {
+                ResultSet rs = stat.executeQuery("select count(*), count(distinct x) from test use index(idx_" + i
+                        + ") where x >= 0");
+                rs.next();
+                assertEquals(inserted.get(), rs.getInt(1));
+                assertEquals(tasks.length, rs.getInt(2));
+            }
+        }
+        deleteDb(db);
+    }
+
     private void testConcurrentInsertUpdateSelect() throws Exception {
         try (Connection conn = getConnection()) {
             Statement stmt = conn.createStatement();
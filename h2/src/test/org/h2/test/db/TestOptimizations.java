@@ -64,6 +64,8 @@ public void test() throws Exception {
         testInSelectJoin();
         testMinMaxNullOptimization();
         testUseCoveringIndex();
+        testHashJoin();
+        testMergeJoin();
         // testUseIndexWhenAllColumnsNotInOrderBy();
         if (config.networked) {
             return;
@@ -1128,6 +1130,140 @@ private void testConvertOrToIn() throws SQLException {
         conn.close();
     }
 
+    private void testHashJoin() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE A(ID INT PRIMARY KEY, B INT, NAME VARCHAR)");
+        stat.execute("CREATE TABLE B(ID INT PRIMARY KEY, A INT, NAME VARCHAR)");
+        stat.execute("INSERT INTO A SELECT X, MOD(X, 50), 'n' || MOD(X, 30) FROM SYSTEM_RANGE(1, 1000)");
+        stat.execute("INSERT INTO B SELECT X, NULLIF(MOD(X, 40), 0), 'n' || MOD(X, 20) FROM SYSTEM_RANGE(1, 1000)");
+        String[] queries = {
+                "SELECT COUNT(*), SUM(A.ID), SUM(B.ID) FROM A JOIN B ON A.B = B.A",
+                "SELECT COUNT(*), SUM(A.ID), SUM(B.ID) FROM A JOIN B ON A.NAME = B.NAME AND A.B < B.A",
+                "SELECT COUNT(*), SUM(A.ID), SUM(B.ID) FROM A LEFT JOIN B ON A.B = B.A",
+                "SELECT COUNT(*), SUM(A.ID), SUM(B.ID) FROM A JOIN B ON CAST(A.B AS BIGINT) = B.A",
+                "SELECT COUNT(*), SUM(A.ID), SUM(B.ID) FROM A JOIN B ON A.B = B.A AND B.A IN (1, 2, 3)",
+        };
+        ResultSet rs = stat.executeQuery("EXPLAIN " + queries[0]);
+        rs.next();
+        assertContains(rs.getString(1), ".hashJoin(");
+        rs = stat.executeQuery("EXPLAIN " + queries[1]);
+        rs.next();
+        assertContains(rs.getString(1), ".hashJoin(NAME)");
+        String[] expected = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            // USE INDEX disables hash joins
+            rs = stat.executeQuery(queries[i].replace("JOIN B", "JOIN B USE INDEX ()"));
+            rs.next();
+            expected[i] = rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3);
+            assertTrue(rs.getLong(1) > 0);
+        }
+        for (int memoryRows : new int[] { 1_000_000, 100 }) {
+            // with less memory rows the hash tables are moved to a file
+            stat.execute("SET MAX_MEMORY_ROWS " + memoryRows);
+            for (int i = 0; i < queries.length; i++) {
+                rs = stat.executeQuery(queries[i]);
+                rs.next();
+                assertEquals(expected[i], rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3));
+            }
+        }
+        // derived tables and function tables
+        String query = "SELECT COUNT(*), SUM(A.ID), SUM(D.ID) FROM A LEFT JOIN (SELECT ID, A FROM B WHERE ID > 10) D "
+                + "ON A.B = D.A";
+        rs = stat.executeQuery("EXPLAIN " + query);
+        rs.next();
+        assertContains(rs.getString(1), ".hashJoin(A)");
+        assertEquals(getSingleRow(stat, "SELECT COUNT(*), SUM(A.ID), SUM(B.ID) FROM A LEFT JOIN B USE INDEX () "
+                + "ON A.B = B.A AND B.ID > 10"), getSingleRow(stat, query));
+        query = "SELECT COUNT(*), SUM(A.ID), SUM(T.X) FROM A LEFT JOIN TABLE(X INT = ARRAY[1, 2, 3, 5, 8]) T "
+                + "ON A.B = T.X";
+        rs = stat.executeQuery("EXPLAIN " + query);
+        rs.next();
+        assertContains(rs.getString(1), ".hashJoin(X)");
+        assertEquals(getSingleRow(stat, "SELECT COUNT(*), SUM(ID), SUM(CASE WHEN B IN (1, 2, 3, 5, 8) THEN B END) "
+                + "FROM A"), getSingleRow(stat, query));
+        // the hash table is built again when the query is executed again
+        PreparedStatement prep = conn.prepareStatement(queries[0]);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(expected[0], rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3));
+        stat.execute("DELETE FROM B WHERE ID > 500");
+        rs = stat.executeQuery(queries[0].replace("JOIN B", "JOIN B USE INDEX ()"));
+        rs.next();
+        String after = rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3);
+        assertFalse(after.equals(expected[0]));
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(after, rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3));
+        // lazy results release the hash table when they are exhausted or closed
+        long count = rs.getLong(1);
+        stat.execute("SET LAZY_QUERY_EXECUTION TRUE");
+        prep = conn.prepareStatement("SELECT A.ID, B.ID FROM A JOIN B ON A.B = B.A");
+        for (int i = 0; i < 3; i++) {
+            rs = prep.executeQuery();
+            long rows = 0;
+            while (rs.next()) {
+                rows++;
+            }
+            assertEquals(count, rows);
+            rs.close();
+            rs = prep.executeQuery();
+            assertTrue(rs.next());
+            rs.close();
+        }
+        stat.execute("SET LAZY_QUERY_EXECUTION FALSE");
+        stat.execute("DROP TABLE A, B");
+        conn.close();
+    }
+
+    private static String getSingleRow(Statement stat, String sql) throws SQLException {
+        ResultSet rs = stat.executeQuery(sql);
+        rs.next();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1, l = rs.getMetaData().getColumnCount(); i <= l; i++) {
+            builder.append(rs.getString(i)).append(' ');
+        }
+        return builder.toString();
+    }
+
+    private void testMergeJoin() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE P(ID INT PRIMARY KEY, K INT, NAME VARCHAR)");
+        stat.execute("CREATE TABLE C(ID INT PRIMARY KEY, PID INT, V INT)");
+        stat.execute("CREATE INDEX C_PID ON C(PID)");
+        stat.execute("INSERT INTO P SELECT X, MOD(X, 7), 'p' || X FROM SYSTEM_RANGE(1, 300)");
+        // no children for most parents, so that lookups skip many rows
+        stat.execute("INSERT INTO C SELECT X, CASE WHEN MOD(X, 3) = 0 THEN NULL WHEN X < 2000 THEN MOD(X, 40) "
+                + "ELSE MOD(X, 300) END, X FROM SYSTEM_RANGE(1, 3000)");
+        String[] queries = {
+                "SELECT COUNT(*), SUM(P.ID), SUM(C.V) FROM P JOIN C ON C.PID = P.ID",
+                "SELECT COUNT(*), SUM(P.ID), SUM(C.V) FROM P LEFT JOIN C ON C.PID = P.ID",
+                "SELECT COUNT(*), SUM(P.ID), SUM(C.V) FROM P JOIN C ON C.PID = P.ID WHERE P.ID > 20",
+                "SELECT COUNT(*), SUM(P.ID), SUM(C.V) FROM P JOIN C ON C.PID = P.K",
+                "SELECT COUNT(*), SUM(P.ID), SUM(C.V) FROM P JOIN C ON C.PID = P.ID AND C.V > P.ID",
+        };
+        ResultSet rs = stat.executeQuery("EXPLAIN " + queries[1]);
+        rs.next();
+        assertContains(rs.getString(1), "PUBLIC.C_PID merge join: PID = P.ID");
+        for (String query : queries) {
+            // USE INDEX disables merge joins
+            rs = stat.executeQuery(query.replace("JOIN C", "JOIN C USE INDEX ()"));
+            rs.next();
+            String expected = rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3);
+            assertTrue(rs.getLong(1) > 0);
+            for (int i = 0; i < 2; i++) {
+                rs = stat.executeQuery(query);
+                rs.next();
+                assertEquals(expected, rs.getString(1) + ' ' + rs.getString(2) + ' ' + rs.getString(3));
+            }
+        }
+        stat.execute("DROP TABLE P, C");
+        conn.close();
+    }
+
     private void testUseCoveringIndex() throws SQLException {
         deleteDb("optimizations");
         Connection conn = getConnection("optimizations");
@@ -1154,7 +1290,7 @@ private void testUseCoveringIndex() throws SQLException {
                 "FROM table_b b JOIN table_a a ON b.table_a_id = a.id GROUP BY b.table_a_id " +
                 "HAVING A.ACTIVE = TRUE");
         rs.next();
-        assertContains(rs.getString(1), "/* PUBLIC.TABLE_B_IDX: TABLE_A_ID = A.ID */");
+        assertContains(rs.getString(1), "/* PUBLIC.TABLE_B_IDX merge join: TABLE_A_ID = A.ID */");
 
         rs = stat.executeQuery("EXPLAIN ANALYZE SELECT MAX(id) FROM table_b GROUP BY table_a_id");
         rs.next();
@@ -13,6 +13,7 @@
 import org.h2.api.ErrorCode;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
+import org.h2.util.Task;
 
 /**
  * Tests the meta data tables information_schema.locks and sessions.
@@ -38,6 +39,7 @@ public void test() throws Exception {
         testCancelStatement();
         testLocks();
         testAbortStatement();
+        testLockWaitTime();
         deleteDb("sessionsLocks");
     }
 
@@ -131,6 +133,45 @@ private void testCancelStatement() throws Exception {
         conn.close();
     }
 
+    private void testLockWaitTime() throws Exception {
+        deleteDb("sessionsLocks");
+        Connection conn = getConnection("sessionsLocks");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test values(1, 'Hello')");
+        Connection conn2 = getConnection("sessionsLocks");
+        Statement stat2 = conn2.createStatement();
+        stat2.execute("set lock_timeout 10000");
+        ResultSet rs = stat2.executeQuery("select session_id(), lock_wait_time from information_schema.sessions "
+                + "where session_id = session_id()");
+        rs.next();
+        int otherId = rs.getInt(1);
+        assertEquals(0L, rs.getLong(2));
+        conn.setAutoCommit(false);
+        stat.execute("update test set name = 'Hi' where id = 1");
+        Task t = new Task() {
+            @Override
+            public void call() throws Exception {
+                stat2.execute("update test set name = 'World' where id = 1");
+            }
+        }.execute();
+        do {
+            Thread.sleep(10);
+            rs = stat.executeQuery("select blocker_id from information_schema.sessions where session_id = "
+                    + otherId);
+            rs.next();
+        } while (rs.getInt(1) == 0);
+        Thread.sleep(100);
+        conn.commit();
+        t.get();
+        rs = stat.executeQuery("select lock_wait_time from information_schema.sessions where session_id = "
+                + otherId);
+        rs.next();
+        assertTrue(rs.getLong(1) >= 100L);
+        conn2.close();
+        conn.close();
+    }
+
     private void testAbortStatement() throws Exception {
         deleteDb("sessionsLocks");
         Connection conn = getConnection("sessionsLocks");
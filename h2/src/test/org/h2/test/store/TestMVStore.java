@@ -17,6 +17,7 @@
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import org.h2.compress.Compressor;
 import org.h2.mvstore.Chunk;
 import org.h2.mvstore.Cursor;
 import org.h2.mvstore.DataUtils;
@@ -25,12 +26,15 @@
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
 import org.h2.mvstore.OffHeapStore;
+import org.h2.mvstore.Page;
+import org.h2.mvstore.cache.OffHeapPageCache;
 import org.h2.mvstore.type.DataType;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.mvstore.type.StringDataType;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
+import org.h2.util.Task;
 import org.h2.util.Utils;
 
 /**
@@ -58,6 +62,10 @@ public void test() throws Exception {
         testEntrySet();
         testCompressEmptyPage();
         testCompressed();
+        testCompressionAlgorithm();
+        testAppendBuffer();
+        testBulkLoad();
+        testParallelSerialization();
         testFileFormatExample();
         testMaxChunkLength();
         testCacheInfo();
@@ -74,6 +82,12 @@ public void test() throws Exception {
         testAtomicOperations();
         testWriteBuffer();
         testWriteDelay();
+        testPipeLength();
+        testMemoryMapped();
+        testOffHeapCache();
+        testReadAhead();
+        testAutoCompactWriteRate();
+        testShrinkFile();
         testEncryptedFile();
         testFileFormatChange();
         testRecreateMap();
@@ -260,6 +274,205 @@ private void testCompressed() {
         }
     }
 
+    private void testCompressionAlgorithm() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        String data = new String(new char[1000]).replace((char) 0, 'x');
+        long lastSize = 0;
+        for (int algorithm : new int[] { Compressor.NO, Compressor.LZ4 }) {
+            FileUtils.delete(fileName);
+            try (MVStore s = new MVStore.Builder().fileName(fileName).compressHigh().open()) {
+                MVMap<String, String> map = s.openMap("data",
+                        new MVMap.Builder<String, String>().compressionAlgorithm(algorithm));
+                assertEquals(algorithm, map.getCompressionAlgorithm());
+                MVMap<String, String> other = s.openMap("other");
+                assertEquals(-1, other.getCompressionAlgorithm());
+                assertThrows(IllegalArgumentException.class, () -> other.setCompressionAlgorithm(-2));
+                for (int i = 0; i < 400; i++) {
+                    map.put(data + i, data);
+                    other.put("" + i, data);
+                }
+                s.commit();
+                // pages written with different algorithms within one map
+                other.setCompressionAlgorithm(Compressor.LZ4);
+                for (int i = 0; i < 400; i += 2) {
+                    other.put("" + i, data + i);
+                }
+            }
+            long size = FileUtils.size(fileName);
+            if (algorithm != Compressor.NO) {
+                assertTrue(size < lastSize);
+            }
+            lastSize = size;
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVMap<String, String> map = s.openMap("data");
+                MVMap<String, String> other = s.openMap("other");
+                for (int i = 0; i < 400; i++) {
+                    assertEquals(data, map.get(data + i));
+                    assertEquals(i % 2 == 0 ? data + i : data, other.get("" + i));
+                }
+            }
+        }
+    }
+
+    private void testAppendBuffer() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).keysPerPage(8).open()) {
+            MVMap<Integer, Integer> map = s.openMap("data",
+                    new MVMap.Builder<Integer, Integer>().singleWriter().appendBufferSize(100));
+            for (int i = 0; i < 80; i++) {
+                map.append(i, i * 10);
+            }
+            // all entries are still in the buffer
+            assertEquals(0, map.getRoot().root.getTotalCount());
+            assertEquals(80, map.size());
+            Cursor<Integer, Integer> cursor = map.cursor(map.getRootWithAppendBuffer(), null, null, false);
+            for (int i = 0; i < 80; i++) {
+                assertTrue(cursor.hasNext());
+                assertEquals(i, cursor.next().intValue());
+                assertEquals(i * 10, cursor.getValue().intValue());
+            }
+            assertFalse(cursor.hasNext());
+            assertEquals(0, map.getRoot().root.getTotalCount());
+            map.clear();
+            assertEquals(0, map.size());
+            assertEquals(0, map.getRoot().root.getTotalCount());
+
+            for (int i = 0; i < 1000; i++) {
+                map.append(i, i * 10);
+            }
+            assertTrue(map.getRoot().root.getTotalCount() > 0);
+            map.trimLast();
+            assertEquals(999, map.size());
+            s.commit();
+            assertEquals(999, map.getRoot().root.getTotalCount());
+            assertLeafSize(map.getRoot().root, 8);
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, Integer> map = s.openMap("data");
+            assertEquals(999, map.size());
+            for (int i = 0; i < 999; i++) {
+                assertEquals(i * 10, map.get(i).intValue());
+            }
+        }
+    }
+
+    private void testBulkLoad() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).keysPerPage(20).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            map.put(-1, "first");
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            for (int i = 0; i < 10_000; i++) {
+                expected.put(i, "Hello " + i);
+            }
+            assertEquals(10_000, map.bulkLoad(expected.entrySet().iterator(), 50));
+            expected.put(-1, "first");
+            assertEquals(10_001, map.size());
+            assertEquals(expected.size(), map.getRoot().root.getTotalCount());
+            assertLeafSize(map.getRoot().root, 10);
+            assertEquals(expected, new TreeMap<>(map));
+            // keys must be ascending and larger than the existing keys
+            TreeMap<Integer, String> more = new TreeMap<>();
+            more.put(10_000, "a");
+            more.put(5, "b");
+            assertThrows(IllegalArgumentException.class, () -> map.bulkLoad(more.entrySet().iterator(), 100));
+            assertEquals(10_001, map.size());
+            more.remove(5);
+            more.put(20_000, "c");
+            Iterator<Entry<Integer, String>> it = more.descendingMap().entrySet().iterator();
+            assertThrows(IllegalArgumentException.class, () -> map.bulkLoad(it, 100));
+            // the incomplete last page isn't added
+            assertNull(map.get(20_000));
+            assertNull(map.get(10_000));
+            assertEquals(10_001, map.size());
+            // and the exception of the iterator is thrown
+            Iterator<Entry<Integer, String>> failing = new Iterator<Entry<Integer, String>>() {
+                private final Iterator<Entry<Integer, String>> source = more.entrySet().iterator();
+
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public Entry<Integer, String> next() {
+                    if (source.hasNext()) {
+                        return source.next();
+                    }
+                    throw new IllegalStateException();
+                }
+            };
+            assertThrows(IllegalStateException.class, () -> map.bulkLoad(failing, 100));
+            assertNull(map.get(20_000));
+            assertEquals(10_001, map.size());
+            assertThrows(IllegalArgumentException.class, () -> map.bulkLoad(more.entrySet().iterator(), 0));
+            // regular updates of the loaded pages
+            for (int i = 0; i < 10_000; i += 7) {
+                map.remove(i);
+                map.put(i + 20_000, "World " + i);
+            }
+            s.commit();
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            assertEquals("first", map.get(-1));
+            for (int i = 0; i < 10_000; i++) {
+                boolean moved = i % 7 == 0;
+                assertEquals(moved ? null : "Hello " + i, map.get(i));
+                assertEquals(moved ? "World " + i : null, map.get(i + 20_000));
+            }
+        }
+    }
+
+    private void assertLeafSize(Page<?, ?> p, int maxKeys) {
+        if (p.isLeaf()) {
+            assertTrue(p.getKeyCount() <= maxKeys);
+        } else {
+            for (int i = 0; i < p.getRawChildPageCount(); i++) {
+                assertLeafSize(p.getChildPage(i), maxKeys);
+            }
+        }
+    }
+
+    private void testParallelSerialization() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        for (int level = 0; level <= 2; level++) {
+            FileUtils.delete(fileName);
+            MVStore.Builder builder = new MVStore.Builder().fileName(fileName).
+                    autoCommitDisabled().parallelSerialization().pageSplitSize(1024);
+            if (level == 1) {
+                builder.compress();
+            } else if (level == 2) {
+                builder.compressHigh();
+            }
+            try (MVStore s = builder.open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                MVMap<String, Integer> map2 = s.openMap("data2");
+                for (int i = 0; i < 10_000; i++) {
+                    map.put(i, "Hello " + i);
+                    map2.put("Hello " + i, i);
+                }
+                s.commit();
+                for (int i = 0; i < 10_000; i += 3) {
+                    map.put(i, "World " + i);
+                    map2.remove("Hello " + i);
+                }
+                s.commit();
+            }
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                MVMap<String, Integer> map2 = s.openMap("data2");
+                for (int i = 0; i < 10_000; i++) {
+                    boolean updated = i % 3 == 0;
+                    assertEquals((updated ? "World " : "Hello ") + i, map.get(i));
+                    assertEquals(updated ? null : i, map2.get("Hello " + i));
+                }
+            }
+        }
+    }
+
     private void testFileFormatExample() {
         String fileName = getBaseDir() + "/" + getTestName();
         FileUtils.delete(fileName);
@@ -600,6 +813,255 @@ private void testWriteBuffer() {
         FileUtils.delete(fileName);
     }
 
+    private void testPipeLength() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                pipeLength(4).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 100; i++) {
+                for (int j = 0; j < 100; j++) {
+                    m.put(i * 100 + j, "Hello " + i);
+                }
+                s.tryCommit();
+            }
+            s.commit();
+            s.sync();
+            s.sync();
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            assertEquals(10_000, m.size());
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals("Hello " + i / 100, m.get(i));
+            }
+        }
+    }
+
+    private void testMemoryMapped() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        String value = new String(new char[1000]).replace((char) 0, 'x');
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 20_000; i++) {
+                m.put(i, value + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                memoryMapped().
+                cacheSize(0).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 20_000; i += 7) {
+                assertEquals(value + i, m.get(i));
+            }
+            m.put(-1, value);
+            s.commit();
+            assertEquals(value, m.get(-1));
+            FileStore fs = s.getFileStore();
+            if (fs.isMemoryMapped()) {
+                fs.beginMappedRead();
+                try {
+                    assertTrue(fs.readFully(0, 100).isDirect());
+                } finally {
+                    fs.endMappedRead();
+                }
+                // outside of a read block the data is copied
+                assertFalse(fs.readFully(0, 100).isDirect());
+            }
+        }
+    }
+
+    private void testOffHeapCache() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 2_000; i++) {
+                m.put(i, "Hello " + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                cacheSize(0).
+                offHeapCacheSize(4).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals("Hello " + i, m.get(i));
+            }
+            long readCount = s.getFileStore().getReadCount();
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals("Hello " + i, m.get(i));
+            }
+            assertEquals(readCount, s.getFileStore().getReadCount());
+            assertTrue(s.getOffHeapCacheHitRatio() > 0);
+            m.put(-1, "Hello");
+            s.commit();
+            assertEquals("Hello", m.get(-1));
+            assertEquals(2_001, m.size());
+        }
+        // the space of evicted and removed entries is reused
+        OffHeapPageCache cache = new OffHeapPageCache(4096);
+        ByteBuffer page = ByteBuffer.allocate(1000);
+        for (int i = 0; i < 100; i++) {
+            page.putInt(0, i);
+            cache.put(i, page);
+            assertTrue(cache.getUsedMemory() <= 4096);
+            assertEquals(i, cache.get(i).getInt(0));
+        }
+        assertNull(cache.get(0));
+        assertEquals(1000, cache.get(99).remaining());
+        cache.remove(99);
+        assertNull(cache.get(99));
+        cache.put(100, ByteBuffer.allocate(5000));
+        assertNull(cache.get(100));
+        cache.close();
+        cache.put(101, page);
+        assertNull(cache.get(101));
+        assertEquals(0, cache.getUsedMemory());
+    }
+
+    private void testReadAhead() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                pageSplitSize(1000).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 10_000; i++) {
+                m.put(i, "Hello " + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                readAhead(8).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            int i = 0;
+            for (Cursor<Integer, String> c = m.cursor(null); c.hasNext(); i++) {
+                assertEquals(i, c.next().intValue());
+                assertEquals("Hello " + i, c.getValue());
+            }
+            assertEquals(10_000, i);
+            i = 9_999;
+            for (Cursor<Integer, String> c = m.cursor(null, null, true); c.hasNext(); i--) {
+                assertEquals(i, c.next().intValue());
+            }
+            assertEquals(-1, i);
+            i = 5_000;
+            for (Cursor<Integer, String> c = m.cursor(5_000, 7_000, false); c.hasNext(); i++) {
+                assertEquals(i, c.next().intValue());
+            }
+            assertEquals(7_001, i);
+        }
+    }
+
+    private void testAutoCompactWriteRate() throws InterruptedException {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCompactWriteRate(16).
+                open()) {
+            s.setRetentionTime(0);
+            s.setVersionsToKeep(0);
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 2_000; i++) {
+                m.put(i, "Hello " + i);
+                if (i % 50 == 0) {
+                    s.commit();
+                }
+            }
+            for (int i = 0; i < 2_000; i += 3) {
+                m.put(i, "World " + i);
+                if (i % 50 == 0) {
+                    s.commit();
+                }
+            }
+            s.commit();
+            Thread.sleep(200);
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals((i % 3 == 0 ? "World " : "Hello ") + i, m.get(i));
+            }
+        }
+    }
+
+    private void testShrinkFile() throws Exception {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitDisabled().
+                open()) {
+            s.setRetentionTime(0);
+            s.setVersionsToKeep(0);
+            for (int i = 0; i < 100; i++) {
+                MVMap<Integer, String> m = s.openMap("data" + i);
+                for (int j = 0; j < 100; j++) {
+                    m.put(j, "Hello World " + j);
+                }
+                s.commit();
+            }
+            for (int i = 0; i < 100; i += 2) {
+                s.removeMap(s.openMap("data" + i));
+                s.commit();
+            }
+            long sizeOld = s.getFileStore().size();
+            MVMap<Integer, String> other = s.openMap("other");
+            Task task = new Task() {
+                @Override
+                public void call() {
+                    for (int i = 0; !stop; i++) {
+                        other.put(i, "Hello " + i);
+                        s.commit();
+                    }
+                }
+            };
+            task.execute();
+            assertTrue(s.shrinkFile(90, 64 * 1024, 10_000));
+            task.get();
+            long sizeNew = s.getFileStore().size();
+            assertTrue("old: " + sizeOld + " new: " + sizeNew, sizeNew < sizeOld);
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            for (int i = 1; i < 100; i += 2) {
+                MVMap<Integer, String> m = s.openMap("data" + i);
+                assertEquals(100, m.size());
+                assertEquals("Hello World 99", m.get(99));
+            }
+            assertFalse(s.hasMap("data0"));
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                readOnly().
+                open()) {
+            assertFalse(s.shrinkFile(90, 64 * 1024, 100));
+        }
+        try (MVStore s = MVStore.open(null)) {
+            s.openMap("data").put(1, "Hello");
+            assertFalse(s.shrinkFile(90, 64 * 1024, 100));
+        }
+    }
+
     private void testWriteDelay() {
         String fileName = getBaseDir() + "/" + getTestName();
         FileUtils.delete(fileName);
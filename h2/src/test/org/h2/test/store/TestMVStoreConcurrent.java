@@ -53,6 +53,7 @@ public void test() throws Exception {
         testConcurrentSaveCompact();
         testConcurrentDataType();
         testConcurrentAutoCommitAndChange();
+        testConcurrentSyncCommit();
         testConcurrentReplaceAndRead();
         testConcurrentChangeAndCompact();
         testConcurrentChangeAndGetVersion();
@@ -252,6 +253,46 @@ public void call() {
         }
     }
 
+    private void testConcurrentSyncCommit() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        int threadCount = 8, commitCount = 100;
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitDisabled().
+                syncOnCommit().
+                open()) {
+            MVMap<Integer, Integer> map = s.openMap("data");
+            Task[] tasks = new Task[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                int base = t * commitCount;
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        for (int i = 0; i < commitCount; i++) {
+                            map.put(base + i, i);
+                            s.commit();
+                        }
+                    }
+                }.execute();
+            }
+            for (Task task : tasks) {
+                task.get();
+            }
+            // concurrent commits may share versions, but never lose changes
+            assertTrue(s.getCurrentVersion() <= threadCount * commitCount + 1);
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            MVMap<Integer, Integer> map = s.openMap("data");
+            assertEquals(threadCount * commitCount, map.size());
+            for (int i = 0; i < threadCount * commitCount; i++) {
+                assertEquals(i % commitCount, map.get(i).intValue());
+            }
+        }
+    }
+
     private void testConcurrentReplaceAndRead() throws InterruptedException {
         final MVStore s = new MVStore.Builder().open();
         final MVMap<Integer, Integer> map = s.openMap("data");
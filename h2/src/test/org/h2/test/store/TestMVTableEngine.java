@@ -20,17 +20,21 @@
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.h2.api.ErrorCode;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
+import org.h2.engine.SessionLocal;
 import org.h2.jdbc.JdbcConnection;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.db.LobStorageMap;
 import org.h2.mvstore.tx.TransactionStore;
+import org.h2.schema.Schema;
 import org.h2.store.fs.FileUtils;
+import org.h2.table.Partitioning;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 import org.h2.tools.Recover;
@@ -39,6 +43,8 @@
 import org.h2.util.JdbcUtils;
 import org.h2.util.Task;
 import org.h2.value.Value;
+import org.h2.value.ValueNumeric;
+import org.h2.value.ValueVarchar;
 
 /**
  * Tests the MVStore in a database.
@@ -98,6 +104,12 @@ public void test() throws Exception {
         testReuseDiskSpace();
 */
         testDataTypes();
+        testColumnarLayout();
+        testParallelCreateIndex();
+        testParallelScan();
+        testAsOfVersion();
+        testPartitioning();
+        testHashPartitioning();
 //        testSimple();
 //        if (!config.travis) {
 //            testReverseDeletePerformance();
@@ -1117,6 +1129,417 @@ private void testReuseDiskSpace() throws Exception {
         }
     }
 
+    private void testColumnarLayout() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        String rowDb = getTestName() + "Row";
+        String columnarDb = getTestName();
+        deleteDb(rowDb);
+        deleteDb(columnarDb);
+        String[] statements = {
+                "create table test(id int primary key, bi bigint, vc varchar, "
+                        + "ts timestamp, de decimal(10, 2), n int)",
+                "insert into test select x, x * 1000 - 500000, 'name ' || (x / 100), "
+                        + "timestamp '2020-01-01 00:00:00' + x * interval '1' minute, x / 7, "
+                        + "case when mod(x, 3) = 0 then null else x end from system_range(1, 20000)",
+                "update test set vc = null, bi = -bi where mod(id, 10) = 0",
+                "delete from test where mod(id, 13) = 0",
+                "insert into test values(30000, " + Long.MIN_VALUE + ", 'a', null, null, " + Integer.MAX_VALUE + ")",
+                "insert into test values(30001, " + Long.MAX_VALUE + ", 'b', null, null, " + Integer.MIN_VALUE + ")" };
+        for (String url : new String[] { rowDb, columnarDb + ";COLUMNAR_LAYOUT=TRUE" }) {
+            try (Connection conn = getConnection(url)) {
+                Statement stat = conn.createStatement();
+                for (String sql : statements) {
+                    stat.execute(sql);
+                }
+                stat.execute("shutdown compact");
+            }
+        }
+        // the columns of the rows are stored in runs and as differences
+        long rowSize = FileUtils.size(getBaseDir() + "/" + rowDb + Constants.SUFFIX_MV_FILE);
+        long columnarSize = FileUtils.size(getBaseDir() + "/" + columnarDb + Constants.SUFFIX_MV_FILE);
+        assertTrue("row: " + rowSize + " columnar: " + columnarSize, columnarSize < rowSize * 9 / 10);
+        // pages written with either layout are readable with either setting
+        String sql = "select * from test order by id";
+        String update = "update test set n = n + 1 where mod(id, 2) = 0 and id < 30000";
+        for (String url : new String[] { columnarDb, columnarDb + ";COLUMNAR_LAYOUT=TRUE" }) {
+            try (Connection expected = getConnection(rowDb);
+                    Connection conn = getConnection(url)) {
+                assertEqualResults(expected.createStatement().executeQuery(sql),
+                        conn.createStatement().executeQuery(sql));
+                // rewrite the pages with the layout of this setting
+                assertEquals(expected.createStatement().executeUpdate(update),
+                        conn.createStatement().executeUpdate(update));
+            }
+        }
+        try (Connection expected = getConnection(rowDb);
+                Connection conn = getConnection(columnarDb)) {
+            assertEqualResults(expected.createStatement().executeQuery(sql),
+                    conn.createStatement().executeQuery(sql));
+        }
+        deleteDb(rowDb);
+        // values that only compare equal are not stored in one run
+        try (Connection conn = getConnection(columnarDb + ";COLUMNAR_LAYOUT=TRUE")) {
+            Statement stat = conn.createStatement();
+            stat.execute("create table test2(id int primary key, v varchar_ignorecase)");
+            stat.execute("insert into test2 values (1, 'abc'), (2, 'ABC'), (3, 'Abc'), (4, 'abc')");
+        }
+        try (Connection conn = getConnection(columnarDb + ";COLUMNAR_LAYOUT=TRUE")) {
+            ResultSet rs = conn.createStatement().executeQuery("select v from test2 order by id");
+            for (String v : new String[] { "abc", "ABC", "Abc", "abc" }) {
+                assertTrue(rs.next());
+                assertEquals(v, rs.getString(1));
+            }
+            assertFalse(rs.next());
+        }
+    }
+
+    private void testAsOfVersion() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb(getTestName());
+        String url = getTestName();
+        long version;
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, name varchar)");
+            stat.execute("insert into test values(1, 'a'), (2, 'b')");
+            stat.execute("checkpoint");
+            version = getLastStoredVersion(stat);
+            stat.execute("update test set name = 'c' where id = 1");
+            stat.execute("delete from test where id = 2");
+            stat.execute("insert into test values(3, 'd')");
+            Connection conn2 = getConnection(url);
+            conn2.setAutoCommit(false);
+            // uncommitted changes are not visible in older versions
+            conn2.createStatement().execute("insert into test values(4, 'uncommitted')");
+            stat.execute("checkpoint");
+            assertAsOfVersion(stat, version, "1:a", "2:b");
+            assertAsOfVersion(stat, getLastStoredVersion(stat), "1:c", "3:d");
+            conn2.rollback();
+            conn2.close();
+            ResultSet rs = stat.executeQuery("explain select * from test as of version " + version + " t");
+            rs.next();
+            assertContains(rs.getString(1), "\"PUBLIC\".\"TEST\" AS OF VERSION " + version + " \"T\"");
+            rs = stat.executeQuery("select name from test as of timestamp current_timestamp where id = 3");
+            assertTrue(rs.next());
+            assertEquals("d", rs.getString(1));
+            assertThrows(ErrorCode.INVALID_VALUE_2, stat).executeQuery(
+                    "select * from test as of timestamp timestamp '2000-01-01 00:00:00'");
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).executeQuery(
+                    "select * from information_schema.tables as of version 1");
+        }
+        // versions that are no longer kept in memory are read from the file
+        try (Connection conn = getConnection(url)) {
+            assertAsOfVersion(conn.createStatement(), version, "1:a", "2:b");
+        }
+    }
+
+    private static long getLastStoredVersion(Statement stat) throws SQLException {
+        ResultSet rs = stat.executeQuery("select setting_value from information_schema.settings "
+                + "where setting_name = 'info.LAST_STORED_VERSION'");
+        rs.next();
+        return Long.parseLong(rs.getString(1));
+    }
+
+    private void assertAsOfVersion(Statement stat, long version, String... expected) throws SQLException {
+        ResultSet rs = stat.executeQuery("select * from test as of version " + version + " order by id");
+        for (String row : expected) {
+            assertTrue(rs.next());
+            assertEquals(row, rs.getInt(1) + ":" + rs.getString(2));
+        }
+        assertFalse(rs.next());
+    }
+
+    private void testPartitioning() throws Exception {
+        deleteDb(getTestName());
+        String url = getTestName();
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int, v int, name varchar, primary key(id, v)) "
+                    + "partition by range(v) (partition p1 values less than (10), "
+                    + "partition p2 values less than (20), partition p3 values less than (30))");
+            stat.execute("insert into test select x, x, 'n' || x from system_range(0, 29)");
+            assertScanCount(stat, "select * from test where v between 10 and 19", 11);
+            assertScanCount(stat, "select * from test where v in (1, 25)", 21);
+            assertScanCount(stat, "select * from test where v = 40", 1);
+            assertScanCount(stat, "select * from test", 31);
+            assertThrows(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, stat).execute("insert into test values(30, 30, 'x')");
+            // the row moves to another partition
+            stat.execute("update test set v = 25 where v = 5");
+            assertSingleValue(stat, "select count(*) from test where v = 25", 2);
+            stat.execute("create index idx_name on test(name)");
+            assertSingleValue(stat, "select v from test where name = 'n15'", 15);
+            ResultSet rs = stat.executeQuery("select name from test order by name limit 3");
+            assertTrue(rs.next());
+            assertEquals("n0", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("n1", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("n10", rs.getString(1));
+            assertSingleValue(stat, "select max(v) from test", 29);
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).execute("create unique index idx_u on test(id)");
+            stat.execute("create unique index idx_u on test(id, v)");
+            stat.execute("alter table test drop partition p1");
+            assertSingleValue(stat, "select count(*) from test", 21);
+            stat.execute("alter table test add partition p4 values less than (40)");
+            stat.execute("insert into test values(35, 35, 'n35')");
+            assertThrows(ErrorCode.INVALID_VALUE_2, stat).execute(
+                    "alter table test add partition p5 values less than (35)");
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).execute(
+                    "alter table test add partition p5 values in (50)");
+        }
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            assertSingleValue(stat, "select count(*) from test", 22);
+            ResultSet rs = stat.executeQuery("script nodata table test");
+            StringBuilder builder = new StringBuilder();
+            while (rs.next()) {
+                builder.append(rs.getString(1)).append('\n');
+            }
+            assertContains(builder.toString(), "PARTITION BY RANGE (\"V\") (PARTITION \"P2\" VALUES LESS THAN (20), "
+                    + "PARTITION \"P3\" VALUES LESS THAN (30), PARTITION \"P4\" VALUES LESS THAN (40))");
+            // rows of the dropped range are added to the next partition
+            stat.execute("insert into test values(5, 5, 'm5')");
+            assertScanCount(stat, "select * from test where v < 20", 12);
+            assertSingleValue(stat, "select v from test where name = 'm5'", 5);
+            conn.setAutoCommit(false);
+            stat.execute("update test set v = 36 where v = 5");
+            stat.execute("delete from test where v = 25");
+            conn.rollback();
+            conn.setAutoCommit(true);
+            assertSingleValue(stat, "select count(*) from test where v in (5, 25)", 3);
+
+            stat.execute("create table test2(id int, c varchar) "
+                    + "partition by list(c) (partition a values in ('x', 'y'), partition b values in ('z'))");
+            stat.execute("insert into test2 values(1, 'x'), (2, 'y'), (3, 'z')");
+            assertThrows(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, stat).execute("insert into test2 values(4, 'w')");
+            assertScanCount(stat, "select * from test2 where c = 'z'", 2);
+            stat.execute("alter table test2 add partition c values in ('w')");
+            stat.execute("insert into test2 values(4, 'w')");
+            assertSingleValue(stat, "select id from test2 where c = 'w'", 4);
+
+            stat.execute("create table test3(id int) partition by hash(id) partitions 4");
+            stat.execute("insert into test3 select x from system_range(1, 100)");
+            assertSingleValue(stat, "select count(*) from test3", 100);
+            assertSingleValue(stat, "select count(*) from test3 where id = 7", 1);
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).execute("alter table test3 drop partition p0");
+            assertThrows(ErrorCode.INVALID_VALUE_2, stat).execute("alter table test drop partition p1");
+            stat.execute("drop table test, test2, test3");
+        }
+    }
+
+    private void testHashPartitioning() throws Exception {
+        deleteDb(getTestName());
+        String url = getTestName();
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            // equal strings of a collation may have different hash codes
+            stat.execute("set collation english");
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).execute(
+                    "create table test(v varchar primary key) partition by hash(v) partitions 4");
+            assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).execute(
+                    "create table test(v varchar array[2] primary key) partition by hash(v) partitions 4");
+            stat.execute("create table test(v int primary key) partition by hash(v) partitions 4");
+            stat.execute("drop table test");
+            stat.execute("set collation off");
+
+            stat.execute("create table test_v(v varchar primary key, n int) partition by hash(v) partitions 4");
+            stat.execute("create table test_n(v numeric(10, 2) primary key, n int) partition by hash(v) partitions 4");
+            stat.execute("insert into test_v select 'k' || x, x from system_range(0, 19)");
+            stat.execute("insert into test_n select x + 0.5, x from system_range(0, 19)");
+            stat.execute("delete from test_v where n = 3");
+            stat.execute("delete from test_n where n = 3");
+
+            stat.execute("create table test_i(v varchar_ignorecase primary key) partition by hash(v) partitions 4");
+            stat.execute("insert into test_i values 'abc', 'x', 'Stra\u00dfe'");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).execute("insert into test_i values 'ABC'");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).execute("insert into test_i values 'X'");
+            assertSingleValue(stat, "select count(*) from test_i where v = 'aBc'", 1);
+            assertSingleValue(stat, "select count(*) from test_i where v in ('ABC', 'X')", 2);
+        }
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            // rows are routed by the content of the value only
+            SessionLocal session = (SessionLocal) ((JdbcConnection) conn).getSession();
+            Schema schema = session.getDatabase().getMainSchema();
+            Partitioning v = schema.getTableOrView(session, "TEST_V").getPartitioning();
+            Partitioning n = schema.getTableOrView(session, "TEST_N").getPartitioning();
+            for (int x = 0; x < 20; x++) {
+                assertEquals(Math.floorMod(("k" + x).hashCode(), 4), v.getPartition(ValueVarchar.get("k" + x)));
+                assertEquals(Math.floorMod(new BigDecimal(x + ".5").hashCode(), 4),
+                        n.getPartition(ValueNumeric.get(new BigDecimal(x + ".50"))));
+            }
+            for (String table : new String[] { "test_v", "test_n" }) {
+                assertSingleValue(stat, "select count(*) from " + table, 19);
+                PreparedStatement prep = conn.prepareStatement("select count(*) from " + table + " where v = ?");
+                ResultSet rs = stat.executeQuery("select v from " + table);
+                while (rs.next()) {
+                    prep.setString(1, rs.getString(1));
+                    ResultSet rs2 = prep.executeQuery();
+                    rs2.next();
+                    assertEquals(1, rs2.getInt(1));
+                }
+            }
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).execute("insert into test_v values('k0', 100)");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).execute("insert into test_n values(0.50, 100)");
+            assertEquals(1, stat.executeUpdate("delete from test_v where v = 'k5'"));
+            assertEquals(1, stat.executeUpdate("delete from test_n where v = 5.5"));
+            assertSingleValue(stat, "select count(*) from test_v", 18);
+            assertSingleValue(stat, "select count(*) from test_n", 18);
+            assertSingleValue(stat, "select count(*) from test_i where v = 'STRASSE'", 0);
+            assertSingleValue(stat, "select count(*) from test_i where v = 'STRA\u00dfE'", 1);
+            stat.execute("drop table test_v, test_n, test_i");
+        }
+    }
+
+    private void assertScanCount(Statement stat, String sql, int expected) throws SQLException {
+        ResultSet rs = stat.executeQuery("explain analyze " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        if (expected > 1) {
+            assertContains(plan, "scanCount: " + expected + " */");
+        } else {
+            assertFalse(plan, plan.contains("scanCount"));
+        }
+    }
+
+    private void testParallelCreateIndex() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb(getTestName());
+        String url = getTestName() + ";CREATE_INDEX_THREADS=4;MAX_MEMORY_ROWS=1000";
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, x int, name varchar)");
+            stat.execute("insert into test select x, mod(x * 7919, 20011), 'n' || mod(x, 100) "
+                    + "from system_range(1, 20000)");
+            stat.execute("delete from test where mod(id, 11) = 0");
+            Connection conn2 = getConnection(url);
+            conn2.setAutoCommit(false);
+            // uncommitted changes of other sessions are not visible
+            conn2.createStatement().execute("insert into test values(30000, -1, 'uncommitted')");
+            conn2.rollback();
+            conn2.close();
+            stat.execute("create index idx_x on test(x)");
+            stat.execute("create index idx_name on test(name, id)");
+            ResultSet rs = stat.executeQuery("select count(*), sum(x) from test use index(idx_x) where x >= 0");
+            rs.next();
+            assertEquals(18182, rs.getInt(1));
+            String expected = "select * from test use index() order by x, id";
+            String actual = "select * from test use index(idx_x) where x >= 0 order by x, id";
+            assertEqualResults(stat.executeQuery(expected), conn.createStatement().executeQuery(actual));
+            rs = stat.executeQuery("select count(*) from test use index(idx_name) where name >= 'n'");
+            rs.next();
+            assertEquals(18182, rs.getInt(1));
+            // duplicates in different ranges of the table are detected
+            stat.execute("insert into test values(30001, 7919, 'dup')");
+            assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).execute("create unique index idx_u on test(x)");
+            stat.execute("delete from test where id = 30001");
+            stat.execute("create unique index idx_u on test(x)");
+        }
+        try (Connection conn = getConnection(getTestName())) {
+            ResultSet rs = conn.createStatement().executeQuery("select count(*) from test use index(idx_u)"
+                    + " where x >= 0");
+            rs.next();
+            assertEquals(18182, rs.getInt(1));
+        }
+        deleteDb(getTestName());
+    }
+
+    private void testParallelScan() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb(getTestName());
+        String url = getTestName() + ";PARALLEL_SCAN_THREADS=4";
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, x int, name varchar)");
+            stat.execute("insert into test select x, mod(x * 7919, 20011), 'n' || mod(x, 100) "
+                    + "from system_range(1, 60000)");
+            stat.execute("delete from test where mod(id, 11) = 0");
+            // the threads are shared by all queries of the database
+            ForkJoinPool pool = ((Database) ((JdbcConnection) conn).getSession().getDataHandler())
+                    .getParallelScanPool();
+            assertEquals(3, pool.getParallelism());
+            // Java functions may use the session, they are evaluated by the
+            // thread of the query
+            stat.execute("create alias thread_id for '" + getClass().getName() + ".threadId'");
+            ResultSet rs = stat.executeQuery("select min(thread_id(x)), max(thread_id(x)) from test");
+            rs.next();
+            assertEquals(Thread.currentThread().getId(), rs.getLong(1));
+            assertEquals(Thread.currentThread().getId(), rs.getLong(2));
+            assertEquals(0, pool.getPoolSize());
+            // RAND() is not deterministic, so the expected results are
+            // computed by a single thread
+            String[] queries = {
+                    "select count(*), count(x), sum(x), min(name), max(name), avg(x), round(stddev_pop(x), 6), "
+                    + "bit_or_agg(x), every(x >= 0) from test where %s",
+                    "select mod(id, 100) g, count(*), sum(x), max(name), round(var_samp(x), 2) from test "
+                    + "where %s group by g having count(*) > 500 order by g",
+                    "select name, min(x), max(x), sum(id) from test where x < 10000 and %s group by name "
+                    + "order by name",
+            };
+            for (String query : queries) {
+                assertEqualResults(stat.executeQuery(String.format(query, "rand() >= 0")),
+                        conn.createStatement().executeQuery(String.format(query, "true")));
+            }
+            assertTrue(pool.getPoolSize() > 0);
+            PreparedStatement prep = conn.prepareStatement("select count(*), sum(x) from test where x > ?");
+            prep.setInt(1, 10000);
+            rs = prep.executeQuery();
+            rs.next();
+            long count = rs.getLong(1);
+            long sum = rs.getLong(2);
+            rs = stat.executeQuery("select count(*), sum(x) from test where x > 10000 and rand() >= 0");
+            rs.next();
+            assertEquals(count, rs.getLong(1));
+            assertEquals(sum, rs.getLong(2));
+            // the uncommitted changes of the session are visible, the changes of
+            // other sessions are not
+            conn.setAutoCommit(false);
+            stat.execute("insert into test values(100001, 1, 'uncommitted')");
+            Connection conn2 = getConnection(url);
+            conn2.setAutoCommit(false);
+            conn2.createStatement().execute("insert into test values(100002, 2, 'other')");
+            rs = stat.executeQuery("select count(*), sum(x) from test");
+            rs.next();
+            assertEquals(54547, rs.getLong(1));
+            conn2.rollback();
+            conn2.close();
+            conn.rollback();
+            conn.setAutoCommit(true);
+            // errors in other threads are reported
+            assertThrows(ErrorCode.DIVISION_BY_ZERO_1, stat).executeQuery("select sum(1 / (x - 7919)) from test");
+        }
+        deleteDb(getTestName());
+    }
+
+    /**
+     * This method is called via reflection from the database.
+     *
+     * @param x the ignored argument
+     * @return the id of the current thread
+     */
+    public static long threadId(int x) {
+        return Thread.currentThread().getId();
+    }
+
+    private void assertEqualResults(ResultSet expected, ResultSet actual) throws SQLException {
+        int columnCount = expected.getMetaData().getColumnCount();
+        while (expected.next()) {
+            assertTrue(actual.next());
+            for (int i = 1; i <= columnCount; i++) {
+                assertEquals(expected.getString(i), actual.getString(i));
+            }
+        }
+        assertFalse(actual.next());
+    }
+
     private void testDataTypes() throws Exception {
         deleteDb(getTestName());
         String dbName = getTestName() + ";MV_STORE=TRUE";
@@ -12,15 +12,20 @@
 import java.sql.Statement;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.Page;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionMap;
 import org.h2.mvstore.tx.TransactionStore;
@@ -32,6 +37,7 @@
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
 import org.h2.util.Task;
+import org.h2.value.VersionedValue;
 
 /**
  * Test concurrent transactions.
@@ -53,7 +59,9 @@ public void test() throws Exception {
         testHCLFKey();
         testConcurrentAddRemove();
         testConcurrentAdd();
+        testConcurrentCommitSnapshot();
         testCountWithOpenTransactions();
+        testCountWithRollbacks();
         testConcurrentUpdate();
         testRepeatedChange();
         testTransactionAge();
@@ -61,12 +69,14 @@ public void test() throws Exception {
         testKeyIterator();
         testTwoPhaseCommit();
         testSavepoint();
+        testUndoLogBuffer();
         testConcurrentTransactionsReadCommitted();
         testSingleConnection();
         testCompareWithPostgreSQL();
         testStoreMultiThreadedReads();
         testCommitAfterMapRemoval();
         testDeadLock();
+        testLockWaitQueue();
     }
 
     private void testHCLFKey() {
@@ -234,6 +244,65 @@ public void call() {
         }
     }
 
+    private void testConcurrentCommitSnapshot() throws Exception {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            int writerCount = 4;
+            Transaction tx = ts.begin();
+            TransactionMap<Integer, Integer> map = tx.openMap("data");
+            for (int i = 0; i < writerCount * 2; i++) {
+                map.put(i, 100);
+            }
+            tx.commit();
+            Task[] writers = new Task[writerCount];
+            for (int w = 0; w < writerCount; w++) {
+                int key = w * 2;
+                writers[w] = new Task() {
+                    @Override
+                    public void call() {
+                        Random r = new Random(key);
+                        while (!stop) {
+                            // move some amount between the keys of this writer
+                            Transaction t = ts.begin();
+                            TransactionMap<Integer, Integer> m = t.openMap("data");
+                            int amount = r.nextInt(10) - 5;
+                            m.put(key, m.get(key) - amount);
+                            m.put(key + 1, m.get(key + 1) + amount);
+                            t.commit();
+                        }
+                    }
+                };
+                writers[w].execute();
+            }
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    Transaction t = ts.begin();
+                    TransactionMap<Integer, Integer> m = t.openMap("data");
+                    if (i % 2 == 0) {
+                        HashSet<MVMap<Object, VersionedValue<Object>>> maps = new HashSet<>();
+                        @SuppressWarnings({ "unchecked", "rawtypes" })
+                        MVMap<Object, VersionedValue<Object>> raw = (MVMap) m.map;
+                        maps.add(raw);
+                        t.markStatementStart(maps);
+                    }
+                    int sum = 0;
+                    for (Entry<Integer, Integer> e : m.entrySet()) {
+                        sum += e.getValue();
+                    }
+                    assertEquals(writerCount * 200, sum);
+                    assertEquals(writerCount * 2, m.sizeAsLong());
+                    t.markStatementEnd();
+                    t.commit();
+                }
+            } finally {
+                for (Task w : writers) {
+                    w.get();
+                }
+            }
+        }
+    }
+
     private void testCountWithOpenTransactions() {
         try (MVStore s = MVStore.open(null)) {
             TransactionStore ts = new TransactionStore(s);
@@ -267,6 +336,63 @@ private void testCountWithOpenTransactions() {
         }
     }
 
+    private void testCountWithRollbacks() {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            Transaction[] txs = new Transaction[3];
+            long[] savepoints = new long[txs.length];
+            for (int i = 0; i < txs.length; i++) {
+                txs[i] = ts.begin();
+            }
+            Random r = new Random(1);
+            for (int i = 0; i < 5_000; i++) {
+                int t = r.nextInt(txs.length);
+                TransactionMap<Integer, Integer> map = txs[t].openMap("data");
+                int k = r.nextInt(100);
+                switch (r.nextInt(20)) {
+                case 0:
+                    txs[t].commit();
+                    txs[t] = ts.begin();
+                    savepoints[t] = 0;
+                    break;
+                case 1:
+                    txs[t].rollback();
+                    txs[t] = ts.begin();
+                    savepoints[t] = 0;
+                    break;
+                case 2:
+                    savepoints[t] = txs[t].setSavepoint();
+                    break;
+                case 3:
+                    txs[t].rollbackToSavepoint(savepoints[t]);
+                    break;
+                case 4:
+                    try {
+                        map.lock(k);
+                    } catch (MVStoreException e) {
+                        // locked by another transaction
+                    }
+                    break;
+                default:
+                    if (r.nextBoolean()) {
+                        map.tryRemove(k);
+                    } else {
+                        map.tryPut(k, i);
+                    }
+                }
+                for (Transaction tx : txs) {
+                    TransactionMap<Integer, Integer> m = tx.openMap("data");
+                    int count = 0;
+                    for (Iterator<Integer> it = m.keyIterator(null); it.hasNext(); it.next()) {
+                        count++;
+                    }
+                    assertEquals("op: " + i, count, (int) m.sizeAsLong());
+                }
+            }
+        }
+    }
+
     private void testConcurrentUpdate() {
         try (MVStore s = MVStore.open(null)) {
             TransactionStore ts = new TransactionStore(s);
@@ -569,6 +695,53 @@ private void testSavepoint() {
         }
     }
 
+    private void testUndoLogBuffer() {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            Transaction tx = ts.begin();
+            MVMap<Long, Object> undoLog = s.openMap(TransactionStore.UNDO_LOG_NAME_PREFIX + "." + tx.getId());
+            Page<Long, Object> root = undoLog.getRoot().root;
+            TransactionMap<Long, String> m = tx.openMap("test", LongDataType.INSTANCE, StringDataType.INSTANCE);
+            for (long i = 0; i < 100; i++) {
+                m.put(i, "v" + i);
+            }
+            long logId = tx.setSavepoint();
+            for (long i = 0; i < 50; i++) {
+                m.put(i, "w" + i);
+            }
+            tx.rollbackToSavepoint(logId);
+            tx.commit();
+            // the undo log of a short transaction is not added to the map
+            assertTrue(root == undoLog.getRoot().root);
+
+            tx = ts.begin();
+            m = tx.openMap("test", LongDataType.INSTANCE, StringDataType.INSTANCE);
+            for (long i = 0; i < 1000; i++) {
+                m.put(i, "x" + i);
+            }
+            assertTrue(undoLog.getRoot().root.getTotalCount() > 0);
+            logId = tx.setSavepoint();
+            for (long i = 0; i < 500; i++) {
+                m.remove(i);
+            }
+            tx.rollbackToSavepoint(logId);
+            for (long i = 0; i < 1000; i++) {
+                assertEquals("x" + i, m.get(i));
+            }
+            tx.rollback();
+            assertTrue(undoLog.isEmpty());
+
+            tx = ts.begin();
+            m = tx.openMap("test", LongDataType.INSTANCE, StringDataType.INSTANCE);
+            assertEquals(100, m.sizeAsLong());
+            for (long i = 0; i < 100; i++) {
+                assertEquals("v" + i, m.get(i));
+            }
+            tx.commit();
+        }
+    }
+
     private void testCompareWithPostgreSQL() throws Exception {
         ArrayList<Statement> statements = new ArrayList<>();
         ArrayList<Transaction> transactions = new ArrayList<>();
@@ -1006,4 +1179,61 @@ public void call() throws Exception {
             assertEquals(" "+stepCount, (stepCount+1) * (threadCount - failureCount), count);
         }
     }
+
+    private void testLockWaitQueue() throws Exception {
+        try (MVStore s = MVStore.open(null)) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            Transaction tx = ts.begin((m, k, e, r) -> {}, 10000, 100, IsolationLevel.READ_COMMITTED);
+            TransactionMap<Long, Long> map = tx.openMap("test", LongDataType.INSTANCE, LongDataType.INSTANCE);
+            map.put(1L, 0L);
+            int waiterCount = 4;
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            CountDownLatch[] done = new CountDownLatch[waiterCount];
+            Transaction[] waiters = new Transaction[waiterCount];
+            Task[] tasks = new Task[waiterCount];
+            for (int i = 0; i < waiterCount; i++) {
+                int x = i;
+                Transaction t = ts.begin((m, k, e, r) -> {}, 10000, i + 1, IsolationLevel.READ_COMMITTED);
+                waiters[i] = t;
+                done[i] = new CountDownLatch(1);
+                tasks[i] = new Task() {
+                    @Override
+                    public void call() throws Exception {
+                        TransactionMap<Long, Long> m = t.openMap("test", LongDataType.INSTANCE,
+                                LongDataType.INSTANCE);
+                        m.lock(1L);
+                        order.add(x);
+                        done[x].await();
+                        m.put(1L, m.get(1L) + 1);
+                        t.commit();
+                    }
+                }.execute();
+                while (t.getBlockerId() == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            assertTrue(waiters[0].getLockWaitTime() > 0);
+            tx.commit();
+            for (int i = 0; i < waiterCount; i++) {
+                while (order.size() <= i) {
+                    Thread.sleep(1);
+                }
+                assertEquals(i, order.get(i).intValue());
+                assertEquals(i + 1, order.size());
+                // the others are queued behind the new owner of the entry
+                for (int j = i + 1; j < waiterCount; j++) {
+                    assertEquals(i + 1, waiters[j].getBlockerId());
+                }
+                done[i].countDown();
+            }
+            for (Task task : tasks) {
+                task.get();
+            }
+            tx = ts.begin();
+            map = tx.openMap("test", LongDataType.INSTANCE, LongDataType.INSTANCE);
+            assertEquals(waiterCount, map.get(1L).longValue());
+            tx.commit();
+        }
+    }
 }
@@ -246,7 +246,7 @@ private void testByteArray(int len) throws IOException {
             CompressTool utils = CompressTool.getInstance();
             // level 9 is highest, strategy 2 is huffman only
             for (String a : new String[] { "LZF", "No",
-                    "Deflate", "Deflate level 9 strategy 2" }) {
+                    "Deflate", "Deflate level 9 strategy 2", "LZ4" }) {
                 long time = System.nanoTime();
                 byte[] out = utils.compress(b, a);
                 byte[] test = utils.expand(out);